@@ -8,15 +8,18 @@ import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.rekognition.RekognitionClient;
+import software.amazon.awssdk.services.rekognition.RekognitionClientBuilder;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
 import software.amazon.awssdk.services.rekognition.model.Image;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -32,32 +35,71 @@ import java.util.stream.Collectors;
  *      aws.id=[your access key id]
  *      aws.secret=[your Secret access key]
  *      aws.region=[an aws region of choice. For example: us-east-2]
+ *    Optionally add aws.endpoint=[url] to send requests to a stand-in endpoint instead of AWS.
+ * Without a usable config every call throws {@link IllegalStateException}; wrap the service
+ * in a {@link ResilientImageService} to fall back to a local detector instead.
  */
 public class AwsImageService implements ImageService {
 
     private final Logger log = LoggerFactory.getLogger(AwsImageService.class);
 
-    //aws recommendation is to maintain only a single instance of client objects
-    private static RekognitionClient rekognitionClient;
+    //aws recommendation is to maintain only a single instance of client objects, so share the service
+    private final RekognitionClient rekognitionClient;
+
+    private static final int MAX_CONCURRENT_REQUESTS = 8;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BatchDetector batchDetector =
+            new BatchDetector("rekognition", MAX_CONCURRENT_REQUESTS, REQUEST_TIMEOUT.toMillis());
 
     public AwsImageService() {
+        this.rekognitionClient = createClient();
+    }
+
+    /**
+     * Uses an already configured client, for example one pointed at a local stand-in endpoint.
+     */
+    public AwsImageService(RekognitionClient rekognitionClient) {
+        this.rekognitionClient = rekognitionClient;
+    }
+
+    private RekognitionClient createClient() {
         Properties props = new Properties();
         try (InputStream is = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+            if (is == null) {
+                log.error("Unable to initialize AWS Rekognition, no properties file found");
+                return null;
+            }
             props.load(is);
         } catch (IOException ioe ) {
-            log.error("Unable to initialize AWS Rekognition, no properties file found", ioe);
-            return;
+            log.error("Unable to initialize AWS Rekognition, properties file could not be read", ioe);
+            return null;
         }
 
         String awsId = props.getProperty("aws.id");
         String awsSecret = props.getProperty("aws.secret");
         String awsRegion = props.getProperty("aws.region");
+        if (awsId == null || awsSecret == null || awsRegion == null) {
+            log.error("Unable to initialize AWS Rekognition, aws.id, aws.secret and aws.region are required");
+            return null;
+        }
 
         AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
-        rekognitionClient = RekognitionClient.builder()
+        RekognitionClientBuilder builder = RekognitionClient.builder()
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .region(Region.of(awsRegion))
-                .build();
+                .region(Region.of(awsRegion));
+        String endpoint = props.getProperty("aws.endpoint");
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return false if config.properties was missing or incomplete, in which case every call fails
+     */
+    public boolean isConfigured() {
+        return rekognitionClient != null;
     }
 
     /**
@@ -67,15 +109,56 @@ public class AwsImageService implements ImageService {
      */
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
-        Image awsImage = null;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "jpg", os);
-            awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
+        ByteBuffer encoded;
+        try {
+            encoded = JpegEncoder.encode(image);
         } catch (IOException ioe) {
             log.error("Error building image byte array", ioe);
             return false;
         }
-        DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
+        return detectCat(toSdkBytes(encoded), confidenceThreshhold);
+    }
+
+    /**
+     * Sends already-encoded JPEG or PNG bytes to Rekognition as they are, with no decode
+     * or re-encode.
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        return detectCat(toSdkBytes(encodedImage), confidenceThreshhold);
+    }
+
+    /**
+     * Sends the frames to Rekognition concurrently, at most eight requests at a time.
+     * A frame whose request fails or takes longer than ten seconds counts as no cat.
+     */
+    @Override
+    public List<Boolean> detectCats(List<BufferedImage> images, float confidenceThreshhold) {
+        return batchDetector.detect(images, image -> imageContainsCat(image, confidenceThreshhold));
+    }
+
+    /**
+     * Wraps a buffer that exactly covers its backing array without copying. Anything else,
+     * such as a slice, a direct or memory-mapped buffer, is copied once.
+     */
+    private static SdkBytes toSdkBytes(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return SdkBytes.fromByteArrayUnsafe(buffer.array());
+        }
+        return SdkBytes.fromByteBuffer(buffer.duplicate());
+    }
+
+    private boolean detectCat(SdkBytes imageBytes, float confidenceThreshhold) {
+        if (rekognitionClient == null) {
+            throw new IllegalStateException("AWS Rekognition is not configured, see config.properties");
+        }
+        Image awsImage = Image.builder().bytes(imageBytes).build();
+        DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder()
+                .image(awsImage)
+                .minConfidence(confidenceThreshhold)
+                .overrideConfiguration(c -> c.apiCallTimeout(REQUEST_TIMEOUT))
+                .build();
         DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
         logLabelsForFun(response);
         return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
@@ -0,0 +1,100 @@
+package com.udasecurity.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Runs one detector call per frame on a bounded pool, so a batch never has more than a
+ * fixed number of requests in flight. Each call is interrupted and counted as no cat if
+ * it runs longer than the per-request timeout, measured from when it starts rather than
+ * when it was queued. Pool threads are daemons and exit when idle, so nothing needs closing.
+ */
+final class BatchDetector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchDetector.class);
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "batch-detector-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final long timeoutMillis;
+
+    /**
+     * @param name Prefix for the pool's thread names
+     * @param maxConcurrentRequests Largest number of detector calls in flight at once
+     * @param timeoutMillis Longest a single call may run before it is interrupted
+     */
+    BatchDetector(String name, int maxConcurrentRequests, long timeoutMillis) {
+        if (maxConcurrentRequests < 1 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("Concurrency and timeout must be positive");
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Calls the detector on every frame and waits for all of them.
+     * @return One result per frame, in the order given. Calls that fail or time out are false.
+     */
+    <T> List<Boolean> detect(List<T> frames, Predicate<T> detector) {
+        List<FutureTask<Boolean>> tasks = new ArrayList<>(frames.size());
+        for (T frame : frames) {
+            FutureTask<Boolean> task = new FutureTask<>(() -> detector.test(frame));
+            tasks.add(task);
+            pool.execute(() -> {
+                ScheduledFuture<?> timer = TIMER.schedule(() -> task.cancel(true), timeoutMillis, TimeUnit.MILLISECONDS);
+                try {
+                    task.run();
+                } finally {
+                    timer.cancel(false);
+                }
+            });
+        }
+
+        List<Boolean> results = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            results.add(await(tasks.get(i), i));
+        }
+        return results;
+    }
+
+    private boolean await(FutureTask<Boolean> task, int index) {
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            LOG.warn("Detection for frame {} timed out after {} ms", index, timeoutMillis);
+        } catch (ExecutionException e) {
+            LOG.error("Detection for frame {} failed", index, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(true);
+        }
+        return false;
+    }
+}
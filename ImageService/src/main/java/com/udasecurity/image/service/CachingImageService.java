@@ -0,0 +1,275 @@
+package com.udasecurity.image.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decorator that remembers detection results for frames that look the same. Frames are
+ * keyed on a 64-bit difference hash of a 9x8 grayscale thumbnail together with the
+ * confidence threshold, so a camera watching a static scene only pays for the first
+ * call. Hashes within the configured Hamming distance count as the same frame.
+ * Entries are evicted least-recently-used first and expire after a fixed time to live.
+ * <p>
+ * For tolerant lookups the 64 hash bits are split into one more band than the tolerance,
+ * and every entry is indexed under the value of each of its bands. Two hashes within the
+ * tolerance must agree on at least one whole band, so a lookup only compares the entries
+ * sharing a band with it rather than every entry in the cache.
+ * Wraps any ImageService, including FakeImageService for offline benchmarking.
+ */
+public class CachingImageService implements ImageService {
+
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private final ImageService delegate;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final int hammingTolerance;
+    private final Map<CacheKey, CacheEntry> entries;
+    //keys by band number and band value, guarded by entries; empty when the tolerance is 0
+    private final Map<Long, List<CacheKey>> bandIndex = new HashMap<>();
+    private final int[] bandShifts;
+    private final long[] bandMasks;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public CachingImageService(ImageService delegate) {
+        this(delegate, 1024, TimeUnit.MINUTES.toMillis(1), 2);
+    }
+
+    /**
+     * @param delegate Service asked on a cache miss
+     * @param maxEntries Maximum number of cached results before the least recently used is evicted
+     * @param ttlMillis How long a cached result stays valid
+     * @param hammingTolerance Number of differing hash bits that still count as the same frame. 0 means exact match only.
+     */
+    public CachingImageService(ImageService delegate, int maxEntries, long ttlMillis, int hammingTolerance) {
+        if (maxEntries < 1 || ttlMillis <= 0 || hammingTolerance < 0 || hammingTolerance > 64) {
+            throw new IllegalArgumentException("Invalid cache configuration");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.hammingTolerance = hammingTolerance;
+        //a tolerance of 64 matches every hash, which one band of no bits expresses
+        int bands = hammingTolerance == 0 ? 0 : hammingTolerance == 64 ? 1 : hammingTolerance + 1;
+        this.bandShifts = new int[bands];
+        this.bandMasks = new long[bands];
+        for (int band = 0; band < bands && hammingTolerance < 64; band++) {
+            int from = band * 64 / bands;
+            int to = (band + 1) * 64 / bands;
+            bandShifts[band] = from;
+            bandMasks[band] = (1L << (to - from)) - 1;
+        }
+        this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                if (size() > CachingImageService.this.maxEntries) {
+                    unindex(eldest.getKey());
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return cached(differenceHash(image), confidenceThreshold,
+                () -> delegate.imageContainsCat(image, confidenceThreshold));
+    }
+
+    /**
+     * Decodes the frame only to hash it; on a miss the delegate still gets the original bytes.
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+        return cached(differenceHash(EncodedImages.decode(encodedImage)), confidenceThreshold,
+                () -> delegate.imageContainsCat(encodedImage, confidenceThreshold));
+    }
+
+    private boolean cached(long hash, float confidenceThreshold, BooleanSupplier detector) {
+        CacheKey key = new CacheKey(hash, confidenceThreshold);
+        long now = System.nanoTime();
+
+        Boolean cached = lookup(key, now);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        boolean result = detector.getAsBoolean();
+        synchronized (entries) {
+            if (entries.put(key, new CacheEntry(result, now + ttlNanos)) == null) {
+                index(key);
+            }
+        }
+        return result;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bandIndex.clear();
+        }
+    }
+
+    private Boolean lookup(CacheKey key, long now) {
+        synchronized (entries) {
+            CacheEntry exact = entries.get(key);
+            if (exact != null) {
+                if (exact.expiresAt - now > 0) return exact.containsCat;
+                remove(key);
+            }
+
+            for (int band = 0; band < bandShifts.length; band++) {
+                List<CacheKey> candidates = bandIndex.get(bandKey(band, key.hash));
+                //backwards, as an expired candidate is removed from this list too
+                for (int i = candidates == null ? -1 : candidates.size() - 1; i >= 0; i--) {
+                    CacheKey other = candidates.get(i);
+                    if (other.threshold != key.threshold
+                            || Long.bitCount(other.hash ^ key.hash) > hammingTolerance) {
+                        continue;
+                    }
+                    //touches the entry so it counts as recently used
+                    CacheEntry candidate = entries.get(other);
+                    if (candidate.expiresAt - now > 0) return candidate.containsCat;
+                    remove(other);
+                }
+            }
+            return null;
+        }
+    }
+
+    private void remove(CacheKey key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void index(CacheKey key) {
+        for (int band = 0; band < bandShifts.length; band++) {
+            bandIndex.computeIfAbsent(bandKey(band, key.hash), k -> new ArrayList<>(2)).add(key);
+        }
+    }
+
+    private void unindex(CacheKey key) {
+        for (int band = 0; band < bandShifts.length; band++) {
+            Long bandKey = bandKey(band, key.hash);
+            List<CacheKey> keys = bandIndex.get(bandKey);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                bandIndex.remove(bandKey);
+            }
+        }
+    }
+
+    /**
+     * Band number in the high half, the band's bits in the low half; with at least two
+     * bands no band is wider than 32 bits.
+     */
+    private long bandKey(int band, long hash) {
+        return (long) band << 32 | (hash >>> bandShifts[band]) & bandMasks[band];
+    }
+
+    /**
+     * Computes a 64-bit difference hash: the image is reduced to a 9x8 grid of average
+     * luminance values and each bit records whether a cell is brighter than its right neighbour.
+     */
+    static long differenceHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long hash = 0;
+        for (int row = 0; row < HASH_HEIGHT; row++) {
+            int y0 = row * height / HASH_HEIGHT;
+            int y1 = Math.max(y0 + 1, (row + 1) * height / HASH_HEIGHT);
+            int previous = cellLuminance(image, 0, y0, Math.max(1, width / HASH_WIDTH), y1);
+            for (int col = 1; col < HASH_WIDTH; col++) {
+                int x0 = col * width / HASH_WIDTH;
+                int x1 = Math.max(x0 + 1, (col + 1) * width / HASH_WIDTH);
+                int current = cellLuminance(image, x0, y0, x1, y1);
+                hash = (hash << 1) | (previous > current ? 1 : 0);
+                previous = current;
+            }
+        }
+        return hash;
+    }
+
+    private static int cellLuminance(BufferedImage image, int x0, int y0, int x1, int y1) {
+        int stepX = Math.max(1, (x1 - x0) / SAMPLES_PER_CELL);
+        int stepY = Math.max(1, (y1 - y0) / SAMPLES_PER_CELL);
+        int sum = 0;
+        int count = 0;
+        for (int y = y0; y < y1; y += stepY) {
+            for (int x = x0; x < x1; x += stepX) {
+                int rgb = image.getRGB(x, y);
+                sum += (((rgb >> 16) & 0xff) * 299 + ((rgb >> 8) & 0xff) * 587 + (rgb & 0xff) * 114) / 1000;
+                count++;
+            }
+        }
+        return sum / count;
+    }
+
+    private static final class CacheKey {
+        private final long hash;
+        private final float threshold;
+
+        private CacheKey(long hash, float threshold) {
+            this.hash = hash;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return hash == other.hash && Float.compare(threshold, other.threshold) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(hash) + Float.floatToIntBits(threshold);
+        }
+    }
+
+    private static final class CacheEntry {
+        private final boolean containsCat;
+        private final long expiresAt;
+
+        private CacheEntry(boolean containsCat, long expiresAt) {
+            this.containsCat = containsCat;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.udasecurity.image.service;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorator that shrinks frames before they reach another ImageService, so upload size
+ * and detection latency stop growing with camera resolution. Each frame is scaled down
+ * to a maximum long edge with progressive bilinear halving, optionally turned grayscale,
+ * and compressed to JPEG at the configured quality. If the result is still larger than
+ * the payload cap, quality and then size are reduced until it fits.
+ * <p>
+ * The delegate always receives encoded JPEG bytes through
+ * {@link ImageService#imageContainsCat(ByteBuffer, float)}. Encoded frames that are
+ * already small enough are passed through untouched. Bytes in, bytes out and time spent
+ * are counted for every frame.
+ */
+public class DownscalingImageService implements ImageService {
+
+    private static final float MIN_QUALITY = 0.3f;
+    private static final float QUALITY_STEP = 0.75f;
+    private static final float SIZE_STEP = 0.75f;
+    private static final int MIN_LONG_EDGE = 64;
+
+    private final ImageService delegate;
+    private final int maxLongEdge;
+    private final float jpegQuality;
+    private final boolean grayscale;
+    private final int maxPayloadBytes;
+
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong passedThrough = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong preprocessingNanos = new AtomicLong();
+
+    public DownscalingImageService(ImageService delegate) {
+        this(delegate, 1024, 0.8f, false, 512 * 1024);
+    }
+
+    /**
+     * @param delegate Service that receives the reduced frames
+     * @param maxLongEdge Largest width or height, in pixels, sent to the delegate
+     * @param jpegQuality Starting JPEG quality from 0 (smallest) to 1 (best)
+     * @param grayscale Whether to drop colour before compressing
+     * @param maxPayloadBytes Largest encoded frame sent to the delegate
+     */
+    public DownscalingImageService(ImageService delegate, int maxLongEdge, float jpegQuality,
+                                   boolean grayscale, int maxPayloadBytes) {
+        if (delegate == null || maxLongEdge < MIN_LONG_EDGE || jpegQuality <= 0 || jpegQuality > 1
+                || maxPayloadBytes < 1024) {
+            throw new IllegalArgumentException("Invalid downscaling configuration");
+        }
+        this.delegate = delegate;
+        this.maxLongEdge = maxLongEdge;
+        this.jpegQuality = jpegQuality;
+        this.grayscale = grayscale;
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    /**
+     * Scales and compresses the frame, then hands the JPEG bytes to the delegate. The
+     * input size is counted as the frame's uncompressed RGB size.
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        long start = System.nanoTime();
+        ByteBuffer reduced = reduce(image);
+        record(3L * image.getWidth() * image.getHeight(), reduced.remaining(), start);
+        return delegate.imageContainsCat(reduced, confidenceThreshold);
+    }
+
+    /**
+     * Passes the bytes through unchanged when the frame already fits the size and payload
+     * limits and no grayscale conversion is wanted; otherwise decodes and reduces it.
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+        long start = System.nanoTime();
+        int inputBytes = encodedImage.remaining();
+        ByteBuffer reduced;
+        if (!grayscale && inputBytes <= maxPayloadBytes && fits(EncodedImages.dimensions(encodedImage))) {
+            passedThrough.incrementAndGet();
+            reduced = encodedImage;
+        } else {
+            reduced = reduce(EncodedImages.decode(encodedImage));
+        }
+        record(inputBytes, reduced.remaining(), start);
+        return delegate.imageContainsCat(reduced, confidenceThreshold);
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * Number of encoded frames that were small enough to forward without re-encoding.
+     */
+    public long getPassThroughCount() {
+        return passedThrough.get();
+    }
+
+    /**
+     * Total size of the frames received: encoded size for byte input, uncompressed RGB
+     * size for decoded images.
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Total size of the encoded frames handed to the delegate.
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Total time spent scaling and compressing, excluding time spent in the delegate.
+     */
+    public long getPreprocessingNanos() {
+        return preprocessingNanos.get();
+    }
+
+    private void record(long in, long out, long start) {
+        preprocessingNanos.addAndGet(System.nanoTime() - start);
+        frames.incrementAndGet();
+        bytesIn.addAndGet(in);
+        bytesOut.addAndGet(out);
+    }
+
+    private boolean fits(Dimension size) {
+        return Math.max(size.width, size.height) <= maxLongEdge;
+    }
+
+    /**
+     * Encodes the frame at the configured size and quality, then steps quality down and
+     * after that the size, until the payload fits. The returned buffer owns its array so
+     * the delegate may keep it and can upload it without another copy.
+     */
+    private ByteBuffer reduce(BufferedImage image) {
+        int longEdge = maxLongEdge;
+        float quality = jpegQuality;
+        BufferedImage scaled = scale(image, longEdge);
+        try {
+            while (true) {
+                ByteBuffer encoded = JpegEncoder.encode(scaled, quality);
+                if (encoded.remaining() <= maxPayloadBytes || longEdge <= MIN_LONG_EDGE) {
+                    byte[] bytes = new byte[encoded.remaining()];
+                    encoded.get(bytes);
+                    return ByteBuffer.wrap(bytes);
+                }
+                if (quality > MIN_QUALITY) {
+                    quality = Math.max(MIN_QUALITY, quality * QUALITY_STEP);
+                } else {
+                    longEdge = Math.max(MIN_LONG_EDGE, (int) (longEdge * SIZE_STEP));
+                    scaled = scale(image, longEdge);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode frame", e);
+        }
+    }
+
+    /**
+     * Halves the image with bilinear filtering until it is within twice the target, then
+     * draws the final step. Each halving averages 2x2 blocks, which keeps the quality
+     * close to area averaging at a fraction of its cost.
+     */
+    private BufferedImage scale(BufferedImage image, int longEdge) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double factor = Math.min(1.0, (double) longEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * factor));
+        int targetHeight = Math.max(1, (int) Math.round(height * factor));
+        if (factor == 1.0 && !grayscale) return image;
+
+        BufferedImage current = image;
+        while (width / 2 >= targetWidth && height / 2 >= targetHeight && width / 2 > 0 && height / 2 > 0) {
+            width /= 2;
+            height /= 2;
+            current = draw(current, width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        if (width == targetWidth && height == targetHeight && !grayscale) return current;
+        return draw(current, targetWidth, targetHeight,
+                grayscale ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, int type) {
+        BufferedImage target = new BufferedImage(width, height, type);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,92 @@
+package com.udasecurity.image.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Helpers for images held as encoded bytes.
+ */
+final class EncodedImages {
+
+    private EncodedImages() {
+    }
+
+    /**
+     * Decodes the buffer's remaining bytes without copying them or moving its position.
+     * @throws IllegalArgumentException if the bytes are not a readable image
+     */
+    static BufferedImage decode(ByteBuffer encodedImage) {
+        try {
+            BufferedImage image = ImageIO.read(new ByteBufferInputStream(encodedImage.duplicate()));
+            if (image == null) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            return image;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable image", e);
+        }
+    }
+
+    /**
+     * Reads the image size from the header without decoding any pixels.
+     * @throws IllegalArgumentException if the bytes are not a readable image
+     */
+    static Dimension dimensions(ByteBuffer encodedImage) {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteBufferInputStream(encodedImage.duplicate()))) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unreadable image", e);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.udasecurity.image.service;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -13,4 +16,19 @@ public class FakeImageService implements ImageService {
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
         return r.nextBoolean();
     }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        //a guess does not need the pixels
+        return r.nextBoolean();
+    }
+
+    @Override
+    public List<Boolean> detectCats(List<BufferedImage> images, float confidenceThreshhold) {
+        List<Boolean> results = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            results.add(r.nextBoolean());
+        }
+        return results;
+    }
 }
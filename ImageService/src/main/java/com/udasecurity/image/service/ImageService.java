@@ -1,8 +1,37 @@
-
 package com.udasecurity.image.service;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface ImageService {
     boolean imageContainsCat(BufferedImage image, float confidenceThreshold);
-}
\ No newline at end of file
+
+    /**
+     * Scans an image that is still in its encoded form (for example JPEG or PNG file
+     * contents, or a memory-mapped region of a file). The buffer's remaining bytes are
+     * the image; its position and limit are left unchanged.
+     * <p>
+     * The default decodes the bytes and scans the result. Services that send images
+     * elsewhere override it to pass the bytes through without decoding or re-encoding.
+     * @throws IllegalArgumentException if the bytes are not a readable image
+     */
+    default boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+        return imageContainsCat(EncodedImages.decode(encodedImage), confidenceThreshold);
+    }
+
+    /**
+     * Scans several frames, for example one from each camera on a site. The default scans
+     * them one after another; services backed by a remote detector override it to send
+     * the frames concurrently.
+     * @return One result per frame, in the same order as the frames
+     */
+    default List<Boolean> detectCats(List<BufferedImage> images, float confidenceThreshold) {
+        List<Boolean> results = new ArrayList<>(images.size());
+        for (BufferedImage image : images) {
+            results.add(imageContainsCat(image, confidenceThreshold));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,95 @@
+package com.udasecurity.image.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Per-thread JPEG encoder. The ImageWriter and the output buffer are created once per
+ * thread and reused for every frame, instead of looking up a writer and growing a
+ * fresh stream on each call as ImageIO.write does.
+ */
+final class JpegEncoder {
+
+    private static final ThreadLocal<JpegEncoder> ENCODERS = ThreadLocal.withInitial(JpegEncoder::new);
+
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final ReusableOutputStream output = new ReusableOutputStream();
+
+    private JpegEncoder() {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IllegalStateException("No JPEG writer available");
+        }
+        writer = writers.next();
+        param = writer.getDefaultWriteParam();
+    }
+
+    /**
+     * Encodes the image as JPEG on the calling thread's encoder.
+     * @return Read-only view of the encoded bytes, valid until this thread encodes again
+     */
+    static ByteBuffer encode(BufferedImage image) throws IOException {
+        JpegEncoder encoder = ENCODERS.get();
+        encoder.param.setCompressionMode(ImageWriteParam.MODE_DEFAULT);
+        return encoder.write(image);
+    }
+
+    /**
+     * Encodes the image as JPEG at the given quality on the calling thread's encoder.
+     * @param quality Compression quality from 0 (smallest) to 1 (best)
+     * @return Read-only view of the encoded bytes, valid until this thread encodes again
+     */
+    static ByteBuffer encode(BufferedImage image, float quality) throws IOException {
+        JpegEncoder encoder = ENCODERS.get();
+        encoder.param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        encoder.param.setCompressionQuality(quality);
+        return encoder.write(image);
+    }
+
+    private ByteBuffer write(BufferedImage image) throws IOException {
+        output.reset();
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(output)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(withoutAlpha(image), null, null), param);
+        } finally {
+            writer.setOutput(null);
+        }
+        return output.view();
+    }
+
+    /**
+     * JPEG has no alpha channel and the JDK writer rejects images that have one.
+     */
+    private static BufferedImage withoutAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) return image;
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+        private ReusableOutputStream() {
+            super(64 * 1024);
+        }
+
+        private ByteBuffer view() {
+            return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.udasecurity.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Offline cat detector that runs entirely on the CPU with no network or credentials.
+ * A single pass over the raster builds a small feature vector (warm and grey fur-tone
+ * coverage, vegetation and sky coverage, texture inside and outside the centre of the
+ * frame) that is scored by a logistic model. The model weights are read from
+ * local-cat-model.properties on the classpath and can be replaced with a retrained set.
+ * <p>
+ * Large frames are sampled on a grid so a frame costs about the same regardless of
+ * camera resolution. Pixel loops run over per-thread reusable row buffers and allocate
+ * nothing per frame for the common int and byte interleaved image types.
+ */
+public class LocalImageService implements ImageService {
+
+    static final int FEATURE_COUNT = 6;
+    static final String[] FEATURE_NAMES = {"warm", "grey", "green", "blue", "centerTexture", "borderTexture"};
+
+    private static final String MODEL_RESOURCE = "local-cat-model.properties";
+    private static final int TARGET_SAMPLED_COLUMNS = 320;
+    private static final int TARGET_SAMPLED_ROWS = 240;
+
+    private static final ThreadLocal<Workspace> WORKSPACE = ThreadLocal.withInitial(Workspace::new);
+
+    private final Logger log = LoggerFactory.getLogger(LocalImageService.class);
+
+    private final float bias;
+    private final float[] weights = new float[FEATURE_COUNT];
+
+    public LocalImageService() {
+        Properties model = new Properties();
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream(MODEL_RESOURCE)) {
+            if (is == null) throw new IOException(MODEL_RESOURCE + " not found");
+            model.load(is);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Unable to load local cat model", ioe);
+        }
+        bias = Float.parseFloat(model.getProperty("bias"));
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            weights[i] = Float.parseFloat(model.getProperty("weight." + FEATURE_NAMES[i]));
+        }
+        log.debug("Loaded local cat model with bias {}", bias);
+    }
+
+    /**
+     * @param bias Model intercept
+     * @param weights One weight per feature, in the order of {@link #FEATURE_NAMES}
+     */
+    public LocalImageService(float bias, float[] weights) {
+        if (weights.length != FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + FEATURE_COUNT + " weights");
+        }
+        this.bias = bias;
+        System.arraycopy(weights, 0, this.weights, 0, FEATURE_COUNT);
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return catConfidence(image) >= confidenceThreshold;
+    }
+
+    /**
+     * Returns the model's confidence, from 0 to 100, that the image shows a cat.
+     */
+    public float catConfidence(BufferedImage image) {
+        float[] features = WORKSPACE.get().features;
+        extractFeatures(image, features);
+        float z = bias;
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            z += weights[i] * features[i];
+        }
+        return (float) (100.0 / (1.0 + Math.exp(-z)));
+    }
+
+    /**
+     * Fills {@code features} with the model inputs for the image, each scaled to about 0..1.
+     */
+    static void extractFeatures(BufferedImage image, float[] features) {
+        Workspace ws = WORKSPACE.get();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int stepX = Math.max(1, width / TARGET_SAMPLED_COLUMNS);
+        int stepY = Math.max(1, height / TARGET_SAMPLED_ROWS);
+        int centerX0 = width / 4, centerX1 = width - width / 4;
+        int centerY0 = height / 4, centerY1 = height - height / 4;
+
+        long warm = 0, grey = 0, green = 0, blue = 0, samples = 0;
+        long centerTexture = 0, centerSamples = 0, borderTexture = 0, borderSamples = 0;
+
+        int[] rgb = ws.rowBuffer(width);
+        for (int y = 0; y < height; y += stepY) {
+            readRow(image, y, rgb, ws);
+            boolean centerRow = y >= centerY0 && y < centerY1;
+            int previousLum = luminance(rgb[0]);
+            for (int x = 0; x < width; x += stepX) {
+                int pixel = rgb[x];
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                int lum = (77 * r + 150 * g + 29 * b) >> 8;
+                int max = Math.max(r, Math.max(g, b));
+                int min = Math.min(r, Math.min(g, b));
+
+                if (r >= g && g >= b && r - b > 40 && lum > 40 && lum < 230) warm++;
+                else if (max - min < 24 && lum > 25 && lum < 210) grey++;
+                else if (g > r + 15 && g > b + 15) green++;
+                else if (b > r + 20 && b >= g) blue++;
+
+                int texture = Math.abs(lum - previousLum);
+                previousLum = lum;
+                if (centerRow && x >= centerX0 && x < centerX1) {
+                    centerTexture += texture;
+                    centerSamples++;
+                } else {
+                    borderTexture += texture;
+                    borderSamples++;
+                }
+                samples++;
+            }
+        }
+
+        features[0] = (float) warm / samples;
+        features[1] = (float) grey / samples;
+        features[2] = (float) green / samples;
+        features[3] = (float) blue / samples;
+        features[4] = Math.min(1f, centerTexture / (32f * Math.max(1, centerSamples)));
+        features[5] = Math.min(1f, borderTexture / (32f * Math.max(1, borderSamples)));
+    }
+
+    private static int luminance(int pixel) {
+        return (77 * ((pixel >> 16) & 0xff) + 150 * ((pixel >> 8) & 0xff) + 29 * (pixel & 0xff)) >> 8;
+    }
+
+    /**
+     * Reads one row as packed 0xRRGGBB ints. Int and byte interleaved rasters are read
+     * straight into reused buffers; anything else goes through getRGB.
+     */
+    private static void readRow(BufferedImage image, int y, int[] rgb, Workspace ws) {
+        int width = image.getWidth();
+        Raster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+                raster.getDataElements(0, y, width, 1, rgb);
+                return;
+            case BufferedImage.TYPE_INT_BGR:
+                raster.getDataElements(0, y, width, 1, rgb);
+                for (int x = 0; x < width; x++) {
+                    int p = rgb[x];
+                    rgb[x] = ((p & 0xff) << 16) | (p & 0xff00) | ((p >> 16) & 0xff);
+                }
+                return;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_4BYTE_ABGR_PRE: {
+                int bands = raster.getNumDataElements();
+                byte[] bytes = ws.byteBuffer(width * bands);
+                raster.getDataElements(0, y, width, 1, bytes);
+                //data elements come back in colour model band order (R, G, B[, A]), not memory order
+                for (int x = 0, i = 0; x < width; x++, i += bands) {
+                    rgb[x] = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+                }
+                return;
+            }
+            case BufferedImage.TYPE_BYTE_GRAY:
+                if (raster.getTransferType() == DataBuffer.TYPE_BYTE) {
+                    byte[] bytes = ws.byteBuffer(width);
+                    raster.getDataElements(0, y, width, 1, bytes);
+                    for (int x = 0; x < width; x++) {
+                        int v = bytes[x] & 0xff;
+                        rgb[x] = (v << 16) | (v << 8) | v;
+                    }
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        image.getRGB(0, y, width, 1, rgb, 0, width);
+    }
+
+    private static final class Workspace {
+        private final float[] features = new float[FEATURE_COUNT];
+        private int[] row = new int[0];
+        private byte[] bytes = new byte[0];
+
+        private int[] rowBuffer(int width) {
+            if (row.length < width) row = new int[width];
+            return row;
+        }
+
+        private byte[] byteBuffer(int length) {
+            if (bytes.length < length) bytes = new byte[length];
+            return bytes;
+        }
+    }
+}
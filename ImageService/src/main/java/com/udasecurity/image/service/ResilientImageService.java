@@ -0,0 +1,323 @@
+package com.udasecurity.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Guards a remote detector, such as {@link AwsImageService}, so that a slow or failing
+ * endpoint degrades to a local detector instead of stalling every frame.
+ * <ul>
+ *     <li>Each call has a deadline covering all of its attempts. A call still running at
+ *     the deadline is interrupted and abandoned.</li>
+ *     <li>Failed attempts are retried a bounded number of times, after an exponential
+ *     backoff with full jitter, as long as the backoff ends before the deadline.</li>
+ *     <li>After enough consecutive failed calls the circuit opens and calls go straight to
+ *     the fallback. Once the open period has passed a single probe call is let through;
+ *     the circuit closes if it succeeds and reopens if it fails.</li>
+ *     <li>At most a fixed number of remote calls are in flight. Calls beyond that go to
+ *     the fallback without counting against the circuit.</li>
+ * </ul>
+ * Every call that does not get an answer from the remote detector is answered by the
+ * fallback, whose own failures are passed on to the caller.
+ */
+public class ResilientImageService implements ImageService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResilientImageService.class);
+
+    /**
+     * Circuit breaker states. The ordinal is what {@link #registerGauges} publishes.
+     */
+    public enum CircuitState {
+        /** Calls go to the remote detector. */
+        CLOSED,
+        /** Calls go to the fallback until the open period has passed. */
+        OPEN,
+        /** One probe call is testing the remote detector; other calls go to the fallback. */
+        HALF_OPEN
+    }
+
+    private static final long DEFAULT_DEADLINE_MILLIS = 2_000;
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 100;
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_MILLIS = 30_000;
+    private static final int DEFAULT_MAX_CONCURRENT_CALLS = 8;
+
+    private final ImageService primary;
+    private final ImageService fallback;
+    private final long deadlineNanos;
+    private final int maxRetries;
+    private final long retryBackoffNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ThreadPoolExecutor callers;
+    private final BatchDetector batchDetector;
+
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder primarySuccesses = new LongAdder();
+    private final LongAdder primaryFailures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder shortCircuited = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * Uses a two second deadline, two retries from a 100 ms backoff, and opens the circuit
+     * for 30 seconds after five consecutive failures.
+     */
+    public ResilientImageService(ImageService primary, ImageService fallback) {
+        this(primary, fallback, DEFAULT_DEADLINE_MILLIS, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_BACKOFF_MILLIS,
+                DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    /**
+     * @param primary Remote detector to protect
+     * @param fallback Local detector that answers whenever the primary cannot
+     * @param deadlineMillis Longest a call may spend on the primary, retries included
+     * @param maxRetries Attempts made after the first one fails. Probe calls are never retried.
+     * @param retryBackoffMillis Upper bound of the first retry's random delay; it doubles for each further retry
+     * @param failureThreshold Consecutive failed calls that open the circuit
+     * @param openMillis How long the circuit stays open before a probe is let through
+     * @param maxConcurrentCalls Largest number of primary calls in flight at once
+     */
+    public ResilientImageService(ImageService primary, ImageService fallback, long deadlineMillis, int maxRetries,
+                                 long retryBackoffMillis, int failureThreshold, long openMillis, int maxConcurrentCalls) {
+        if (deadlineMillis <= 0 || maxRetries < 0 || retryBackoffMillis < 0 || failureThreshold < 1
+                || openMillis < 0 || maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("Invalid resilience configuration");
+        }
+        this.primary = primary;
+        this.fallback = fallback;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        this.maxRetries = maxRetries;
+        this.retryBackoffNanos = TimeUnit.MILLISECONDS.toNanos(retryBackoffMillis);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        //no queue: a call either gets a thread right away or is shed to the fallback
+        this.callers = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread t = new Thread(r, "resilient-detector-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.callers.allowCoreThreadTimeOut(true);
+        //each frame's call ends by its deadline plus the fallback, so this only catches a stuck fallback
+        this.batchDetector = new BatchDetector("resilient-batch", maxConcurrentCalls, deadlineMillis * 2 + 1_000);
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return detect(service -> service.imageContainsCat(image, confidenceThreshold));
+    }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+        return detect(service -> service.imageContainsCat(encodedImage, confidenceThreshold));
+    }
+
+    /**
+     * Runs each frame through the deadline, circuit and fallback concurrently, with the
+     * same limit on calls in flight as single calls.
+     */
+    @Override
+    public List<Boolean> detectCats(List<BufferedImage> images, float confidenceThreshold) {
+        return batchDetector.detect(images, image -> imageContainsCat(image, confidenceThreshold));
+    }
+
+    public CircuitState getCircuitState() {
+        return state.get();
+    }
+
+    /**
+     * Publishes the circuit state and call counters as gauges, for example through a
+     * metrics registry's {@code registerGauge} method. The state is published as the
+     * ordinal of {@link CircuitState}.
+     * @param prefix Prepended to each gauge name, such as {@code "rekognition."}
+     */
+    public void registerGauges(String prefix, BiConsumer<String, LongSupplier> gauges) {
+        gauges.accept(prefix + "circuitState", () -> state.get().ordinal());
+        gauges.accept(prefix + "calls", calls::sum);
+        gauges.accept(prefix + "primarySuccesses", primarySuccesses::sum);
+        gauges.accept(prefix + "primaryFailures", primaryFailures::sum);
+        gauges.accept(prefix + "timeouts", timeouts::sum);
+        gauges.accept(prefix + "retries", retries::sum);
+        gauges.accept(prefix + "rejected", rejected::sum);
+        gauges.accept(prefix + "shortCircuited", shortCircuited::sum);
+        gauges.accept(prefix + "fallbacks", fallbacks::sum);
+    }
+
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    /**
+     * Calls answered by the fallback, for whatever reason.
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * Calls sent to the fallback without trying the primary because the circuit was open.
+     */
+    public long getShortCircuitCount() {
+        return shortCircuited.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Attempts abandoned at the deadline.
+     */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    private boolean detect(Predicate<ImageService> call) {
+        calls.increment();
+        CircuitState permit = acquirePermit();
+        if (permit == CircuitState.OPEN) {
+            shortCircuited.increment();
+            return useFallback(call);
+        }
+        boolean probe = permit == CircuitState.HALF_OPEN;
+        long deadline = System.nanoTime() + deadlineNanos;
+        int attempts = probe ? 1 : maxRetries + 1;
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                boolean result = callPrimary(call, deadline);
+                onSuccess(probe);
+                return result;
+            } catch (RejectedExecutionException e) {
+                //too many calls in flight says nothing about the endpoint's health
+                rejected.increment();
+                if (probe) reopenUntested();
+                return useFallback(call);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (probe) reopenUntested();
+                return useFallback(call);
+            } catch (TimeoutException e) {
+                timeouts.increment();
+                LOG.warn("Detector call timed out");
+                break;
+            } catch (ExecutionException e) {
+                LOG.warn("Detector call failed: {}", e.getCause().toString());
+                if (attempt + 1 >= attempts || !backOff(attempt, deadline)) break;
+                retries.increment();
+            }
+        }
+        onFailure(probe);
+        return useFallback(call);
+    }
+
+    /**
+     * @return CLOSED for a normal call, HALF_OPEN for the probe call, or OPEN if the call
+     * must go to the fallback
+     */
+    private CircuitState acquirePermit() {
+        CircuitState current = state.get();
+        if (current == CircuitState.CLOSED) return CircuitState.CLOSED;
+        if (current == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos
+                && state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN)) {
+            return CircuitState.HALF_OPEN;
+        }
+        return CircuitState.OPEN;
+    }
+
+    private boolean callPrimary(Predicate<ImageService> call, long deadline)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        Future<Boolean> future = callers.submit(() -> call.test(primary));
+        try {
+            return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Sleeps a random time up to the attempt's backoff.
+     * @return false, without sleeping, if the backoff could run past the deadline, or if
+     * the caller was interrupted while waiting
+     */
+    private boolean backOff(int attempt, long deadline) {
+        long ceiling = retryBackoffNanos << Math.min(attempt, 20);
+        if (System.nanoTime() + ceiling >= deadline) return false;
+        if (ceiling > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void onSuccess(boolean probe) {
+        primarySuccesses.increment();
+        consecutiveFailures.set(0);
+        if (probe && state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED)) {
+            LOG.info("Detector recovered, circuit closed");
+        }
+    }
+
+    /**
+     * Puts the circuit back to OPEN after a probe that never reached the detector, for a
+     * full open interval so the next probe is not allowed straight away.
+     */
+    private void reopenUntested() {
+        openedAt = System.nanoTime();
+        state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.OPEN);
+    }
+
+    private void onFailure(boolean probe) {
+        primaryFailures.increment();
+        if (probe) {
+            openedAt = System.nanoTime();
+            state.set(CircuitState.OPEN);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold && state.get() == CircuitState.CLOSED) {
+            //published before the state so no thread sees OPEN with a stale opening time
+            openedAt = System.nanoTime();
+            if (state.compareAndSet(CircuitState.CLOSED, CircuitState.OPEN)) {
+                LOG.warn("Detector failed {} calls in a row, circuit opened", failureThreshold);
+            }
+        }
+    }
+
+    private boolean useFallback(Predicate<ImageService> call) {
+        fallbacks.increment();
+        return call.test(fallback);
+    }
+}
@@ -0,0 +1,116 @@
+package com.udasecurity.image.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for a remote detector, for load testing without a network. Every call sleeps
+ * for a seeded, jittered latency, fails with the configured probability and otherwise
+ * reports a cat with the configured probability; the pixels are never looked at. The
+ * same seed gives the same sequence of outcomes for the same order of calls.
+ * <p>
+ * {@link #detectCats} fans out with the same bounded concurrency and per-request timeout
+ * as {@link AwsImageService}, so batch behaviour can be measured offline.
+ */
+public class StubImageService implements ImageService {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double failureRate;
+    private final double catRate;
+    private final BatchDetector batchDetector;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public StubImageService(long seed, long latencyMillis, long jitterMillis, double failureRate, double catRate) {
+        this(seed, latencyMillis, jitterMillis, failureRate, catRate, 8, 10_000);
+    }
+
+    /**
+     * @param seed Seed for latency, failure and result draws
+     * @param latencyMillis Base time each call takes
+     * @param jitterMillis Up to this much is added to each call's latency
+     * @param failureRate Probability that a call throws instead of answering
+     * @param catRate Probability that a successful call reports a cat
+     * @param maxConcurrentRequests Largest number of calls in flight during a batch
+     * @param timeoutMillis Longest a call in a batch may run before it counts as no cat
+     */
+    public StubImageService(long seed, long latencyMillis, long jitterMillis, double failureRate, double catRate,
+                            int maxConcurrentRequests, long timeoutMillis) {
+        if (latencyMillis < 0 || jitterMillis < 0 || failureRate < 0 || failureRate > 1 || catRate < 0 || catRate > 1) {
+            throw new IllegalArgumentException("Invalid stub configuration");
+        }
+        this.seed = seed;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.failureRate = failureRate;
+        this.catRate = catRate;
+        this.batchDetector = new BatchDetector("stub-detector", maxConcurrentRequests, timeoutMillis);
+    }
+
+    /**
+     * @throws IllegalStateException when the call is one of the simulated failures, or is interrupted
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        return simulateCall();
+    }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+        return simulateCall();
+    }
+
+    @Override
+    public List<Boolean> detectCats(List<BufferedImage> images, float confidenceThreshold) {
+        return batchDetector.detect(images, image -> simulateCall());
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * Highest number of calls that were running at the same time.
+     */
+    public int getMaxConcurrentCalls() {
+        return maxInFlight.get();
+    }
+
+    private boolean simulateCall() {
+        //one generator per call, derived from its sequence number, keeps outcomes reproducible across threads
+        SplittableRandom random = new SplittableRandom(seed + calls.getAndIncrement() * GOLDEN_GAMMA);
+        long latency = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        boolean fails = random.nextDouble() < failureRate;
+        boolean cat = random.nextDouble() < catRate;
+
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (latency > 0) Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the detector", e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        if (fails) {
+            failures.incrementAndGet();
+            throw new IllegalStateException("Simulated detector failure");
+        }
+        return cat;
+    }
+}
@@ -3,6 +3,7 @@ module com.udasecurity.image.service {
     requires org.slf4j;
     requires software.amazon.awssdk.auth;
     requires software.amazon.awssdk.core;
+    requires software.amazon.awssdk.awscore;
     requires software.amazon.awssdk.regions;
     requires java.desktop;
 
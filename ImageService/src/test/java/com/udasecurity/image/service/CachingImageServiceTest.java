@@ -0,0 +1,159 @@
+package com.udasecurity.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingImageServiceTest {
+
+    private static final long HASH = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;
+
+    private final CountingService delegate = new CountingService();
+
+    @Test
+    void givenFrameWithKnownHash_thenDifferenceHashReproducesIt() {
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            long hash = random.nextLong();
+            assertEquals(hash, CachingImageService.differenceHash(frame(hash)));
+        }
+    }
+
+    @Test
+    void givenSameFrameTwice_thenDelegateIsAskedOnce() {
+        CachingImageService service = new CachingImageService(delegate, 16, 60_000, 0);
+
+        assertTrue(service.imageContainsCat(frame(HASH), 50.0f));
+        assertTrue(service.imageContainsCat(frame(HASH), 50.0f));
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, service.getHitCount());
+        assertEquals(1, service.getMissCount());
+        assertEquals(1, service.size());
+    }
+
+    @Test
+    void givenDifferentThreshold_thenFrameIsAskedAgain() {
+        CachingImageService service = new CachingImageService(delegate, 16, 60_000, 2);
+
+        service.imageContainsCat(frame(HASH), 50.0f);
+        service.imageContainsCat(frame(HASH), 80.0f);
+
+        assertEquals(2, delegate.calls);
+        assertEquals(0, service.getHitCount());
+        assertEquals(2, service.getMissCount());
+    }
+
+    @Test
+    void givenFullCache_thenLeastRecentlyUsedEntryIsEvicted() {
+        CachingImageService service = new CachingImageService(delegate, 2, 60_000, 0);
+        service.imageContainsCat(frame(1), 50.0f);
+        service.imageContainsCat(frame(2), 50.0f);
+        //touch the first so the second is now the least recently used
+        service.imageContainsCat(frame(1), 50.0f);
+
+        service.imageContainsCat(frame(3), 50.0f);
+
+        assertEquals(1, service.getEvictionCount());
+        assertEquals(2, service.size());
+        service.imageContainsCat(frame(1), 50.0f);
+        assertEquals(3, delegate.calls);
+        service.imageContainsCat(frame(2), 50.0f);
+        assertEquals(4, delegate.calls);
+        assertEquals(2, service.getHitCount());
+        assertEquals(4, service.getMissCount());
+    }
+
+    @Test
+    void givenExpiredEntry_thenDelegateIsAskedAgain() throws InterruptedException {
+        CachingImageService service = new CachingImageService(delegate, 16, 1, 2);
+        service.imageContainsCat(frame(HASH), 50.0f);
+
+        Thread.sleep(10);
+        service.imageContainsCat(frame(HASH), 50.0f);
+        Thread.sleep(10);
+        service.imageContainsCat(frame(HASH ^ 1), 50.0f);
+
+        assertEquals(3, delegate.calls);
+        assertEquals(0, service.getHitCount());
+        assertEquals(3, service.getMissCount());
+    }
+
+    @Test
+    void givenHashWithinTolerance_thenCachedResultIsUsed() {
+        CachingImageService service = new CachingImageService(delegate, 16, 60_000, 2);
+        service.imageContainsCat(frame(HASH), 50.0f);
+
+        //bits in different bands, and two bits in the same band
+        assertTrue(service.imageContainsCat(frame(HASH ^ 1L ^ 1L << 63), 50.0f));
+        assertTrue(service.imageContainsCat(frame(HASH ^ 3L << 30), 50.0f));
+        assertEquals(1, delegate.calls);
+        assertEquals(2, service.getHitCount());
+
+        service.imageContainsCat(frame(HASH ^ 1L ^ 1L << 31 ^ 1L << 63), 50.0f);
+        assertEquals(2, delegate.calls);
+        assertEquals(2, service.getMissCount());
+    }
+
+    @Test
+    void givenManyEntries_thenOnlyTheNearFrameMatches() {
+        CachingImageService service = new CachingImageService(delegate, 1024, 60_000, 3);
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            service.imageContainsCat(frame(random.nextLong()), 50.0f);
+        }
+        delegate.answer = false;
+        service.imageContainsCat(frame(HASH), 50.0f);
+        delegate.answer = true;
+
+        assertFalse(service.imageContainsCat(frame(HASH ^ 1L << 5 ^ 1L << 20 ^ 1L << 47), 50.0f));
+        assertEquals(501, delegate.calls);
+        assertEquals(1, service.getHitCount());
+    }
+
+    @Test
+    void givenClearedCache_thenFrameIsAskedAgain() {
+        CachingImageService service = new CachingImageService(delegate, 16, 60_000, 2);
+        service.imageContainsCat(frame(HASH), 50.0f);
+
+        service.clear();
+        service.imageContainsCat(frame(HASH ^ 1), 50.0f);
+
+        assertEquals(2, delegate.calls);
+        assertEquals(1, service.size());
+    }
+
+    /**
+     * A 9x8 grey frame whose difference hash is the given one: each pixel is one hash
+     * cell and steps down from its left neighbour for a one bit, up for a zero bit.
+     */
+    private static BufferedImage frame(long hash) {
+        BufferedImage image = new BufferedImage(9, 8, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 8; y++) {
+            int grey = 128;
+            image.setRGB(0, y, grey * 0x010101);
+            for (int x = 1; x < 9; x++) {
+                boolean brighterOnLeft = (hash >>> (63 - (y * 8 + x - 1)) & 1) != 0;
+                grey += brighterOnLeft ? -10 : 10;
+                image.setRGB(x, y, grey * 0x010101);
+            }
+        }
+        return image;
+    }
+
+    private static final class CountingService implements ImageService {
+        private int calls;
+        private boolean answer = true;
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+            calls++;
+            return answer;
+        }
+    }
+}
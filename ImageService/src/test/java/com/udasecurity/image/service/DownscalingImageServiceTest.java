@@ -0,0 +1,111 @@
+package com.udasecurity.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownscalingImageServiceTest {
+
+    private final RecordingService delegate = new RecordingService();
+
+    @Test
+    void givenLargeFrame_thenDelegateReceivesJpegWithinLongEdge() {
+        DownscalingImageService service = new DownscalingImageService(delegate, 640, 0.8f, false, 512 * 1024);
+
+        service.imageContainsCat(scene(3840, 2160, 0), 50.0f);
+
+        Dimension sent = EncodedImages.dimensions(delegate.received.get(0));
+        assertEquals(640, sent.width);
+        assertEquals(360, sent.height);
+        assertEquals(1, service.getFrameCount());
+        assertEquals(3L * 3840 * 2160, service.getBytesIn());
+        assertEquals(delegate.received.get(0).remaining(), service.getBytesOut());
+        assertTrue(service.getPreprocessingNanos() > 0);
+    }
+
+    @Test
+    void givenSmallEncodedFrame_thenBytesArePassedThroughUntouched() throws IOException {
+        DownscalingImageService service = new DownscalingImageService(delegate);
+        ByteBuffer encoded = copy(JpegEncoder.encode(scene(320, 240, 0)));
+
+        service.imageContainsCat(encoded, 50.0f);
+
+        assertSame(encoded, delegate.received.get(0));
+        assertEquals(1, service.getPassThroughCount());
+        assertEquals(service.getBytesIn(), service.getBytesOut());
+    }
+
+    @Test
+    void givenNoisyFrameAndTightCap_thenPayloadStaysUnderCap() throws IOException {
+        int cap = 16 * 1024;
+        DownscalingImageService service = new DownscalingImageService(delegate, 1920, 0.95f, false, cap);
+        ByteBuffer encoded = copy(JpegEncoder.encode(scene(1920, 1080, 255), 1.0f));
+
+        service.imageContainsCat(encoded, 50.0f);
+
+        assertTrue(delegate.received.get(0).remaining() <= cap, "sent " + delegate.received.get(0).remaining());
+        assertEquals(0, service.getPassThroughCount());
+        assertTrue(service.getBytesOut() < service.getBytesIn());
+    }
+
+    @Test
+    void givenGrayscaleEnabled_thenDelegateReceivesSingleBandImage() {
+        DownscalingImageService service = new DownscalingImageService(delegate, 320, 0.8f, true, 512 * 1024);
+
+        service.imageContainsCat(scene(640, 480, 0), 50.0f);
+
+        BufferedImage sent = EncodedImages.decode(delegate.received.get(0));
+        assertEquals(1, sent.getRaster().getNumBands());
+        assertEquals(320, sent.getWidth());
+    }
+
+    private static BufferedImage scene(int width, int height, int noise) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.ORANGE);
+        g.fillOval(width / 4, height / 4, width / 2, height / 2);
+        g.dispose();
+        Random random = new Random(3);
+        for (int y = 0; noise > 0 && y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, image.getRGB(x, y) ^ (random.nextInt(noise) * 0x010101));
+            }
+        }
+        return image;
+    }
+
+    private static ByteBuffer copy(ByteBuffer view) {
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static final class RecordingService implements ImageService {
+        private final List<ByteBuffer> received = new ArrayList<>();
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+            throw new AssertionError("delegate should only receive encoded frames");
+        }
+
+        @Override
+        public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshold) {
+            received.add(encodedImage);
+            return false;
+        }
+    }
+}
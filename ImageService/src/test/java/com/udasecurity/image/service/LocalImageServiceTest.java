@@ -0,0 +1,80 @@
+package com.udasecurity.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalImageServiceTest {
+
+    private static final int SAMPLES_PER_LABEL = 20;
+    //the bundled weights were fitted on the samples before this one
+    private static final int FIRST_HELD_OUT_SAMPLE = 14;
+    private static final float THRESHOLD = 50.0f;
+
+    private final LocalImageService detector = new LocalImageService();
+
+    @Test
+    void givenHeldOutSamples_thenDetectorClassifiesAtLeastNinetyPercentCorrectly() throws IOException {
+        int correct = 0;
+        List<String> misses = new ArrayList<>();
+        for (int i = FIRST_HELD_OUT_SAMPLE; i < SAMPLES_PER_LABEL; i++) {
+            String cat = String.format("/samples/cat/cat-%02d.jpg", i);
+            String scene = String.format("/samples/no-cat/scene-%02d.jpg", i);
+            if (detector.imageContainsCat(load(cat), THRESHOLD)) correct++; else misses.add(cat);
+            if (!detector.imageContainsCat(load(scene), THRESHOLD)) correct++; else misses.add(scene);
+        }
+
+        assertTrue(correct >= (SAMPLES_PER_LABEL - FIRST_HELD_OUT_SAMPLE) * 2 * 0.9, "misclassified " + misses);
+    }
+
+    @Test
+    void givenSameFrameInDifferentRasterLayouts_thenConfidenceIsIdentical() throws IOException {
+        BufferedImage original = load("/samples/cat/cat-00.jpg");
+        float expected = detector.catConfidence(convert(original, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(expected, detector.catConfidence(convert(original, BufferedImage.TYPE_3BYTE_BGR)), 0.001);
+        assertEquals(expected, detector.catConfidence(convert(original, BufferedImage.TYPE_INT_ARGB)), 0.001);
+        assertEquals(expected, detector.catConfidence(convert(original, BufferedImage.TYPE_INT_BGR)), 0.001);
+    }
+
+    @Test
+    void givenEncodedFrame_thenResultMatchesDecodedFrameAndBufferIsUntouched() throws IOException {
+        BufferedImage original = load("/samples/cat/cat-00.jpg");
+        ByteBuffer encoded = JpegEncoder.encode(original);
+        int position = encoded.position();
+
+        boolean expected = detector.imageContainsCat(EncodedImages.decode(encoded), THRESHOLD);
+
+        assertEquals(expected, detector.imageContainsCat(encoded, THRESHOLD));
+        assertEquals(position, encoded.position());
+        assertThrows(IllegalArgumentException.class,
+                () -> detector.imageContainsCat(ByteBuffer.wrap(new byte[]{1, 2, 3}), THRESHOLD));
+    }
+
+    private static BufferedImage load(String resource) throws IOException {
+        try (InputStream is = LocalImageServiceTest.class.getResourceAsStream(resource)) {
+            assertNotNull(is, "missing sample " + resource);
+            return ImageIO.read(is);
+        }
+    }
+
+    private static BufferedImage convert(BufferedImage source, int type) {
+        BufferedImage converted = new BufferedImage(source.getWidth(), source.getHeight(), type);
+        Graphics2D g = converted.createGraphics();
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return converted;
+    }
+}
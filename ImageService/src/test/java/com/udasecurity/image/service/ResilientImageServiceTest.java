@@ -0,0 +1,166 @@
+package com.udasecurity.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilientImageServiceTest {
+
+    private static final float THRESHOLD = 50.0f;
+    private static final BufferedImage FRAME = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+    private static final ImageService FALLBACK_NO_CAT = (image, threshold) -> false;
+
+    @Test
+    void whenPrimaryFailsIntermittently_thenRetriesHideTheFailures() {
+        StubImageService primary = new StubImageService(11, 0, 2, 0.2, 1.0);
+        ResilientImageService service = new ResilientImageService(primary, FALLBACK_NO_CAT, 1_000, 4, 1, 100, 1_000, 4);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(service.imageContainsCat(FRAME, THRESHOLD));
+        }
+        assertEquals(0, service.getFallbackCount());
+        assertEquals(primary.getFailureCount(), service.getRetryCount());
+        assertTrue(service.getRetryCount() > 0);
+    }
+
+    @Test
+    void whenPrimaryIsTooSlow_thenCallEndsAtItsDeadlineWithTheFallbackAnswer() {
+        StubImageService primary = new StubImageService(12, 5_000, 0, 0, 0.0);
+        ResilientImageService service = new ResilientImageService(primary, (image, threshold) -> true, 100, 3, 10, 5, 1_000, 4);
+
+        long start = System.nanoTime();
+        boolean result = service.imageContainsCat(FRAME, THRESHOLD);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(result);
+        assertTrue(elapsedMillis < 1_000, "took " + elapsedMillis + " ms");
+        //the deadline covers retries, so nothing is left to retry with
+        assertEquals(1, service.getTimeoutCount());
+        assertEquals(0, service.getRetryCount());
+    }
+
+    @Test
+    void whenPrimaryKeepsFailing_thenCircuitOpensAndHalfOpenProbesDecideWhenToClose() throws InterruptedException {
+        AtomicBoolean healthy = new AtomicBoolean(false);
+        AtomicInteger primaryCalls = new AtomicInteger();
+        ImageService primary = (image, threshold) -> {
+            primaryCalls.incrementAndGet();
+            if (!healthy.get()) throw new IllegalStateException("endpoint down");
+            return true;
+        };
+        ResilientImageService service = new ResilientImageService(primary, FALLBACK_NO_CAT, 1_000, 0, 0, 3, 200, 4);
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        }
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        }
+        assertEquals(3, primaryCalls.get());
+        assertEquals(10, service.getShortCircuitCount());
+
+        //a failed probe reopens the circuit for another full period
+        Thread.sleep(250);
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(4, primaryCalls.get());
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(4, primaryCalls.get());
+
+        healthy.set(true);
+        Thread.sleep(250);
+        assertTrue(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(ResilientImageService.CircuitState.CLOSED, service.getCircuitState());
+        assertTrue(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(6, primaryCalls.get());
+    }
+
+    @Test
+    void whenProbeIsInterrupted_thenCircuitStaysOpenForAnotherFullPeriod() throws InterruptedException {
+        ImageService primary = (image, threshold) -> {
+            throw new IllegalStateException("endpoint down");
+        };
+        ResilientImageService service = new ResilientImageService(primary, FALLBACK_NO_CAT, 1_000, 0, 0, 1, 200, 4);
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+
+        Thread.sleep(250);
+        Thread.currentThread().interrupt();
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        assertTrue(Thread.interrupted());
+        assertEquals(ResilientImageService.CircuitState.OPEN, service.getCircuitState());
+
+        //the interrupted probe said nothing about the endpoint, but it used up the period
+        long shortCircuited = service.getShortCircuitCount();
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+        assertEquals(shortCircuited + 1, service.getShortCircuitCount());
+    }
+
+    @Test
+    void whenTooManyCallsAreInFlight_thenExtraCallsAreShedWithoutOpeningTheCircuit() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(1);
+        ImageService primary = (image, threshold) -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        };
+        ResilientImageService service = new ResilientImageService(primary, FALLBACK_NO_CAT, 5_000, 0, 0, 1, 60_000, 1);
+        Thread first = new Thread(() -> service.imageContainsCat(FRAME, THRESHOLD));
+        first.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        assertFalse(service.imageContainsCat(FRAME, THRESHOLD));
+
+        release.countDown();
+        first.join();
+        assertEquals(ResilientImageService.CircuitState.CLOSED, service.getCircuitState());
+        assertEquals(1, service.getFallbackCount());
+    }
+
+    @Test
+    void whenAwsIsNotConfigured_thenCallsFailFastAndFallBack() {
+        AwsImageService aws = new AwsImageService();
+        ResilientImageService service = new ResilientImageService(aws, (image, threshold) -> true);
+
+        assertFalse(aws.isConfigured());
+        assertThrows(IllegalStateException.class, () -> aws.imageContainsCat(FRAME, THRESHOLD));
+        assertTrue(service.imageContainsCat(FRAME, THRESHOLD));
+    }
+
+    @Test
+    void whenGaugesAreRegistered_thenTheyTrackTheCircuit() {
+        ResilientImageService service = new ResilientImageService((image, threshold) -> {
+            throw new IllegalStateException("down");
+        }, FALLBACK_NO_CAT, 1_000, 0, 0, 1, 60_000, 1);
+        Map<String, LongSupplier> gauges = new HashMap<>();
+        service.registerGauges("aws.", gauges::put);
+
+        assertEquals(ResilientImageService.CircuitState.CLOSED.ordinal(), gauges.get("aws.circuitState").getAsLong());
+        service.imageContainsCat(FRAME, THRESHOLD);
+        service.imageContainsCat(FRAME, THRESHOLD);
+
+        assertEquals(ResilientImageService.CircuitState.OPEN.ordinal(), gauges.get("aws.circuitState").getAsLong());
+        assertEquals(2, gauges.get("aws.calls").getAsLong());
+        assertEquals(1, gauges.get("aws.primaryFailures").getAsLong());
+        assertEquals(1, gauges.get("aws.shortCircuited").getAsLong());
+        assertEquals(2, gauges.get("aws.fallbacks").getAsLong());
+    }
+}
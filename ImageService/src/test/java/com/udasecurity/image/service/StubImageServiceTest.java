@@ -0,0 +1,83 @@
+package com.udasecurity.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StubImageServiceTest {
+
+    private static final float THRESHOLD = 50.0f;
+
+    @Test
+    void givenBatch_thenCallsRunConcurrentlyUpToTheLimit() {
+        StubImageService service = new StubImageService(1, 50, 0, 0, 0.5, 4, 5_000);
+
+        long start = System.nanoTime();
+        List<Boolean> results = service.detectCats(frames(32), THRESHOLD);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(32, results.size());
+        assertEquals(32, service.getCallCount());
+        assertEquals(4, service.getMaxConcurrentCalls());
+        //eight rounds of four calls; one at a time would take 1600 ms
+        assertTrue(elapsedMillis >= 400 && elapsedMillis < 1200, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void givenSlowDetector_thenEachRequestTimesOutAsNoCat() {
+        StubImageService service = new StubImageService(2, 2_000, 0, 0, 1.0, 8, 50);
+
+        long start = System.nanoTime();
+        List<Boolean> results = service.detectCats(frames(8), THRESHOLD);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(Collections.nCopies(8, false), results);
+        assertTrue(elapsedMillis < 1000, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void givenFailingDetector_thenFailedFramesAreNoCatAndOthersAreKept() {
+        StubImageService service = new StubImageService(3, 0, 0, 1.0, 1.0);
+
+        assertEquals(Collections.nCopies(5, false), service.detectCats(frames(5), THRESHOLD));
+        assertEquals(5, service.getFailureCount());
+
+        StubImageService healthy = new StubImageService(3, 0, 0, 0, 1.0);
+        assertEquals(Collections.nCopies(5, true), healthy.detectCats(frames(5), THRESHOLD));
+    }
+
+    @Test
+    void givenSameSeed_thenSequentialCallsGiveSameOutcomes() {
+        StubImageService first = new StubImageService(42, 0, 3, 0.2, 0.5);
+        StubImageService second = new StubImageService(42, 0, 3, 0.2, 0.5);
+        BufferedImage frame = frames(1).get(0);
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(outcome(first, frame), outcome(second, frame), "call " + i);
+        }
+        assertTrue(first.getFailureCount() > 0);
+    }
+
+    private static String outcome(StubImageService service, BufferedImage frame) {
+        try {
+            return String.valueOf(service.imageContainsCat(frame, THRESHOLD));
+        } catch (IllegalStateException e) {
+            return "failed";
+        }
+    }
+
+    private static List<BufferedImage> frames(int count) {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            frames.add(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+        }
+        return frames;
+    }
+}
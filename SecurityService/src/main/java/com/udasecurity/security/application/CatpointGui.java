@@ -4,7 +4,11 @@ import com.udasecurity.image.service.FakeImageService;
 import com.udasecurity.image.service.ImageService;
 import com.udasecurity.security.data.PretendDatabaseSecurityRepositoryImpl;
 import com.udasecurity.security.data.SecurityRepository;
-import com.udasecurity.security.service.SecurityService;
+import com.udasecurity.security.metrics.MeteredSecurityRepository;
+import com.udasecurity.security.metrics.SecurityMetrics;
+import com.udasecurity.security.service.AsyncStatusEventDispatcher;
+import com.udasecurity.security.service.ConcurrentSecurityService;
+import com.udasecurity.security.service.ImageAnalysisPipeline;
 import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
 
@@ -16,17 +20,28 @@ public class CatpointGui extends JFrame {
     private static final int WINDOW_Y = 100;
 
     // Initialize dependencies first
-    private final SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
+    private final SecurityMetrics metrics = new SecurityMetrics();
+    private final SecurityRepository securityRepository =
+            new MeteredSecurityRepository(new PretendDatabaseSecurityRepositoryImpl(), metrics);
     private final ImageService imageService = new FakeImageService();
-    private final SecurityService securityService = new SecurityService(securityRepository, imageService);
+    //the pipeline applies scan results from its own threads while the panels use the service on the EDT
+    private final ConcurrentSecurityService securityService = new ConcurrentSecurityService(securityRepository, imageService);
+    private final ImageAnalysisPipeline imageAnalysis = new ImageAnalysisPipeline(securityService);
 
     // UI components initialized after dependencies
     private final DisplayPanel displayPanel = new DisplayPanel(securityService);
-    private final ImagePanel imagePanel = new ImagePanel(securityService);
+    private final ImagePanel imagePanel = new ImagePanel(securityService, imageAnalysis);
     private final ControlPanel controlPanel = new ControlPanel(securityService);
     private final SensorPanel sensorPanel = new SensorPanel(securityService);
 
     public CatpointGui() {
+        //panels are notified on the EDT and can never stall the service
+        AsyncStatusEventDispatcher dispatcher = new AsyncStatusEventDispatcher();
+        securityService.setStatusEventDispatcher(dispatcher);
+        securityService.setMetrics(metrics);
+        metrics.registerQueueDepth("statusDispatch", dispatcher::getQueuedEventCount);
+        //visible in JConsole or any other JMX client
+        metrics.register("catpoint");
         configureWindowSettings();
         initializeGuiComponents();
         setVisible(true);
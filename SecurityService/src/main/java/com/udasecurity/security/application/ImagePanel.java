@@ -1,22 +1,32 @@
 package com.udasecurity.security.application;
 
 import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.service.ImageAnalysisPipeline;
 import com.udasecurity.security.service.SecurityService;
 
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Panel containing the camera display interface.
  * Allows users to refresh the camera by uploading images and scan images for analysis.
+ * Chosen images are read, decoded and scaled on a background thread; choosing another
+ * image cancels one that is still loading. Scanning hands the image to an
+ * {@link ImageAnalysisPipeline}, so the detector never runs on the event dispatch thread;
+ * the result arrives through {@link #catDetected}.
  */
 public class ImagePanel extends JPanel implements StatusListener {
     private static final Logger LOGGER = Logger.getLogger(ImagePanel.class.getName());
@@ -25,24 +35,40 @@ public class ImagePanel extends JPanel implements StatusListener {
     private static final String DEFAULT_HEADER = "Camera Feed";
     private static final String CAT_DETECTED_HEADER = "DANGER - CAT DETECTED";
     private static final String NO_CAT_HEADER = "Camera Feed - No Cats Detected";
+    private static final int CACHED_THUMBNAILS = 16;
+    private static final String CAMERA_ID = "camera";
+
+    //one thread, so a burst of choices never decodes several large stills at once
+    private static final ExecutorService IMAGE_LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "camera-image-loader");
+        t.setDaemon(true);
+        return t;
+    });
 
     private final SecurityService securityService;
+    private final ImageAnalysisPipeline imageAnalysis;
     private final JLabel cameraHeader;
     private final JLabel cameraLabel;
-    private BufferedImage currentCameraImage;
+    private final ThumbnailCache thumbnails = new ThumbnailCache(IMAGE_WIDTH, IMAGE_HEIGHT, CACHED_THUMBNAILS);
+    //file contents as loaded, handed to the service so it never has to re-encode the image
+    private ByteBuffer currentEncodedImage;
+    //only touched on the event dispatch thread
+    private ImageLoader pendingLoad;
 
     /**
      * Constructs an ImagePanel with camera display and control buttons.
      *
-     * @param securityService The security service to process images and handle events
+     * @param securityService The security service to handle events
+     * @param imageAnalysis Pipeline that scans images for that service
      */
-    public ImagePanel(SecurityService securityService) {
+    public ImagePanel(SecurityService securityService, ImageAnalysisPipeline imageAnalysis) {
         super();
-        if (securityService == null) {
-            throw new IllegalArgumentException("Security service cannot be null");
+        if (securityService == null || imageAnalysis == null) {
+            throw new IllegalArgumentException("Security service and image analysis cannot be null");
         }
 
         this.securityService = securityService;
+        this.imageAnalysis = imageAnalysis;
         this.securityService.addStatusListener(this);
 
         setLayout(new MigLayout());
@@ -83,8 +109,8 @@ public class ImagePanel extends JPanel implements StatusListener {
     private JButton createScanButton() {
         JButton button = new JButton("Scan Picture");
         button.addActionListener(e -> {
-            if (currentCameraImage != null) {
-                securityService.processImage(currentCameraImage);
+            if (currentEncodedImage != null) {
+                scan(currentEncodedImage);
             } else {
                 JOptionPane.showMessageDialog(
                         this,
@@ -97,6 +123,15 @@ public class ImagePanel extends JPanel implements StatusListener {
         return button;
     }
 
+    private void scan(ByteBuffer encodedImage) {
+        //a duplicate, so two scans of one image never share a buffer position
+        imageAnalysis.submit(CAMERA_ID, encodedImage.duplicate()).whenComplete((catDetected, error) -> {
+            if (error != null && !(error instanceof CancellationException)) {
+                LOGGER.log(Level.WARNING, "Failed to scan image", error);
+            }
+        });
+    }
+
     private void handleImageSelection() {
         JFileChooser chooser = new JFileChooser();
         chooser.setCurrentDirectory(new File("."));
@@ -116,33 +151,59 @@ public class ImagePanel extends JPanel implements StatusListener {
     }
 
     private void loadImage(File imageFile) {
-        try {
-            currentCameraImage = ImageIO.read(imageFile);
-            if (currentCameraImage == null) {
-                throw new IOException("Invalid image format");
-            }
-
-            updateDisplayedImage();
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Failed to load image", e);
-            JOptionPane.showMessageDialog(
-                    this,
-                    "Could not load the selected image: " + e.getMessage(),
-                    "Image Error",
-                    JOptionPane.ERROR_MESSAGE
-            );
+        if (pendingLoad != null) {
+            pendingLoad.cancel(true);
         }
+        pendingLoad = new ImageLoader(imageFile);
+        IMAGE_LOADER.execute(pendingLoad);
     }
 
-    private void updateDisplayedImage() {
-        if (currentCameraImage != null) {
-            Image scaledImage = currentCameraImage.getScaledInstance(
-                    IMAGE_WIDTH,
-                    IMAGE_HEIGHT,
-                    Image.SCALE_SMOOTH
-            );
-            cameraLabel.setIcon(new ImageIcon(scaledImage));
-            repaint();
+    private void showImage(ByteBuffer encodedImage, BufferedImage thumbnail) {
+        currentEncodedImage = encodedImage;
+        cameraLabel.setIcon(new ImageIcon(thumbnail));
+        repaint();
+    }
+
+    private void showLoadError(Throwable error) {
+        LOGGER.log(Level.WARNING, "Failed to load image", error);
+        JOptionPane.showMessageDialog(
+                this,
+                "Could not load the selected image: " + error.getMessage(),
+                "Image Error",
+                JOptionPane.ERROR_MESSAGE
+        );
+    }
+
+    /**
+     * Reads the file and produces its thumbnail in the background, then shows both on the
+     * event dispatch thread unless a newer choice has cancelled it.
+     */
+    private final class ImageLoader extends SwingWorker<BufferedImage, Void> {
+        private final File imageFile;
+        private ByteBuffer encodedImage;
+
+        private ImageLoader(File imageFile) {
+            this.imageFile = imageFile;
+        }
+
+        @Override
+        protected BufferedImage doInBackground() throws IOException {
+            byte[] encoded = Files.readAllBytes(imageFile.toPath());
+            encodedImage = ByteBuffer.wrap(encoded);
+            return thumbnails.thumbnailFor(imageFile.toPath(), encoded);
+        }
+
+        @Override
+        protected void done() {
+            if (pendingLoad != this || isCancelled()) return;
+            pendingLoad = null;
+            try {
+                showImage(encodedImage, get());
+            } catch (ExecutionException e) {
+                showLoadError(e.getCause());
+            } catch (InterruptedException | CancellationException e) {
+                //superseded; the newer load updates the panel
+            }
         }
     }
 
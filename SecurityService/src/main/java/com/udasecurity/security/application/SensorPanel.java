@@ -1,26 +1,35 @@
 package com.udasecurity.security.application;
 
+import com.udasecurity.security.data.AlarmStatus;
 import com.udasecurity.security.data.Sensor;
 import com.udasecurity.security.data.SensorType;
 import com.udasecurity.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableColumnModel;
 import java.awt.*;
-import java.util.Comparator;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 /**
  * Panel that allows users to manage sensors in their security system.
  * Users can add new sensors, activate/deactivate existing sensors,
  * and remove sensors as needed.
+ * Sensors are listed in a table that only renders the visible rows, and each change
+ * made here updates just the affected row. Changes made elsewhere, such as arming
+ * deactivating every sensor, are picked up from the service when it reports them.
  */
-public class SensorPanel extends JPanel {
+public class SensorPanel extends JPanel implements StatusListener {
     private static final int MAX_FREE_SENSORS = 4;
     private static final String PREMIUM_MESSAGE = "To add more than 4 sensors, please subscribe to our Premium Membership!";
     private static final String PANEL_TITLE = "Sensor Management";
+    private static final int VISIBLE_ROWS = 8;
 
     private final SecurityService securityService;
-    private final JPanel sensorListPanel;
+    private final SensorTableModel sensorTableModel = new SensorTableModel();
+    private final JTable sensorTable;
 
     private final JTextField sensorNameField;
     private final JComboBox<SensorType> sensorTypeDropdown;
@@ -46,15 +55,16 @@ public class SensorPanel extends JPanel {
         // Create components
         JLabel titleLabel = createTitleLabel();
         JPanel addSensorPanel = createAddSensorPanel();
-        sensorListPanel = createSensorListPanel();
+        sensorTable = createSensorTable();
 
         // Layout components
         add(titleLabel, "wrap");
         add(addSensorPanel, "span, wrap");
-        add(sensorListPanel, "span, grow");
+        add(new JScrollPane(sensorTable), "span, grow");
 
         // Initial sensor list population
-        refreshSensorList();
+        sensorTableModel.setSensors(securityService.getSensors());
+        securityService.addStatusListener(this);
     }
 
     /**
@@ -97,12 +107,59 @@ public class SensorPanel extends JPanel {
     }
 
     /**
-     * Creates the panel that will display the list of sensors.
+     * Creates the table that will display the list of sensors. The last two columns
+     * are drawn as buttons and act on the row they are clicked in.
      *
-     * @return The configured sensor list panel
+     * @return The configured sensor table
      */
-    private JPanel createSensorListPanel() {
-        return new JPanel(new MigLayout("fillx"));
+    private JTable createSensorTable() {
+        JTable table = new JTable(sensorTableModel);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        TableColumnModel columns = table.getColumnModel();
+        columns.getColumn(SensorTableModel.NAME_COLUMN).setPreferredWidth(160);
+        columns.getColumn(SensorTableModel.TYPE_COLUMN).setPreferredWidth(70);
+        columns.getColumn(SensorTableModel.STATUS_COLUMN).setPreferredWidth(70);
+        columns.getColumn(SensorTableModel.TOGGLE_COLUMN).setPreferredWidth(100);
+        columns.getColumn(SensorTableModel.REMOVE_COLUMN).setPreferredWidth(120);
+        ButtonRenderer buttonRenderer = new ButtonRenderer();
+        columns.getColumn(SensorTableModel.TOGGLE_COLUMN).setCellRenderer(buttonRenderer);
+        columns.getColumn(SensorTableModel.REMOVE_COLUMN).setCellRenderer(buttonRenderer);
+
+        // Every row is the button's height, which keeps row lookups constant time
+        table.setRowHeight(Math.max(table.getRowHeight(), new JButton("Deactivate").getPreferredSize().height));
+        table.setPreferredScrollableViewportSize(new Dimension(520, VISIBLE_ROWS * table.getRowHeight()));
+
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                handleTableClick(table, e.getPoint());
+            }
+        });
+        return table;
+    }
+
+    /**
+     * Runs the button under the click, if any.
+     */
+    private void handleTableClick(JTable table, Point point) {
+        int row = table.rowAtPoint(point);
+        int column = table.columnAtPoint(point);
+        if (row < 0 || column < 0) return;
+
+        Sensor sensor = sensorTableModel.getSensorAt(table.convertRowIndexToModel(row));
+        switch (table.convertColumnIndexToModel(column)) {
+            case SensorTableModel.TOGGLE_COLUMN:
+                toggleSensorStatus(sensor);
+                break;
+            case SensorTableModel.REMOVE_COLUMN:
+                removeSensor(sensor);
+                break;
+            default:
+                break;
+        }
     }
 
     /**
@@ -120,8 +177,8 @@ public class SensorPanel extends JPanel {
             return;
         }
 
-        // Check sensor limit
-        if (securityService.getSensors().size() >= MAX_FREE_SENSORS) {
+        // Check sensor limit; every sensor is listed, so the table's row count is the sensor count
+        if (sensorTableModel.getRowCount() >= MAX_FREE_SENSORS) {
             JOptionPane.showMessageDialog(this,
                     PREMIUM_MESSAGE,
                     "Sensor Limit Reached",
@@ -134,51 +191,10 @@ public class SensorPanel extends JPanel {
         Sensor newSensor = new Sensor(sensorName, selectedType);
         securityService.addSensor(newSensor);
 
-        // Reset the form and refresh the display
+        // Reset the form and show the new row
         sensorNameField.setText("");
-        refreshSensorList();
-    }
-
-    /**
-     * Refreshes the sensor list display with current data.
-     */
-    private void refreshSensorList() {
-        sensorListPanel.removeAll();
-
-        securityService.getSensors().stream()
-                .sorted(Comparator.comparing(Sensor::getName))
-                .forEach(sensor -> addSensorToPanel(sensor, sensorListPanel));
-
-        // Ensure the panel updates visually
-        sensorListPanel.revalidate();
-        sensorListPanel.repaint();
-    }
-
-    /**
-     * Adds a single sensor representation to the provided panel.
-     *
-     * @param sensor The sensor to display
-     * @param panel The panel to add the sensor to
-     */
-    private void addSensorToPanel(Sensor sensor, JPanel panel) {
-        // Create sensor display components
-        String labelText = String.format("%s (%s): %s",
-                sensor.getName(),
-                sensor.getSensorType(),
-                sensor.getActive() ? "Active" : "Inactive");
-
-        JLabel sensorLabel = new JLabel(labelText);
-
-        JButton toggleButton = new JButton(sensor.getActive() ? "Deactivate" : "Activate");
-        toggleButton.addActionListener(e -> toggleSensorStatus(sensor));
-
-        JButton removeButton = new JButton("Remove Sensor");
-        removeButton.addActionListener(e -> removeSensor(sensor));
-
-        // Add components to panel with consistent sizing
-        panel.add(sensorLabel, "width 300:300:300");
-        panel.add(toggleButton, "width 100:100:100");
-        panel.add(removeButton, "wrap");
+        int row = sensorTableModel.addSensor(newSensor);
+        sensorTable.scrollRectToVisible(sensorTable.getCellRect(row, 0, true));
     }
 
     /**
@@ -188,7 +204,7 @@ public class SensorPanel extends JPanel {
      */
     private void toggleSensorStatus(Sensor sensor) {
         securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
-        refreshSensorList();
+        sensorTableModel.sensorChanged(sensor);
     }
 
     /**
@@ -198,6 +214,34 @@ public class SensorPanel extends JPanel {
      */
     private void removeSensor(Sensor sensor) {
         securityService.removeSensor(sensor);
-        refreshSensorList();
+        sensorTableModel.removeSensor(sensor);
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        // No behavior necessary for alarm status changes
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        // No behavior necessary for cat detection changes
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        sensorTableModel.syncSensors(securityService.getSensors());
+    }
+
+    /**
+     * Draws a cell as a button labelled with the cell's value. One button paints every
+     * cell, as with the table's other renderers.
+     */
+    private static final class ButtonRenderer extends JButton implements TableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            setText(value == null ? "" : value.toString());
+            return this;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+package com.udasecurity.security.application;
+
+import com.udasecurity.security.data.Sensor;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Table model listing sensors in their natural order, one row per sensor. Adding,
+ * changing or removing a sensor fires an event for that row alone, so the table only
+ * repaints what changed. Rows are found by binary search, which relies on a sensor's
+ * name and type not changing while it is listed. Each row remembers the activation state
+ * it was last drawn with, so a sync after the service changed sensors behind the table's
+ * back redraws only the rows whose state moved. Must only be used on the event dispatch
+ * thread.
+ */
+final class SensorTableModel extends AbstractTableModel {
+
+    static final int NAME_COLUMN = 0;
+    static final int TYPE_COLUMN = 1;
+    static final int STATUS_COLUMN = 2;
+    static final int TOGGLE_COLUMN = 3;
+    static final int REMOVE_COLUMN = 4;
+
+    private static final String[] COLUMN_NAMES = {"Name", "Type", "Status", "", ""};
+
+    private final List<Sensor> sensors = new ArrayList<>();
+    //activation state each row was last drawn with, parallel to sensors
+    private final List<Boolean> drawnActive = new ArrayList<>();
+    //collection the rows came from; the service returns the same set until sensors are added or removed
+    private Collection<Sensor> syncedFrom;
+
+    /**
+     * Replaces every row.
+     */
+    void setSensors(Collection<Sensor> newSensors) {
+        sensors.clear();
+        sensors.addAll(newSensors);
+        Collections.sort(sensors);
+        syncedFrom = newSensors;
+        recordDrawnState();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Brings the rows in line with the sensors the service holds now. If they are the
+     * same sensor objects only their state can have changed, so just the rows whose
+     * activation state differs from what was drawn are redrawn, and none after a change
+     * the table was already told about; otherwise every row is replaced. The sensors are
+     * only copied and sorted when the collection is not the one last synced from.
+     */
+    void syncSensors(Collection<Sensor> current) {
+        if (current != syncedFrom || current.size() != sensors.size()) {
+            List<Sensor> sorted = new ArrayList<>(current);
+            Collections.sort(sorted);
+            syncedFrom = current;
+            if (!sameInstances(sorted)) {
+                sensors.clear();
+                sensors.addAll(sorted);
+                recordDrawnState();
+                fireTableDataChanged();
+                return;
+            }
+        }
+        redrawChangedRows();
+    }
+
+    /**
+     * Inserts the sensor at its place in the order. A sensor already listed is left as is.
+     * @return Row of the sensor
+     */
+    int addSensor(Sensor sensor) {
+        int row = Collections.binarySearch(sensors, sensor);
+        if (row >= 0) return row;
+        row = -row - 1;
+        sensors.add(row, sensor);
+        drawnActive.add(row, sensor.getActive());
+        syncedFrom = null;
+        fireTableRowsInserted(row, row);
+        return row;
+    }
+
+    /**
+     * Redraws the sensor's row after its activation state changed.
+     */
+    void sensorChanged(Sensor sensor) {
+        int row = Collections.binarySearch(sensors, sensor);
+        if (row >= 0) {
+            drawnActive.set(row, sensor.getActive());
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    void removeSensor(Sensor sensor) {
+        int row = Collections.binarySearch(sensors, sensor);
+        if (row >= 0) {
+            sensors.remove(row);
+            drawnActive.remove(row);
+            syncedFrom = null;
+            fireTableRowsDeleted(row, row);
+        }
+    }
+
+    /**
+     * Fires one update per run of adjacent rows whose activation state changed since
+     * they were drawn.
+     */
+    private void redrawChangedRows() {
+        int first = -1;
+        for (int row = 0; row <= sensors.size(); row++) {
+            boolean changed = row < sensors.size() && sensors.get(row).getActive() != drawnActive.get(row);
+            if (changed) {
+                drawnActive.set(row, !drawnActive.get(row));
+                if (first < 0) first = row;
+            } else if (first >= 0) {
+                fireTableRowsUpdated(first, row - 1);
+                first = -1;
+            }
+        }
+    }
+
+    private void recordDrawnState() {
+        drawnActive.clear();
+        for (Sensor sensor : sensors) {
+            drawnActive.add(sensor.getActive());
+        }
+    }
+
+    private boolean sameInstances(List<Sensor> sorted) {
+        if (sorted.size() != sensors.size()) return false;
+        for (int i = 0; i < sorted.size(); i++) {
+            if (sorted.get(i) != sensors.get(i)) return false;
+        }
+        return true;
+    }
+
+    Sensor getSensorAt(int row) {
+        return sensors.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return sensors.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Sensor sensor = sensors.get(row);
+        switch (column) {
+            case NAME_COLUMN:
+                return sensor.getName();
+            case TYPE_COLUMN:
+                return sensor.getSensorType();
+            case STATUS_COLUMN:
+                return sensor.getActive() ? "Active" : "Inactive";
+            case TOGGLE_COLUMN:
+                return sensor.getActive() ? "Deactivate" : "Activate";
+            case REMOVE_COLUMN:
+                return "Remove Sensor";
+            default:
+                throw new IndexOutOfBoundsException("No column " + column);
+        }
+    }
+}
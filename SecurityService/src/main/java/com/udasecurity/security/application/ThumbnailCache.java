@@ -0,0 +1,141 @@
+package com.udasecurity.security.application;
+
+import javax.imageio.ImageIO;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decodes camera stills and scales them to display size, keeping the most recently used
+ * thumbnails so choosing the same file again skips both steps. A file is recognized by
+ * its path, size and modification time. Meant to be called off the event dispatch
+ * thread; interrupting the caller abandons the work between steps.
+ */
+final class ThumbnailCache {
+
+    private final int width;
+    private final int height;
+    private final Map<Key, BufferedImage> thumbnails;
+
+    ThumbnailCache(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.thumbnails = new LinkedHashMap<Key, BufferedImage>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param file File the bytes were read from
+     * @param encoded The file's contents, decoded only if there is no cached thumbnail
+     * @throws IOException if the bytes are not a readable image
+     */
+    BufferedImage thumbnailFor(Path file, byte[] encoded) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Key key = new Key(file.toAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        synchronized (thumbnails) {
+            BufferedImage cached = thumbnails.get(key);
+            if (cached != null) return cached;
+        }
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+        if (decoded == null) {
+            throw new IOException("Invalid image format");
+        }
+        checkInterrupted();
+        BufferedImage thumbnail = scale(decoded, width, height);
+        synchronized (thumbnails) {
+            thumbnails.put(key, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Scales to exactly the given size by halving with bilinear filtering until one more
+     * halving would undershoot, then drawing the last step into an image in the screen's
+     * native format. Each bilinear halving averages every source pixel, so this matches
+     * area-averaged scaling closely at a fraction of the cost.
+     */
+    static BufferedImage scale(BufferedImage source, int width, int height) {
+        boolean opaque = source.getTransparency() == Transparency.OPAQUE;
+        BufferedImage current = source;
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        while (currentWidth / 2 >= width || currentHeight / 2 >= height) {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage half = new BufferedImage(currentWidth, currentHeight,
+                    opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            draw(current, half);
+            current = half;
+        }
+        BufferedImage target = compatibleImage(width, height, opaque);
+        draw(current, target);
+        return target;
+    }
+
+    private static void draw(BufferedImage from, BufferedImage to) {
+        Graphics2D g = to.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(from, 0, 0, to.getWidth(), to.getHeight(), null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static BufferedImage compatibleImage(int width, int height, boolean opaque) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        }
+        GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+        return configuration.createCompatibleImage(width, height, opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Thumbnail no longer needed");
+        }
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private Key(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return size == key.size && lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+}
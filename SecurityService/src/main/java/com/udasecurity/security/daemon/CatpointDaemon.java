@@ -0,0 +1,75 @@
+package com.udasecurity.security.daemon;
+
+import com.udasecurity.image.service.AwsImageService;
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.image.service.LocalImageService;
+import com.udasecurity.image.service.ResilientImageService;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.metrics.SecurityMetrics;
+import com.udasecurity.security.service.ConcurrentSecurityService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+/**
+ * Launches the security system without a display: the state lives in a journal
+ * directory and sensors, arming and cameras talk to it through a
+ * {@link SensorEventServer} on the loopback interface. Runs until the process is
+ * stopped.
+ * <pre>
+ * CatpointDaemon [--port 7420] [--data ~/.catpoint]
+ * </pre>
+ */
+public class CatpointDaemon {
+
+    private static final Logger LOGGER = Logger.getLogger(CatpointDaemon.class.getName());
+    private static final int DEFAULT_PORT = 7420;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        Path dataDirectory = Paths.get(System.getProperty("user.home"), ".catpoint");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--data") && i + 1 < args.length) {
+                dataDirectory = Paths.get(args[++i]);
+            } else {
+                System.err.println("Usage: CatpointDaemon [--port <port>] [--data <directory>]");
+                System.exit(2);
+            }
+        }
+
+        JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(dataDirectory);
+        ConcurrentSecurityService securityService = new ConcurrentSecurityService(repository, createImageService());
+        SecurityMetrics metrics = new SecurityMetrics();
+        securityService.setMetrics(metrics);
+        SensorEventServer server = new SensorEventServer(securityService, port);
+        metrics.registerQueueDepth("sensorEvents", server::getQueuedEventCount);
+        metrics.registerGauge("sensorEventsRejected", server::getRejectedEventCount);
+        metrics.registerGauge("alarmNotificationsDropped", server::getDroppedNotificationCount);
+        metrics.register("catpoint-daemon");
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            //each step applies what the previous one handed it before the next closes
+            server.close();
+            securityService.close();
+            repository.close();
+            stopped.countDown();
+        }, "catpoint-daemon-shutdown"));
+        LOGGER.info("Listening for sensor events on " + server.getAddress() + ", state in " + dataDirectory);
+        stopped.await();
+    }
+
+    /**
+     * Rekognition when config.properties is complete, guarded by a local fallback;
+     * otherwise the local detector alone.
+     */
+    private static ImageService createImageService() {
+        AwsImageService aws = new AwsImageService();
+        return aws.isConfigured() ? new ResilientImageService(aws, new LocalImageService()) : new LocalImageService();
+    }
+}
@@ -0,0 +1,578 @@
+package com.udasecurity.security.daemon;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import com.udasecurity.security.service.ConcurrentSecurityService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local TCP endpoint feeding a {@link ConcurrentSecurityService}, for running the system
+ * without a display. Clients send {@link WireFormat} messages; connections that
+ * subscribe are sent the current alarm status and then every change to it.
+ * <p>
+ * One thread runs a selector over all connections and only decodes. Decoded events are
+ * handed to a single applier thread, which takes whatever has queued up and applies it
+ * in arrival order. Sensor changes that arrive together are applied as one burst through
+ * {@link ConcurrentSecurityService#applySensorEvents}, so a busy endpoint pays for one
+ * hand-off to the service's writer per burst rather than per event, while the alarm
+ * rules still see every change in order. Frames skip the
+ * queue and are scanned on a small pool, dropped when it is full.
+ * <p>
+ * When too many events are waiting, the selector stops reading until the applier catches
+ * up, so fast clients are slowed down by TCP flow control instead of growing the queue.
+ * A subscriber that does not keep up loses its oldest undelivered notifications.
+ */
+public class SensorEventServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SensorEventServer.class.getName());
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final int MAX_BURST = 4096;
+    private static final int PAUSE_READING_AT = 64 * 1024;
+    private static final int RESUME_READING_AT = PAUSE_READING_AT / 4;
+    private static final int SUBSCRIBER_BACKLOG = 64;
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final ByteBuffer[] ALARM_MESSAGES = new ByteBuffer[AlarmStatus.values().length];
+    private static final Command STOP = new Command(null, null, false, null, null);
+
+    static {
+        for (AlarmStatus status : AlarmStatus.values()) {
+            ByteBuffer message = ByteBuffer.allocate(WireFormat.ALARM_STATUS_BYTES);
+            WireFormat.putAlarmStatus(message, status).flip();
+            ALARM_MESSAGES[status.ordinal()] = message.asReadOnlyBuffer();
+        }
+    }
+
+    private enum Kind { SENSOR_CHANGED, ARMING_CHANGED, SENSOR_ADDED, SENSOR_REMOVED }
+
+    private final ConcurrentSecurityService securityService;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final LinkedBlockingQueue<Command> inbox = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<Connection> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final List<Connection> subscribers = new CopyOnWriteArrayList<>();
+    //orders subscriptions against notifications so a new subscriber never misses a change
+    private final Object subscriptionLock = new Object();
+    private final ThreadPoolExecutor frameWorkers;
+    private final StatusListener alarmForwarder = new AlarmForwarder();
+    private final Thread selectorThread;
+    private final Thread applier;
+    private final AtomicLong receivedEvents = new AtomicLong();
+    private final AtomicLong appliedEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final AtomicLong droppedNotifications = new AtomicLong();
+    //guarded by subscriptionLock
+    private AlarmStatus lastAlarmStatus;
+    private volatile boolean readingPaused;
+    private volatile boolean closed;
+
+    /**
+     * Listens on the loopback interface with one frame worker per processor.
+     * @param port Port to listen on, or 0 for any free port
+     */
+    public SensorEventServer(ConcurrentSecurityService securityService, int port) throws IOException {
+        this(securityService, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Runtime.getRuntime().availableProcessors(), 16);
+    }
+
+    /**
+     * @param address Address to listen on; anything but loopback exposes an unauthenticated endpoint
+     * @param frameThreads Number of threads scanning frames
+     * @param maxQueuedFrames Frames that may wait for a scanning thread before new ones are dropped
+     */
+    public SensorEventServer(ConcurrentSecurityService securityService, InetSocketAddress address,
+                             int frameThreads, int maxQueuedFrames) throws IOException {
+        if (frameThreads < 1 || maxQueuedFrames < 1) {
+            throw new IllegalArgumentException("Frame threads and queued frames must be at least 1");
+        }
+        this.securityService = securityService;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.frameWorkers = new ThreadPoolExecutor(frameThreads, frameThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedFrames), r -> {
+            Thread t = new Thread(r, "sensor-event-frames-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, (frame, executor) -> rejectedEvents.incrementAndGet());
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(address);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            frameWorkers.shutdown();
+            throw e;
+        }
+
+        lastAlarmStatus = securityService.getAlarmStatus();
+        securityService.addStatusListener(alarmForwarder);
+        this.applier = new Thread(this::runApplier, "sensor-event-applier");
+        this.applier.setDaemon(true);
+        this.applier.start();
+        this.selectorThread = new Thread(this::runSelector, "sensor-event-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) serverChannel.getLocalAddress();
+    }
+
+    /** Messages decoded, other than subscriptions. */
+    public long getReceivedEventCount() {
+        return receivedEvents.get();
+    }
+
+    /** Events applied to the service. */
+    public long getAppliedEventCount() {
+        return appliedEvents.get();
+    }
+
+    /** Events for unknown sensors, frames dropped from a full pool and events the service refused. */
+    public long getRejectedEventCount() {
+        return rejectedEvents.get();
+    }
+
+    /** Alarm notifications discarded because a subscriber fell behind. */
+    public long getDroppedNotificationCount() {
+        return droppedNotifications.get();
+    }
+
+    /** Events decoded and waiting for the applier. */
+    public int getQueuedEventCount() {
+        return inbox.size();
+    }
+
+    /**
+     * Stops accepting and reading, closes every connection, then applies the events
+     * already decoded before returning. Queued frames are discarded.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        securityService.removeStatusListener(alarmForwarder);
+        selector.wakeup();
+        frameWorkers.shutdownNow();
+        try {
+            selectorThread.join();
+            inbox.add(STOP);
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runSelector() {
+        try {
+            while (!closed) {
+                selector.select();
+                if (readingPaused && inbox.size() <= RESUME_READING_AT) {
+                    setReading(true);
+                }
+                Connection flush;
+                while ((flush = pendingFlushes.poll()) != null) {
+                    flush.flush();
+                }
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (Iterator<SelectionKey> keys = selected.iterator(); keys.hasNext(); ) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isWritable()) connection.flush();
+                    if (key.isValid() && key.isReadable()) connection.read();
+                }
+                if (!readingPaused && inbox.size() >= PAUSE_READING_AT) {
+                    setReading(false);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) LOGGER.log(Level.SEVERE, "Sensor event endpoint failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to close selector", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, readingPaused ? 0 : SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+    }
+
+    private void setReading(boolean reading) {
+        readingPaused = !reading;
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Connection) {
+                key.interestOps(reading ? key.interestOps() | SelectionKey.OP_READ
+                        : key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Connection) {
+            subscribers.remove(key.attachment());
+        }
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close connection", e);
+        }
+    }
+
+    private void runApplier() {
+        List<Command> burst = new ArrayList<>(MAX_BURST);
+        List<Map.Entry<Sensor, Boolean>> sensorChanges = new ArrayList<>(MAX_BURST);
+        Map<UUID, Sensor> sensors = new HashMap<>();
+        for (Sensor sensor : securityService.getSensors()) {
+            sensors.put(sensor.getSensorId(), sensor);
+        }
+
+        while (true) {
+            try {
+                burst.add(inbox.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            inbox.drainTo(burst, MAX_BURST - 1);
+            if (readingPaused) selector.wakeup();
+
+            for (Command command : burst) {
+                if (command == STOP) {
+                    applySensorChanges(sensorChanges);
+                    return;
+                }
+                if (command.kind == Kind.SENSOR_CHANGED) {
+                    Sensor sensor = sensors.get(command.sensorId);
+                    if (sensor == null) {
+                        rejectedEvents.incrementAndGet();
+                    } else {
+                        sensorChanges.add(new AbstractMap.SimpleImmutableEntry<>(sensor, command.active));
+                    }
+                    continue;
+                }
+                applySensorChanges(sensorChanges);
+                apply(command, sensors);
+            }
+            applySensorChanges(sensorChanges);
+            burst.clear();
+        }
+    }
+
+    private void applySensorChanges(List<Map.Entry<Sensor, Boolean>> sensorChanges) {
+        int changes = sensorChanges.size();
+        if (changes == 0) return;
+        try {
+            securityService.applySensorEvents(sensorChanges);
+            appliedEvents.addAndGet(changes);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to apply sensor changes", e);
+            rejectedEvents.addAndGet(changes);
+        }
+        sensorChanges.clear();
+    }
+
+    private void apply(Command command, Map<UUID, Sensor> sensors) {
+        try {
+            switch (command.kind) {
+                case ARMING_CHANGED:
+                    securityService.setArmingStatus(command.armingStatus);
+                    break;
+                case SENSOR_ADDED:
+                    if (sensors.putIfAbsent(command.sensorId, command.sensor) != null) {
+                        rejectedEvents.incrementAndGet();
+                        return;
+                    }
+                    securityService.addSensor(command.sensor);
+                    break;
+                default:
+                    Sensor removed = sensors.remove(command.sensorId);
+                    if (removed == null) {
+                        rejectedEvents.incrementAndGet();
+                        return;
+                    }
+                    securityService.removeSensor(removed);
+                    break;
+            }
+            appliedEvents.incrementAndGet();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to apply " + command.kind, e);
+            rejectedEvents.incrementAndGet();
+        }
+    }
+
+    private void submitFrame(byte[] frame) {
+        frameWorkers.execute(() -> {
+            try {
+                securityService.processImage(ByteBuffer.wrap(frame));
+                appliedEvents.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to scan frame", e);
+                rejectedEvents.incrementAndGet();
+            }
+        });
+    }
+
+    private void subscribe(Connection connection) {
+        synchronized (subscriptionLock) {
+            if (subscribers.contains(connection)) return;
+            subscribers.add(connection);
+            connection.send(lastAlarmStatus);
+        }
+    }
+
+    /**
+     * One client. Reading, decoding and writing happen on the selector thread; other
+     * threads only queue notifications and ask for a flush.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ArrayDeque<ByteBuffer> outbox = new ArrayDeque<>();
+        private final AtomicBoolean flushRequested = new AtomicBoolean();
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        private void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    closeQuietly(key);
+                    return;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Connection failed", e);
+                closeQuietly(key);
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= WireFormat.HEADER_BYTES) {
+                int start = in.position();
+                int length = in.getInt(start);
+                if (length < 0 || length > WireFormat.MAX_BODY_BYTES) {
+                    protocolError("Message of " + length + " bytes");
+                    return;
+                }
+                int size = WireFormat.HEADER_BYTES + length;
+                if (in.remaining() < size) {
+                    if (size > in.capacity()) {
+                        //only frames get this large; the buffer shrinks again once it is consumed
+                        in = ByteBuffer.allocate(size).put(in);
+                        return;
+                    }
+                    break;
+                }
+                byte type = in.get(start + 4);
+                in.position(start + WireFormat.HEADER_BYTES);
+                if (!decode(type, length)) {
+                    protocolError("Malformed message of type " + type);
+                    return;
+                }
+                in.position(start + size);
+            }
+            in.compact();
+            if (in.capacity() > READ_BUFFER_BYTES && in.position() <= READ_BUFFER_BYTES) {
+                in.flip();
+                in = ByteBuffer.allocate(READ_BUFFER_BYTES).put(in);
+            }
+        }
+
+        /**
+         * Handles one message whose body starts at the buffer's position.
+         * @return false if the message is not valid
+         */
+        private boolean decode(byte type, int length) {
+            switch (type) {
+                case WireFormat.SENSOR_ACTIVATED:
+                case WireFormat.SENSOR_DEACTIVATED:
+                    if (length != 16) return false;
+                    queue(new Command(Kind.SENSOR_CHANGED, readId(), type == WireFormat.SENSOR_ACTIVATED, null, null));
+                    return true;
+                case WireFormat.ARMING_STATUS: {
+                    if (length != 1) return false;
+                    int ordinal = in.get();
+                    if (ordinal < 0 || ordinal >= ARMING_STATUSES.length) return false;
+                    queue(new Command(Kind.ARMING_CHANGED, null, false, ARMING_STATUSES[ordinal], null));
+                    return true;
+                }
+                case WireFormat.SENSOR_ADDED: {
+                    if (length < 18) return false;
+                    UUID id = readId();
+                    int ordinal = in.get();
+                    if (ordinal < 0 || ordinal >= SENSOR_TYPES.length) return false;
+                    byte[] name = new byte[length - 17];
+                    in.get(name);
+                    Sensor sensor = new Sensor(id, new String(name, StandardCharsets.UTF_8), SENSOR_TYPES[ordinal], false);
+                    queue(new Command(Kind.SENSOR_ADDED, id, false, null, sensor));
+                    return true;
+                }
+                case WireFormat.SENSOR_REMOVED:
+                    if (length != 16) return false;
+                    queue(new Command(Kind.SENSOR_REMOVED, readId(), false, null, null));
+                    return true;
+                case WireFormat.FRAME: {
+                    if (length == 0) return false;
+                    byte[] frame = new byte[length];
+                    in.get(frame);
+                    receivedEvents.incrementAndGet();
+                    submitFrame(frame);
+                    return true;
+                }
+                case WireFormat.SUBSCRIBE:
+                    if (length != 0) return false;
+                    subscribe(this);
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private UUID readId() {
+            return new UUID(in.getLong(), in.getLong());
+        }
+
+        private void queue(Command command) {
+            receivedEvents.incrementAndGet();
+            inbox.add(command);
+        }
+
+        private void protocolError(String problem) {
+            LOGGER.log(Level.WARNING, "Closing connection: {0}", problem);
+            closeQuietly(key);
+        }
+
+        /**
+         * Queues a notification from any thread. A full backlog loses its oldest
+         * notification that has not started going out.
+         */
+        private void send(AlarmStatus status) {
+            synchronized (outbox) {
+                if (outbox.size() >= SUBSCRIBER_BACKLOG) {
+                    ByteBuffer head = outbox.pollFirst();
+                    if (head.position() > 0) {
+                        outbox.pollFirst();
+                        outbox.addFirst(head);
+                    }
+                    droppedNotifications.incrementAndGet();
+                }
+                outbox.addLast(ALARM_MESSAGES[status.ordinal()].duplicate());
+            }
+            if (flushRequested.compareAndSet(false, true)) {
+                pendingFlushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        private void flush() {
+            flushRequested.set(false);
+            if (!key.isValid()) return;
+            try {
+                synchronized (outbox) {
+                    ByteBuffer head;
+                    while ((head = outbox.peekFirst()) != null) {
+                        channel.write(head);
+                        if (head.hasRemaining()) break;
+                        outbox.pollFirst();
+                    }
+                    key.interestOps(outbox.isEmpty() ? key.interestOps() & ~SelectionKey.OP_WRITE
+                            : key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Connection failed", e);
+                closeQuietly(key);
+            }
+        }
+    }
+
+    private final class AlarmForwarder implements StatusListener {
+        @Override
+        public void notify(AlarmStatus status) {
+            synchronized (subscriptionLock) {
+                lastAlarmStatus = status;
+                for (Connection subscriber : subscribers) {
+                    subscriber.send(status);
+                }
+            }
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+        }
+    }
+
+    private static final class Command {
+        private final Kind kind;
+        private final UUID sensorId;
+        private final boolean active;
+        private final ArmingStatus armingStatus;
+        private final Sensor sensor;
+
+        private Command(Kind kind, UUID sensorId, boolean active, ArmingStatus armingStatus, Sensor sensor) {
+            this.kind = kind;
+            this.sensorId = sensorId;
+            this.active = active;
+            this.armingStatus = armingStatus;
+            this.sensor = sensor;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.udasecurity.security.daemon;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Binary messages understood by {@link SensorEventServer}. Every message is a 4 byte
+ * big-endian body length, a 1 byte type and the body:
+ * <pre>
+ * SENSOR_ACTIVATED   sensor ID (16)
+ * SENSOR_DEACTIVATED sensor ID (16)
+ * ARMING_STATUS      ArmingStatus ordinal (1)
+ * FRAME              encoded image, such as a JPEG (1 or more)
+ * SUBSCRIBE          empty
+ * SENSOR_ADDED       sensor ID (16), SensorType ordinal (1), UTF-8 name (1 or more)
+ * SENSOR_REMOVED     sensor ID (16)
+ * </pre>
+ * Sensor IDs are written as the most then least significant 64 bits. The server only
+ * ever sends {@code ALARM_STATUS} messages, whose body is an AlarmStatus ordinal, to
+ * connections that subscribed. A sensor event takes {@value #SENSOR_EVENT_BYTES} bytes.
+ */
+public final class WireFormat {
+
+    public static final byte SENSOR_ACTIVATED = 1;
+    public static final byte SENSOR_DEACTIVATED = 2;
+    public static final byte ARMING_STATUS = 3;
+    public static final byte FRAME = 4;
+    public static final byte SUBSCRIBE = 5;
+    public static final byte SENSOR_ADDED = 6;
+    public static final byte SENSOR_REMOVED = 7;
+    public static final byte ALARM_STATUS = (byte) 0x81;
+
+    public static final int HEADER_BYTES = 5;
+    public static final int SENSOR_EVENT_BYTES = HEADER_BYTES + 16;
+    public static final int ALARM_STATUS_BYTES = HEADER_BYTES + 1;
+    /** Largest body accepted; bigger messages close the connection. */
+    public static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    private WireFormat() {
+    }
+
+    public static ByteBuffer putSensorEvent(ByteBuffer out, UUID sensorId, boolean active) {
+        header(out, active ? SENSOR_ACTIVATED : SENSOR_DEACTIVATED, 16);
+        return putId(out, sensorId);
+    }
+
+    public static ByteBuffer putArmingStatus(ByteBuffer out, ArmingStatus status) {
+        header(out, ARMING_STATUS, 1);
+        return out.put((byte) status.ordinal());
+    }
+
+    /**
+     * @param encodedImage Image bytes from the buffer's position to its limit; the
+     *                     position is left unchanged
+     */
+    public static ByteBuffer putFrame(ByteBuffer out, ByteBuffer encodedImage) {
+        header(out, FRAME, encodedImage.remaining());
+        return out.put(encodedImage.duplicate());
+    }
+
+    public static ByteBuffer putSubscribe(ByteBuffer out) {
+        return header(out, SUBSCRIBE, 0);
+    }
+
+    public static ByteBuffer putSensorAdded(ByteBuffer out, Sensor sensor) {
+        byte[] name = sensor.getName().getBytes(StandardCharsets.UTF_8);
+        header(out, SENSOR_ADDED, 17 + name.length);
+        putId(out, sensor.getSensorId());
+        return out.put((byte) sensor.getSensorType().ordinal()).put(name);
+    }
+
+    public static ByteBuffer putSensorRemoved(ByteBuffer out, UUID sensorId) {
+        header(out, SENSOR_REMOVED, 16);
+        return putId(out, sensorId);
+    }
+
+    public static ByteBuffer putAlarmStatus(ByteBuffer out, AlarmStatus status) {
+        header(out, ALARM_STATUS, 1);
+        return out.put((byte) status.ordinal());
+    }
+
+    private static ByteBuffer header(ByteBuffer out, byte type, int bodyLength) {
+        return out.putInt(bodyLength).put(type);
+    }
+
+    private static ByteBuffer putId(ByteBuffer out, UUID id) {
+        return out.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,531 @@
+package com.udasecurity.security.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Repository that records every change as a small binary record in an append-only
+ * journal file instead of rewriting the whole sensor set. A snapshot of the full state
+ * is written whenever the journal grows past the compaction threshold, after which the
+ * journal is truncated. Startup loads the snapshot and replays the journal tail; a torn
+ * or corrupt record at the end of the journal (for example after a crash mid-write) is
+ * discarded along with everything after it.
+ * <p>
+ * Journal records are framed as {@code [int length][int crc32][byte type][payload]}.
+ * Every record assigns state rather than modifying it, so replaying a journal on top of
+ * a snapshot that already contains it is harmless. Bulk operations are written as batch
+ * records wrapping {@code [int length][byte type][payload]} entries, so a batch is
+ * either replayed completely or not at all. Replay treats records longer than
+ * {@value #MAX_RECORD_BYTES} bytes as damage, so a bulk operation too large for one
+ * record is split into several, each applied whole.
+ */
+public class JournalSecurityRepositoryImpl implements SecurityRepository, AutoCloseable {
+
+    static final String SNAPSHOT_FILE = "snapshot.dat";
+    static final String JOURNAL_FILE = "journal.log";
+
+    private static final int SNAPSHOT_MAGIC = 0x43504a53; // "CPJS"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+    //record types
+    private static final byte ALARM_STATUS = 1;
+    private static final byte ARMING_STATUS = 2;
+    private static final byte SENSOR_UPSERT = 3;
+    private static final byte SENSOR_ACTIVE = 4;
+    private static final byte SENSOR_REMOVE = 5;
+    private static final byte BATCH = 6;
+
+    private static final int HEADER_BYTES = 8;
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final long compactionThresholdBytes;
+    private final boolean syncOnWrite;
+    private final CRC32 crc = new CRC32();
+
+    private final Map<UUID, Sensor> sensors = new HashMap<>();
+    //what was last written for each sensor, so an activation flip can be logged on its own
+    private final Map<UUID, SensorRecord> persisted = new HashMap<>();
+    private final Set<UUID> activeSensorIds = new HashSet<>();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    private FileChannel journal;
+    private ByteBuffer recordBuffer = ByteBuffer.allocateDirect(4096);
+    private boolean batching;
+    private int batchEntries;
+
+    public JournalSecurityRepositoryImpl(Path directory) {
+        this(directory, DEFAULT_COMPACTION_THRESHOLD, false);
+    }
+
+    /**
+     * @param directory Directory holding the snapshot and journal files. Created if missing.
+     * @param compactionThresholdBytes Journal size that triggers a snapshot and truncation.
+     * @param syncOnWrite Force every record to the storage device before returning.
+     */
+    public JournalSecurityRepositoryImpl(Path directory, long compactionThresholdBytes, boolean syncOnWrite) {
+        if (compactionThresholdBytes <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.journalPath = directory.resolve(JOURNAL_FILE);
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        this.syncOnWrite = syncOnWrite;
+
+        try {
+            Files.createDirectories(directory);
+            loadSnapshot();
+            journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayJournal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to initialize security repository", e);
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor.getSensorId(), sensor);
+        writeSensor(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        sensors.remove(id);
+        activeSensorIds.remove(id);
+        if (persisted.remove(id) == null) return;
+
+        ByteBuffer record = beginRecord(SENSOR_REMOVE, 16);
+        putUuid(record, id);
+        append();
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor.getSensorId(), sensor);
+        writeSensor(sensor);
+    }
+
+    @Override
+    public synchronized void addSensors(Collection<Sensor> batch) {
+        beginBatch();
+        for (Sensor sensor : batch) {
+            sensors.put(sensor.getSensorId(), sensor);
+            writeSensor(sensor);
+        }
+        endBatch();
+    }
+
+    @Override
+    public synchronized void removeSensors(Collection<Sensor> batch) {
+        beginBatch();
+        for (Sensor sensor : batch) {
+            removeSensor(sensor);
+        }
+        endBatch();
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> batch) {
+        beginBatch();
+        for (Sensor sensor : batch) {
+            sensors.put(sensor.getSensorId(), sensor);
+            writeSensor(sensor);
+        }
+        endBatch();
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        beginRecord(ALARM_STATUS, 1).put((byte) alarmStatus.ordinal());
+        append();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        beginRecord(ARMING_STATUS, 1).put((byte) armingStatus.ordinal());
+        append();
+    }
+
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        return new TreeSet<>(sensors.values());
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount() {
+        return activeSensorIds.size();
+    }
+
+    @Override
+    public synchronized Set<UUID> getActiveSensorIds() {
+        return new HashSet<>(activeSensorIds);
+    }
+
+    /**
+     * Forces all journal records written so far to the storage device.
+     */
+    public synchronized void flush() {
+        try {
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync security journal", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state and truncates the journal.
+     */
+    public synchronized void compact() {
+        try {
+            writeSnapshot();
+            journal.truncate(0);
+            journal.position(0);
+            journal.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact security journal", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!journal.isOpen()) return;
+
+        try {
+            journal.force(true);
+            journal.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close security journal", e);
+        }
+    }
+
+    private void writeSensor(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        boolean active = sensor.getActive();
+        indexActivation(id, active);
+
+        SensorRecord previous = persisted.get(id);
+        if (previous != null && previous.sameDescription(sensor)) {
+            if (previous.active == active) return;
+
+            previous.active = active;
+            ByteBuffer record = beginRecord(SENSOR_ACTIVE, 17);
+            putUuid(record, id);
+            record.put(active ? (byte) 1 : (byte) 0);
+        } else {
+            persisted.put(id, new SensorRecord(sensor.getName(), sensor.getSensorType(), active));
+            byte[] name = encodeName(sensor.getName());
+            ByteBuffer record = beginRecord(SENSOR_UPSERT, 20 + name.length);
+            putSensor(record, id, name, sensor.getSensorType(), active);
+        }
+        append();
+    }
+
+    private void indexActivation(UUID id, boolean active) {
+        if (active) {
+            activeSensorIds.add(id);
+        } else {
+            activeSensorIds.remove(id);
+        }
+    }
+
+    private ByteBuffer beginRecord(byte type, int payloadBytes) {
+        if (batching) {
+            if (batchEntries > 0 && recordBuffer.position() - HEADER_BYTES + 5 + payloadBytes > MAX_RECORD_BYTES) {
+                writeFrame();
+                startBatchRecord();
+            }
+            ensureCapacity(recordBuffer.position() + 5 + payloadBytes);
+            recordBuffer.putInt(1 + payloadBytes);
+            batchEntries++;
+        } else {
+            ensureCapacity(HEADER_BYTES + 1 + payloadBytes);
+            recordBuffer.clear();
+            recordBuffer.position(HEADER_BYTES);
+        }
+        recordBuffer.put(type);
+        return recordBuffer;
+    }
+
+    private void ensureCapacity(int size) {
+        if (recordBuffer.capacity() >= size) return;
+
+        ByteBuffer larger = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+        recordBuffer.flip();
+        larger.put(recordBuffer);
+        recordBuffer = larger;
+    }
+
+    private void beginBatch() {
+        batching = true;
+        startBatchRecord();
+    }
+
+    private void startBatchRecord() {
+        recordBuffer.clear();
+        recordBuffer.position(HEADER_BYTES);
+        recordBuffer.put(BATCH);
+        batchEntries = 0;
+    }
+
+    private void endBatch() {
+        batching = false;
+        if (batchEntries > 0) {
+            writeFrame();
+        }
+    }
+
+    private void append() {
+        if (!batching) {
+            writeFrame();
+        }
+    }
+
+    private void writeFrame() {
+        ByteBuffer record = recordBuffer;
+        int end = record.position();
+        record.position(HEADER_BYTES);
+        record.limit(end);
+        crc.reset();
+        crc.update(record);
+        record.putInt(0, end - HEADER_BYTES);
+        record.putInt(4, (int) crc.getValue());
+        record.position(0);
+
+        try {
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            if (syncOnWrite) {
+                journal.force(false);
+            }
+            if (journal.position() >= compactionThresholdBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to security journal", e);
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        long size = journal.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        long position = 0;
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            int checksum = header.getInt(4);
+            if (length <= 0 || length > MAX_RECORD_BYTES || position + HEADER_BYTES + length > size) break;
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != checksum) break;
+
+            applyRecord(body);
+            position += HEADER_BYTES + length;
+        }
+
+        if (position < size) {
+            //drop the torn tail so new records are appended after the last good one
+            journal.truncate(position);
+        }
+        journal.position(position);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = journal.read(buffer, position + buffer.position());
+            if (read < 0) throw new IOException("Unexpected end of journal");
+        }
+        buffer.flip();
+    }
+
+    private void applyRecord(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case ALARM_STATUS:
+                alarmStatus = AlarmStatus.values()[record.get()];
+                break;
+            case ARMING_STATUS:
+                armingStatus = ArmingStatus.values()[record.get()];
+                break;
+            case SENSOR_UPSERT:
+                restoreSensor(record);
+                break;
+            case SENSOR_ACTIVE: {
+                UUID id = getUuid(record);
+                boolean active = record.get() != 0;
+                Sensor sensor = sensors.get(id);
+                if (sensor != null) {
+                    sensor.setActive(active);
+                    persisted.get(id).active = active;
+                    indexActivation(id, active);
+                }
+                break;
+            }
+            case SENSOR_REMOVE: {
+                UUID id = getUuid(record);
+                sensors.remove(id);
+                persisted.remove(id);
+                activeSensorIds.remove(id);
+                break;
+            }
+            case BATCH:
+                while (record.hasRemaining()) {
+                    int length = record.getInt();
+                    ByteBuffer entry = record.slice();
+                    entry.limit(length);
+                    applyRecord(entry);
+                    record.position(record.position() + length);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private void restoreSensor(ByteBuffer record) {
+        UUID id = getUuid(record);
+        SensorType sensorType = SensorType.values()[record.get()];
+        boolean active = record.get() != 0;
+        byte[] nameBytes = new byte[record.getShort() & 0xffff];
+        record.get(nameBytes);
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+        sensors.put(id, new Sensor(id, name, sensorType, active));
+        persisted.put(id, new SensorRecord(name, sensorType, active));
+        indexActivation(id, active);
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) return;
+
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        int bodyLength = snapshot.limit() - 4;
+        if (bodyLength < 14) throw new IOException("Truncated snapshot " + snapshotPath);
+        crc.reset();
+        crc.update(snapshot.array(), 0, bodyLength);
+        if ((int) crc.getValue() != snapshot.getInt(bodyLength)) {
+            throw new IOException("Corrupt snapshot " + snapshotPath);
+        }
+        if (snapshot.getInt() != SNAPSHOT_MAGIC || snapshot.getInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot format " + snapshotPath);
+        }
+
+        alarmStatus = AlarmStatus.values()[snapshot.get()];
+        armingStatus = ArmingStatus.values()[snapshot.get()];
+        int count = snapshot.getInt();
+        for (int i = 0; i < count; i++) {
+            restoreSensor(snapshot);
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        int size = 14 + 4;
+        Map<UUID, byte[]> names = new HashMap<>();
+        for (Map.Entry<UUID, SensorRecord> entry : persisted.entrySet()) {
+            byte[] name = encodeName(entry.getValue().name);
+            names.put(entry.getKey(), name);
+            size += 20 + name.length;
+        }
+
+        ByteBuffer snapshot = ByteBuffer.allocate(size);
+        snapshot.putInt(SNAPSHOT_MAGIC);
+        snapshot.putInt(SNAPSHOT_VERSION);
+        snapshot.put((byte) alarmStatus.ordinal());
+        snapshot.put((byte) armingStatus.ordinal());
+        snapshot.putInt(persisted.size());
+        for (Map.Entry<UUID, SensorRecord> entry : persisted.entrySet()) {
+            SensorRecord sensor = entry.getValue();
+            putSensor(snapshot, entry.getKey(), names.get(entry.getKey()), sensor.sensorType, sensor.active);
+        }
+        crc.reset();
+        crc.update(snapshot.array(), 0, snapshot.position());
+        snapshot.putInt((int) crc.getValue());
+        snapshot.flip();
+
+        Path temp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                out.write(snapshot);
+            }
+            out.force(true);
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IllegalArgumentException("Sensor name is too long to store");
+        }
+        return bytes;
+    }
+
+    private static void putSensor(ByteBuffer buffer, UUID id, byte[] name, SensorType sensorType, boolean active) {
+        putUuid(buffer, id);
+        buffer.put((byte) sensorType.ordinal());
+        buffer.put(active ? (byte) 1 : (byte) 0);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static final class SensorRecord {
+        private final String name;
+        private final SensorType sensorType;
+        private boolean active;
+
+        private SensorRecord(String name, SensorType sensorType, boolean active) {
+            this.name = name;
+            this.sensorType = sensorType;
+            this.active = active;
+        }
+
+        private boolean sameDescription(Sensor sensor) {
+            return name.equals(sensor.getName()) && sensorType == sensor.getSensorType();
+        }
+    }
+}
@@ -1,47 +1,201 @@
 package com.udasecurity.security.data;
 
-import dev.mccue.guava.reflect.TypeToken;
-import com.google.gson.Gson;
-
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 /**
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ * <p>
+ * By default every sensor change is written through immediately. In write-behind mode
+ * sensor changes only mark the sensor set dirty; it is serialized at most once per
+ * flush, either every flush interval, once enough changes have piled up, on
+ * {@link #flush()}, or when the JVM shuts down. Alarm and arming status are small and
+ * are always written through. All write-behind repositories share one timer thread and
+ * one shutdown hook, both of which hold them weakly: one that is dropped without being
+ * closed can still be collected, losing whatever it had not flushed.
+ * <p>
+ * Each repository can be given a namespace, which stores its state in a child
+ * preferences node of that name, so several premises can share one JVM and user
+ * account without overwriting each other. Without a namespace the package node is used.
+ * <p>
+ * Sensors are saved as a {@link RepositorySnapshot}, split across as many preference
+ * values as it needs since each value is capped at {@link Preferences#MAX_VALUE_LENGTH}
+ * characters. Snapshots alternate between two sets of chunks, and a pointer to the set
+ * just written is updated last, so a crash part way through a flush leaves the previous
+ * snapshot whole. Should the current set still fail to read, the previous one is used.
+ * State saved by earlier versions, as a single JSON value or as one set of chunks, is
+ * converted the first time it is loaded or flushed.
  */
-public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
+public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PretendDatabaseSecurityRepositoryImpl.class.getName());
+
+    //open write-behind repositories, flushed by the shutdown hook
+    private static final Set<PretendDatabaseSecurityRepositoryImpl> WRITE_BEHIND = Collections.newSetFromMap(new WeakHashMap<>());
+    //guarded by WRITE_BEHIND
+    private static boolean shutdownHookAdded;
+    private static final ScheduledThreadPoolExecutor FLUSHER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "sensor-write-behind");
+        t.setDaemon(true);
+        return t;
+    });
 
-    private Set<Sensor> sensors;
+    static {
+        FLUSHER.setRemoveOnCancelPolicy(true);
+    }
+
+    //indexed by sensor ID, with the active sensors tracked alongside, so writes and queries never walk the set
+    private SensorStore sensors;
     private com.udasecurity.security.data.AlarmStatus alarmStatus;
     private com.udasecurity.security.data.ArmingStatus armingStatus;
 
-    //preference keys
+    //write-behind state
+    private final int flushBatchSize;
+    private final Future<?> timedFlush;
+    private boolean sensorsDirty;
+    private int pendingSensorWrites;
+
+    //preference keys; SENSORS holds the JSON written by earlier versions, and SNAPSHOT_CHUNKS
+    //counts the SNAPSHOT_<i> chunks of the single snapshot set written before sets alternated
     private static final String SENSORS = "SENSORS";
+    private static final String SNAPSHOT_CHUNKS = "SNAPSHOT_CHUNKS";
+    private static final String SNAPSHOT_CHUNK = "SNAPSHOT_";
+    //names the snapshot set, A or B, that holds the latest snapshot
+    private static final String SNAPSHOT_CURRENT = "SNAPSHOT_CURRENT";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
-    private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
-    private static final Gson gson = new Gson();
+    //byte arrays are stored as base64, which is a third longer
+    private static final int SNAPSHOT_CHUNK_BYTES = Preferences.MAX_VALUE_LENGTH / 4 * 3;
+
+    private final Preferences prefs;
 
     public PretendDatabaseSecurityRepositoryImpl() {
+        this(0, 1);
+    }
+
+    /**
+     * Creates a write-through repository whose state is kept apart from every other namespace.
+     * @param namespace Name of the preferences node holding this repository's state
+     */
+    public PretendDatabaseSecurityRepositoryImpl(String namespace) {
+        this(namespace, 0, 1);
+    }
+
+    /**
+     * Creates a repository that batches sensor writes.
+     * @param flushIntervalMillis How often dirty sensors are flushed in the background. 0 disables the timer.
+     * @param flushBatchSize Number of pending sensor changes that forces an immediate flush. 1 means write-through.
+     */
+    public PretendDatabaseSecurityRepositoryImpl(long flushIntervalMillis, int flushBatchSize) {
+        this(null, flushIntervalMillis, flushBatchSize);
+    }
+
+    /**
+     * Creates a namespaced repository that batches sensor writes.
+     * @param namespace Name of the preferences node holding this repository's state, or null for the shared package node
+     * @param flushIntervalMillis How often dirty sensors are flushed in the background. 0 disables the timer.
+     * @param flushBatchSize Number of pending sensor changes that forces an immediate flush. 1 means write-through.
+     */
+    public PretendDatabaseSecurityRepositoryImpl(String namespace, long flushIntervalMillis, int flushBatchSize) {
+        if (flushIntervalMillis < 0 || flushBatchSize < 1) {
+            throw new IllegalArgumentException("Flush interval must be >= 0 and batch size >= 1");
+        }
+        this.prefs = preferences(namespace);
+        this.flushBatchSize = flushBatchSize;
+        load();
+
+        if (flushIntervalMillis > 0) {
+            TimedFlush task = new TimedFlush(this);
+            timedFlush = FLUSHER.scheduleWithFixedDelay(task, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            task.schedule = timedFlush;
+        } else {
+            timedFlush = null;
+        }
+
+        if (flushBatchSize > 1 || timedFlush != null) {
+            synchronized (WRITE_BEHIND) {
+                WRITE_BEHIND.add(this);
+                if (!shutdownHookAdded) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(PretendDatabaseSecurityRepositoryImpl::flushAll,
+                            "sensor-write-behind-shutdown"));
+                    shutdownHookAdded = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes every write-behind repository that has not been closed. Run by the shutdown hook.
+     */
+    static void flushAll() {
+        List<PretendDatabaseSecurityRepositoryImpl> open;
+        synchronized (WRITE_BEHIND) {
+            open = new ArrayList<>(WRITE_BEHIND);
+        }
+        for (PretendDatabaseSecurityRepositoryImpl repository : open) {
+            try {
+                repository.flush();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to flush sensors", e);
+            }
+        }
+    }
+
+    private static Preferences preferences(String namespace) {
+        Preferences root = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+        if (namespace == null) return root;
+        if (namespace.isEmpty() || namespace.indexOf('/') >= 0 || namespace.length() > Preferences.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Namespace must be 1 to " + Preferences.MAX_NAME_LENGTH
+                    + " characters without '/': " + namespace);
+        }
+        return root.node(namespace);
+    }
+
+    private void load() {
         try {
             alarmStatus = com.udasecurity.security.data.AlarmStatus.valueOf(prefs.get(ALARM_STATUS, com.udasecurity.security.data.AlarmStatus.NO_ALARM.toString()));
             armingStatus = com.udasecurity.security.data.ArmingStatus.valueOf(prefs.get(ARMING_STATUS, com.udasecurity.security.data.ArmingStatus.DISARMED.toString()));
 
+            //statuses are written through to their own keys, so the snapshot's copies are never newer
+            String current = prefs.get(SNAPSHOT_CURRENT, null);
+            if (current != null) {
+                sensors = readCurrentSnapshot(current).getSensors();
+                return;
+            }
+            if (prefs.getInt(SNAPSHOT_CHUNKS, 0) > 0) {
+                sensors = readSnapshot(null).getSensors();
+                return;
+            }
             String sensorString = prefs.get(SENSORS, null);
-            if(sensorString == null) {
-                sensors = new TreeSet<>();
-            } else {
-                Type type = new TypeToken<Set<Sensor>>() {
-                }.getType();
-                sensors = gson.fromJson(sensorString, type);
+            sensors = new SensorStore();
+            if(sensorString != null) {
+                SensorJson.readSensors(new StringReader(sensorString), sensors::put);
+                writeSnapshot();
+                prefs.remove(SENSORS);
             }
         } catch (Exception e) {
-            sensors = new TreeSet<>();
+            sensors = new SensorStore();
             alarmStatus = AlarmStatus.NO_ALARM;
             armingStatus = ArmingStatus.DISARMED;
 
@@ -51,50 +205,221 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
     }
 
     @Override
-    public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        markSensorsDirty();
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+        markSensorsDirty();
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        markSensorsDirty();
     }
 
     @Override
-    public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void addSensors(Collection<Sensor> batch) {
+        for (Sensor sensor : batch) {
+            sensors.put(sensor);
+        }
+        markSensorsDirty();
     }
 
     @Override
-    public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void removeSensors(Collection<Sensor> batch) {
+        for (Sensor sensor : batch) {
+            sensors.remove(sensor.getSensorId());
+        }
+        markSensorsDirty();
     }
 
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> batch) {
+        for (Sensor sensor : batch) {
+            sensors.put(sensor);
+        }
+        markSensorsDirty();
+    }
 
     @Override
-    public void setAlarmStatus(com.udasecurity.security.data.AlarmStatus alarmStatus) {
+    public synchronized void setAlarmStatus(com.udasecurity.security.data.AlarmStatus alarmStatus) {
         this.alarmStatus = alarmStatus;
         prefs.put(ALARM_STATUS, this.alarmStatus.toString());
     }
 
     @Override
-    public void setArmingStatus(com.udasecurity.security.data.ArmingStatus armingStatus) {
+    public synchronized void setArmingStatus(com.udasecurity.security.data.ArmingStatus armingStatus) {
         this.armingStatus = armingStatus;
         prefs.put(ARMING_STATUS, this.armingStatus.toString());
     }
 
     @Override
-    public Set<Sensor> getSensors() {
-        return new TreeSet<>(sensors);
+    public synchronized Set<Sensor> getSensors() {
+        return new TreeSet<>(sensors.sortedView());
+
+    }
+
+    /**
+     * Writes any pending sensor changes to preferences. Call this at durability points
+     * when running in write-behind mode; in write-through mode it is a no-op.
+     */
+    public synchronized void flush() {
+        if (!sensorsDirty) return;
 
+        writeSnapshot();
+        sensorsDirty = false;
+        pendingSensorWrites = 0;
+    }
+
+    private RepositorySnapshot readCurrentSnapshot(String current) throws IOException {
+        try {
+            return readSnapshot(current);
+        } catch (IOException | RuntimeException e) {
+            try {
+                RepositorySnapshot previous = readSnapshot(otherSet(current));
+                LOGGER.log(Level.WARNING, "Snapshot set " + current + " is unreadable, loaded the previous snapshot", e);
+                return previous;
+            } catch (IOException | RuntimeException previousFailure) {
+                e.addSuppressed(previousFailure);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @param set A or B, or null for the single set written by earlier versions
+     */
+    private RepositorySnapshot readSnapshot(String set) throws IOException {
+        int chunkCount = prefs.getInt(chunkCountKey(set), 0);
+        if (chunkCount < 1) throw new IOException("No snapshot in set " + set);
+        byte[][] chunks = new byte[chunkCount][];
+        int size = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = prefs.getByteArray(chunkKey(set, i), null);
+            if (chunks[i] == null) throw new IOException("Missing snapshot chunk " + i);
+            size += chunks[i].length;
+        }
+        ByteBuffer snapshot = ByteBuffer.allocate(size);
+        for (byte[] chunk : chunks) {
+            snapshot.put(chunk);
+        }
+        snapshot.flip();
+        return RepositorySnapshot.read(snapshot);
+    }
+
+    /**
+     * Writes the snapshot over the set that is not current and only then points at it,
+     * so the current set is never touched.
+     */
+    private void writeSnapshot() {
+        byte[] snapshot = RepositorySnapshot.write(alarmStatus, armingStatus, sensors);
+        int chunkCount = (snapshot.length + SNAPSHOT_CHUNK_BYTES - 1) / SNAPSHOT_CHUNK_BYTES;
+        String current = prefs.get(SNAPSHOT_CURRENT, null);
+        String target = current == null ? "A" : otherSet(current);
+        for (int i = 0; i < chunkCount; i++) {
+            int from = i * SNAPSHOT_CHUNK_BYTES;
+            prefs.putByteArray(chunkKey(target, i), Arrays.copyOfRange(snapshot, from, Math.min(snapshot.length, from + SNAPSHOT_CHUNK_BYTES)));
+        }
+        removeChunksFrom(target, chunkCount);
+        prefs.putInt(chunkCountKey(target), chunkCount);
+        prefs.put(SNAPSHOT_CURRENT, target);
+
+        if (current == null) {
+            removeChunksFrom(null, 0);
+            prefs.remove(SNAPSHOT_CHUNKS);
+        }
+    }
+
+    /**
+     * Removes a set's chunks from {@code first} on. Goes by the keys rather than the
+     * recorded count, which an interrupted write may have left behind.
+     */
+    private void removeChunksFrom(String set, int first) {
+        for (int i = first; prefs.get(chunkKey(set, i), null) != null; i++) {
+            prefs.remove(chunkKey(set, i));
+        }
+    }
+
+    private static String otherSet(String set) {
+        return "A".equals(set) ? "B" : "A";
+    }
+
+    private static String chunkKey(String set, int index) {
+        return set == null ? SNAPSHOT_CHUNK + index : SNAPSHOT_CHUNK + set + "_" + index;
+    }
+
+    private static String chunkCountKey(String set) {
+        return set == null ? SNAPSHOT_CHUNKS : SNAPSHOT_CHUNK + set + "_CHUNKS";
+    }
+
+    /**
+     * Flushes pending changes and stops the background flusher.
+     */
+    @Override
+    public void close() {
+        if (timedFlush != null) {
+            timedFlush.cancel(false);
+        }
+        synchronized (WRITE_BEHIND) {
+            WRITE_BEHIND.remove(this);
+        }
+        flush();
+    }
+
+    private void markSensorsDirty() {
+        sensorsDirty = true;
+        if (++pendingSensorWrites >= flushBatchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    /**
+     * Copy of the IDs of the active sensors, taken under the repository's lock.
+     */
+    @Override
+    public synchronized Set<UUID> getActiveSensorIds() {
+        return new HashSet<>(sensors.activeIds());
     }
 
     @Override
-    public com.udasecurity.security.data.AlarmStatus getAlarmStatus() {
+    public synchronized com.udasecurity.security.data.AlarmStatus getAlarmStatus() {
         return alarmStatus;
     }
 
     @Override
-    public com.udasecurity.security.data.ArmingStatus getArmingStatus() {
+    public synchronized com.udasecurity.security.data.ArmingStatus getArmingStatus() {
         return armingStatus;
     }
+
+    /**
+     * Timer task that holds its repository weakly and cancels itself once it is gone.
+     */
+    private static final class TimedFlush implements Runnable {
+        private final WeakReference<PretendDatabaseSecurityRepositoryImpl> repository;
+        private volatile Future<?> schedule;
+
+        private TimedFlush(PretendDatabaseSecurityRepositoryImpl repository) {
+            this.repository = new WeakReference<>(repository);
+        }
+
+        @Override
+        public void run() {
+            PretendDatabaseSecurityRepositoryImpl target = repository.get();
+            if (target != null) {
+                target.flush();
+            } else if (schedule != null) {
+                schedule.cancel(false);
+            }
+        }
+    }
 }
@@ -0,0 +1,104 @@
+package com.udasecurity.security.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact, versioned binary image of a repository's whole state, read without reflection
+ * or text parsing. The layout is {@code [int magic][int version][byte alarm status]
+ * [byte arming status][sensors][int crc32]}, where the sensor section is described by
+ * {@link SensorStore#writeTo} and the checksum covers everything before it. Statuses are
+ * stored by ordinal, so new enum constants must be added at the end.
+ */
+public final class RepositorySnapshot {
+
+    private static final int MAGIC = 0x43505253; // "CPRS"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 10;
+
+    private final AlarmStatus alarmStatus;
+    private final ArmingStatus armingStatus;
+    private final SensorStore sensors;
+
+    private RepositorySnapshot(AlarmStatus alarmStatus, ArmingStatus armingStatus, SensorStore sensors) {
+        this.alarmStatus = alarmStatus;
+        this.armingStatus = armingStatus;
+        this.sensors = sensors;
+    }
+
+    /**
+     * Encodes the given state in the current format version.
+     */
+    public static byte[] write(AlarmStatus alarmStatus, ArmingStatus armingStatus, SensorStore sensors) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_BYTES + 64 + sensors.size() * 24);
+        CRC32 crc = new CRC32();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(bytes, crc), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(alarmStatus.ordinal());
+            out.writeByte(armingStatus.ordinal());
+            sensors.writeTo(out);
+            out.flush();
+            //the checksum itself goes around the checked stream
+            new DataOutputStream(bytes).writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            //in-memory streams do not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a snapshot from the buffer's position to its limit.
+     * @throws IOException if the data is truncated, corrupt or of an unknown version
+     */
+    public static RepositorySnapshot read(ByteBuffer snapshot) throws IOException {
+        ByteBuffer in = snapshot.slice();
+        int bodyLength = in.limit() - 4;
+        if (bodyLength < HEADER_BYTES + 8) throw new IOException("Truncated repository snapshot");
+        CRC32 crc = new CRC32();
+        ByteBuffer body = in.duplicate();
+        body.limit(bodyLength);
+        crc.update(body);
+        if ((int) crc.getValue() != in.getInt(bodyLength)) {
+            throw new IOException("Corrupt repository snapshot");
+        }
+        if (in.getInt() != MAGIC) throw new IOException("Not a repository snapshot");
+        int version = in.getInt();
+        if (version != VERSION) throw new IOException("Unsupported repository snapshot version " + version);
+
+        try {
+            AlarmStatus alarmStatus = AlarmStatus.values()[in.get()];
+            ArmingStatus armingStatus = ArmingStatus.values()[in.get()];
+            in.limit(bodyLength);
+            SensorStore sensors = SensorStore.readFrom(in);
+            if (in.hasRemaining()) throw new IOException("Unexpected data after repository snapshot");
+            return new RepositorySnapshot(alarmStatus, armingStatus, sensors);
+        } catch (RuntimeException e) {
+            //a checksum match rules out damage, so this is a writer bug
+            throw new IOException("Malformed repository snapshot", e);
+        }
+    }
+
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * The decoded sensors. The store is handed over, not copied.
+     */
+    public SensorStore getSensors() {
+        return sensors;
+    }
+}
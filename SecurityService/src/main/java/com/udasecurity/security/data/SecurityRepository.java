@@ -1,6 +1,8 @@
 package com.udasecurity.security.data;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * Interface showing the methods our security repository will need to support
@@ -9,9 +11,30 @@ public interface SecurityRepository {
     void addSensor(Sensor sensor);
     void removeSensor(Sensor sensor);
     void updateSensor(Sensor sensor);
+
+    /**
+     * Bulk variants of the single-sensor writes. Each call applies the whole batch
+     * and persists it as one write.
+     */
+    void addSensors(Collection<Sensor> sensors);
+    void removeSensors(Collection<Sensor> sensors);
+    void updateSensors(Collection<Sensor> sensors);
+
     void setAlarmStatus(AlarmStatus alarmStatus);
     void setArmingStatus(ArmingStatus armingStatus);
     Set<Sensor> getSensors();
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
+
+    /**
+     * Number of sensors currently marked active. Implementations keep this as an
+     * index so it can be answered in constant time without copying the sensor set.
+     */
+    int getActiveSensorCount();
+
+    /**
+     * IDs of the sensors active at the time of the call. The set is the caller's own
+     * copy, so later sensor changes do not show through and it may be read from any thread.
+     */
+    Set<UUID> getActiveSensorIds();
 }
@@ -1,10 +1,5 @@
 package com.udasecurity.security.data;
 
-
-import dev.mccue.guava.collect.ComparisonChain;
-
-
-import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -13,14 +8,20 @@ import java.util.UUID;
 public class Sensor implements Comparable<Sensor> {
     private UUID sensorId;
     private String name;
-    private Boolean active;
+    private boolean active;
     private SensorType sensorType;
+    //cached because sensors live in hash sets keyed by ID; not serialized
+    private transient int hash;
 
     public Sensor(String name, SensorType sensorType) {
+        this(UUID.randomUUID(), name, sensorType, false);
+    }
+
+    public Sensor(UUID sensorId, String name, SensorType sensorType, boolean active) {
+        this.sensorId = sensorId;
         this.name = name;
         this.sensorType = sensorType;
-        this.sensorId = UUID.randomUUID();
-        this.active = Boolean.FALSE;
+        this.active = active;
     }
 
     @Override
@@ -33,7 +34,13 @@ public class Sensor implements Comparable<Sensor> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(sensorId);
+        //deserialized sensors start at 0 and compute it on first use
+        int h = hash;
+        if (h == 0) {
+            h = sensorId.hashCode();
+            hash = h;
+        }
+        return h;
     }
 
     public String getName() {
@@ -44,11 +51,11 @@ public class Sensor implements Comparable<Sensor> {
         this.name = name;
     }
 
-    public Boolean getActive() {
+    public boolean getActive() {
         return active;
     }
 
-    public void setActive(Boolean active) {
+    public void setActive(boolean active) {
         this.active = active;
     }
 
@@ -66,14 +73,16 @@ public class Sensor implements Comparable<Sensor> {
 
     public void setSensorId(UUID sensorId) {
         this.sensorId = sensorId;
+        this.hash = 0;
     }
 
     @Override
     public int compareTo(Sensor o) {
-        return ComparisonChain.start()
-                .compare(this.name, o.name)
-                .compare(this.sensorType.toString(), o.sensorType.toString())
-                .compare(this.sensorId, o.sensorId)
-                .result();
+        int result = name.compareTo(o.name);
+        if (result != 0) return result;
+        //ordered by type name, as displayed
+        result = sensorType.name().compareTo(o.sensorType.name());
+        if (result != 0) return result;
+        return sensorId.compareTo(o.sensorId);
     }
 }
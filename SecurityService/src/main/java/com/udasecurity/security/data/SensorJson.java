@@ -0,0 +1,195 @@
+package com.udasecurity.security.data;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Hand-written Gson type adapters for the repository's data classes, producing the same
+ * JSON as Gson's reflective serialization: sensors as
+ * {@code {"sensorId":"...","name":"...","active":false,"sensorType":"DOOR"}} and enums by
+ * constant name. They read and write fields directly, so no reflection is involved and
+ * nothing is buffered beyond the current token.
+ * <p>
+ * {@link #writeSensors} and {@link #readSensors} stream a whole sensor array, which is how
+ * sensor sets are exported and how JSON saved by earlier versions is loaded.
+ */
+public final class SensorJson {
+
+    public static final TypeAdapter<Sensor> SENSOR = new SensorAdapter();
+    public static final TypeAdapter<SensorType> SENSOR_TYPE = new EnumAdapter<>(SensorType.class);
+    public static final TypeAdapter<AlarmStatus> ALARM_STATUS = new EnumAdapter<>(AlarmStatus.class);
+    public static final TypeAdapter<ArmingStatus> ARMING_STATUS = new EnumAdapter<>(ArmingStatus.class);
+
+    //field names, in the order the reflective adapter used
+    private static final String SENSOR_ID = "sensorId";
+    private static final String NAME = "name";
+    private static final String ACTIVE = "active";
+    private static final String SENSOR_TYPE_FIELD = "sensorType";
+
+    private SensorJson() {
+    }
+
+    /**
+     * Registers every adapter, so a Gson built from the builder never reflects over
+     * these types.
+     */
+    public static GsonBuilder registerAdapters(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(Sensor.class, SENSOR)
+                .registerTypeAdapter(SensorType.class, SENSOR_TYPE)
+                .registerTypeAdapter(AlarmStatus.class, ALARM_STATUS)
+                .registerTypeAdapter(ArmingStatus.class, ARMING_STATUS);
+    }
+
+    /**
+     * Writes the sensors as a JSON array. The writer is flushed but not closed; wrap
+     * unbuffered writers in a {@link BufferedWriter}.
+     */
+    public static void writeSensors(Iterable<Sensor> sensors, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginArray();
+        for (Sensor sensor : sensors) {
+            SENSOR.write(writer, sensor);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+
+    /**
+     * Writes the sensors as a UTF-8 JSON array. The stream is flushed but not closed.
+     */
+    public static void writeSensors(Iterable<Sensor> sensors, OutputStream out) throws IOException {
+        writeSensors(sensors, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Reads a JSON array of sensors, handing each one over as soon as it is decoded so
+     * the array is never held in memory. Null entries are skipped.
+     * @return Number of sensors read
+     * @throws JsonParseException if a sensor lacks an ID, name or type, or has an unknown type
+     */
+    public static int readSensors(Reader in, Consumer<? super Sensor> sensors) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Sensor sensor = SENSOR.read(reader);
+            if (sensor == null) continue;
+            sensors.accept(sensor);
+            count++;
+        }
+        reader.endArray();
+        return count;
+    }
+
+    private static final class SensorAdapter extends TypeAdapter<Sensor> {
+        @Override
+        public void write(JsonWriter out, Sensor sensor) throws IOException {
+            if (sensor == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            if (sensor.getSensorId() != null) {
+                out.name(SENSOR_ID).value(sensor.getSensorId().toString());
+            }
+            if (sensor.getName() != null) {
+                out.name(NAME).value(sensor.getName());
+            }
+            out.name(ACTIVE).value(sensor.getActive());
+            if (sensor.getSensorType() != null) {
+                out.name(SENSOR_TYPE_FIELD);
+                SENSOR_TYPE.write(out, sensor.getSensorType());
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Sensor read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            UUID sensorId = null;
+            String name = null;
+            boolean active = false;
+            SensorType sensorType = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case SENSOR_ID:
+                        sensorId = UUID.fromString(in.nextString());
+                        break;
+                    case NAME:
+                        name = in.nextString();
+                        break;
+                    case ACTIVE:
+                        active = in.nextBoolean();
+                        break;
+                    case SENSOR_TYPE_FIELD:
+                        sensorType = SENSOR_TYPE.read(in);
+                        break;
+                    default:
+                        in.skipValue();
+                        break;
+                }
+            }
+            in.endObject();
+            if (sensorId == null || name == null || sensorType == null) {
+                throw new JsonParseException("Sensor needs an ID, name and type at " + in.getPath());
+            }
+            return new Sensor(sensorId, name, sensorType, active);
+        }
+    }
+
+    private static final class EnumAdapter<E extends Enum<E>> extends TypeAdapter<E> {
+        private final Class<E> type;
+        private final Map<String, E> constants = new HashMap<>();
+
+        private EnumAdapter(Class<E> type) {
+            this.type = type;
+            for (E constant : type.getEnumConstants()) {
+                constants.put(constant.name(), constant);
+            }
+        }
+
+        @Override
+        public void write(JsonWriter out, E value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(value.name());
+            }
+        }
+
+        @Override
+        public E read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String name = in.nextString();
+            E constant = constants.get(name);
+            if (constant == null) {
+                throw new JsonParseException("Unknown " + type.getSimpleName() + " " + name + " at " + in.getPath());
+            }
+            return constant;
+        }
+    }
+}
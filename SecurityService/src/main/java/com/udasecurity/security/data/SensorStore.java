@@ -0,0 +1,605 @@
+package com.udasecurity.security.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Compact in-memory sensor table. Sensors are stored column-wise in primitive arrays and
+ * found through an open-addressing hash index on the two halves of their UUID, so an
+ * update is a hash probe instead of a tree walk of string comparisons. Active flags live
+ * in a bitset and names in a reference-counted flyweight table, so the columns hold each
+ * distinct name once.
+ * <p>
+ * The store keeps the Sensor objects it is given, as the other repositories do:
+ * {@link #get} and {@link #sortedView()} hand back the instance last passed to
+ * {@link #put}, and {@link #setActive} updates that instance, so a caller holding a
+ * sensor always sees its current state. Otherwise the store only changes its own
+ * columns: it does not rename the caller's sensors, and {@link #remove} leaves them as
+ * they were. Sensors loaded by {@link #readFrom} are created on first use and share the
+ * table's names. The sorted view is cached and rebuilt lazily after sensors are added,
+ * removed, renamed or replaced by another instance.
+ * <p>
+ * Because the Sensor objects are kept, the store saves little memory over a TreeSet of
+ * them. For a million sensors on a 64-bit JVM with compressed oops, SensorFootprint
+ * measures 156 bytes per sensor against 166 for the TreeSet and active-ID set, 196 once
+ * the sorted view is built, and 34 for the columns alone, which is what a store loaded
+ * by {@link #readFrom} costs until its sensors are read. The gain is in lookups and in
+ * loading, not in the footprint of a store in use.
+ * <p>
+ * Not thread-safe; repositories guard it with their own lock.
+ */
+public class SensorStore {
+
+    private static final SensorType[] TYPES = SensorType.values();
+    private static final int MIN_CAPACITY = 16;
+    private static final int SNAPSHOT_ROW_BYTES = 22;
+
+    //dense columns, one row per sensor, rows 0..size-1
+    private long[] idHigh;
+    private long[] idLow;
+    private int[] nameIds;
+    private byte[] types;
+    private long[] activeBits;
+    private int size;
+    private int activeCount;
+
+    //open-addressing index: row + 1 per slot, 0 for empty; kept at most half full
+    private int[] table;
+    private int mask;
+
+    private final NameTable names = new NameTable();
+    private final Set<UUID> activeIds = new ActiveIdSet();
+
+    //the instance handed out for each row, null until first needed for loaded rows
+    private Sensor[] objects;
+    private SortedSet<Sensor> sortedView;
+
+    public SensorStore() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSensors Number of sensors to size the table for up front
+     */
+    public SensorStore(int expectedSensors) {
+        int capacity = Math.max(MIN_CAPACITY, expectedSensors);
+        idHigh = new long[capacity];
+        idLow = new long[capacity];
+        nameIds = new int[capacity];
+        types = new byte[capacity];
+        objects = new Sensor[capacity];
+        activeBits = new long[(capacity + 63) >>> 6];
+        table = new int[tableSizeFor(capacity)];
+        mask = table.length - 1;
+    }
+
+    /**
+     * Adds the sensor, or replaces the sensor with the same ID by this one.
+     * @return true if the sensor was not stored before
+     */
+    public boolean put(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        String name = Objects.requireNonNull(sensor.getName(), "Sensor name");
+        long high = id.getMostSignificantBits();
+        long low = id.getLeastSignificantBits();
+
+        int row = find(high, low);
+        if (row >= 0) {
+            if (!names.nameOf(nameIds[row]).equals(name)) {
+                names.release(nameIds[row]);
+                nameIds[row] = names.acquire(name);
+                invalidateView();
+            }
+            if (types[row] != (byte) sensor.getSensorType().ordinal()) {
+                types[row] = (byte) sensor.getSensorType().ordinal();
+                invalidateView();
+            }
+            if (objects[row] != sensor) {
+                objects[row] = sensor;
+                invalidateView();
+            }
+            setActiveAt(row, sensor.getActive());
+            return false;
+        }
+
+        ensureCapacity(size + 1);
+        row = size++;
+        idHigh[row] = high;
+        idLow[row] = low;
+        nameIds[row] = names.acquire(name);
+        types[row] = (byte) sensor.getSensorType().ordinal();
+        objects[row] = sensor;
+        insertIntoTable(row);
+        invalidateView();
+        setActiveAt(row, sensor.getActive());
+        return true;
+    }
+
+    /**
+     * @return true if a sensor with this ID was stored
+     */
+    public boolean remove(UUID sensorId) {
+        int slot = findSlot(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if (slot < 0) return false;
+
+        int row = table[slot] - 1;
+        deleteSlot(slot);
+        //only the columns change; the caller's Sensor keeps the state it had
+        if (isActiveAt(row)) {
+            clearBit(row);
+            activeCount--;
+        }
+        names.release(nameIds[row]);
+
+        //fill the hole with the last row so the columns stay dense
+        int last = --size;
+        if (row != last) {
+            idHigh[row] = idHigh[last];
+            idLow[row] = idLow[last];
+            nameIds[row] = nameIds[last];
+            types[row] = types[last];
+            objects[row] = objects[last];
+            boolean lastActive = isActiveAt(last);
+            clearBit(last);
+            if (lastActive) setBit(row);
+            table[findSlot(idHigh[row], idLow[row])] = row + 1;
+        }
+        objects[last] = null;
+        invalidateView();
+        return true;
+    }
+
+    public boolean contains(UUID sensorId) {
+        return find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * @return The stored sensor, or null if there is none with this ID
+     */
+    public Sensor get(UUID sensorId) {
+        int row = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        return row < 0 ? null : materialize(row);
+    }
+
+    /**
+     * Sets the activation flag of a stored sensor, and of the Sensor object stored for it.
+     * @return true if the flag changed
+     */
+    public boolean setActive(UUID sensorId, boolean active) {
+        int row = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if (row < 0) {
+            throw new IllegalArgumentException("Unknown sensor " + sensorId);
+        }
+        return setActiveAt(row, active);
+    }
+
+    public boolean isActive(UUID sensorId) {
+        int row = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        return row >= 0 && isActiveAt(row);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int activeCount() {
+        return activeCount;
+    }
+
+    /**
+     * Read-only live view of the IDs of active sensors. UUIDs are created as the view is
+     * iterated.
+     */
+    public Set<UUID> activeIds() {
+        return activeIds;
+    }
+
+    /**
+     * Sensors in display order. The set is shared until the next add, remove or rename,
+     * so callers must not rename or retype the sensors in it except through {@link #put}.
+     */
+    public SortedSet<Sensor> sortedView() {
+        if (sortedView == null) {
+            Sensor[] sorted = new Sensor[size];
+            for (int row = 0; row < size; row++) {
+                sorted[row] = materialize(row);
+            }
+            Arrays.sort(sorted);
+            //building from a sorted set is linear, not n log n
+            sortedView = Collections.unmodifiableSortedSet(new TreeSet<>(new SortedArraySet(sorted)));
+        }
+        return sortedView;
+    }
+
+    /**
+     * Writes the sensors in the layout read by {@link #readFrom}: the distinct names as
+     * {@code [int count]([short length][utf-8])*}, then {@code [int count]} fixed-size rows
+     * of {@code [long idHigh][long idLow][int name][byte type][byte active]}. Each name is
+     * written once however many sensors share it.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        int[] denseIds = new int[names.used];
+        int nameCount = 0;
+        for (int id = 0; id < names.used; id++) {
+            if (names.references[id] > 0) denseIds[id] = nameCount++;
+        }
+        out.writeInt(nameCount);
+        for (int id = 0; id < names.used; id++) {
+            if (names.references[id] == 0) continue;
+            byte[] name = names.nameOf(id).getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xffff) {
+                throw new IllegalArgumentException("Sensor name is too long to store");
+            }
+            out.writeShort(name.length);
+            out.write(name);
+        }
+        out.writeInt(size);
+        for (int row = 0; row < size; row++) {
+            out.writeLong(idHigh[row]);
+            out.writeLong(idLow[row]);
+            out.writeInt(denseIds[nameIds[row]]);
+            out.writeByte(types[row]);
+            out.writeByte(isActiveAt(row) ? 1 : 0);
+        }
+    }
+
+    /**
+     * Rebuilds a store written by {@link #writeTo} straight into the columns, decoding
+     * each distinct name once and without creating Sensor or UUID objects.
+     * @throws IllegalArgumentException if the data is malformed
+     */
+    static SensorStore readFrom(ByteBuffer in) {
+        int nameCount = in.getInt();
+        if (nameCount < 0 || nameCount > in.remaining() / 2) {
+            throw new IllegalArgumentException("Bad name count " + nameCount);
+        }
+        String[] decoded = new String[nameCount];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < nameCount; i++) {
+            int length = in.getShort() & 0xffff;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            in.get(scratch, 0, length);
+            decoded[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / SNAPSHOT_ROW_BYTES) {
+            throw new IllegalArgumentException("Bad sensor count " + count);
+        }
+        SensorStore store = new SensorStore(count);
+        store.names.preload(decoded);
+        for (int row = 0; row < count; row++) {
+            long high = in.getLong();
+            long low = in.getLong();
+            int name = in.getInt();
+            byte type = in.get();
+            boolean active = in.get() != 0;
+            if (name < 0 || name >= nameCount || type < 0 || type >= TYPES.length) {
+                throw new IllegalArgumentException("Bad sensor row " + row);
+            }
+            if (store.find(high, low) >= 0) {
+                throw new IllegalArgumentException("Duplicate sensor " + new UUID(high, low));
+            }
+            store.idHigh[row] = high;
+            store.idLow[row] = low;
+            store.nameIds[row] = name;
+            store.names.references[name]++;
+            store.types[row] = type;
+            store.size = row + 1;
+            store.insertIntoTable(row);
+            if (active) {
+                store.setBit(row);
+                store.activeCount++;
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Number of distinct names currently held by the flyweight table.
+     */
+    int distinctNameCount() {
+        return names.size();
+    }
+
+    private Sensor materialize(int row) {
+        Sensor sensor = objects[row];
+        if (sensor == null) {
+            sensor = new Sensor(new UUID(idHigh[row], idLow[row]), names.nameOf(nameIds[row]), TYPES[types[row]], isActiveAt(row));
+            objects[row] = sensor;
+        }
+        return sensor;
+    }
+
+    private boolean setActiveAt(int row, boolean active) {
+        if (isActiveAt(row) == active) return false;
+        if (active) {
+            setBit(row);
+            activeCount++;
+        } else {
+            clearBit(row);
+            activeCount--;
+        }
+        if (objects[row] != null) {
+            objects[row].setActive(active);
+        }
+        return true;
+    }
+
+    private boolean isActiveAt(int row) {
+        return (activeBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private void setBit(int row) {
+        activeBits[row >>> 6] |= 1L << row;
+    }
+
+    private void clearBit(int row) {
+        activeBits[row >>> 6] &= ~(1L << row);
+    }
+
+    private void invalidateView() {
+        sortedView = null;
+    }
+
+    private int find(long high, long low) {
+        int slot = findSlot(high, low);
+        return slot < 0 ? -1 : table[slot] - 1;
+    }
+
+    private int findSlot(long high, long low) {
+        for (int slot = hash(high, low) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) return -1;
+            int row = entry - 1;
+            if (idHigh[row] == high && idLow[row] == low) return slot;
+        }
+    }
+
+    private void insertIntoTable(int row) {
+        int slot = hash(idHigh[row], idLow[row]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    /**
+     * Linear-probing delete: shifts later entries of the probe run back into the hole
+     * so lookups never need tombstones.
+     */
+    private void deleteSlot(int slot) {
+        int hole = slot;
+        for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int row = table[next] - 1;
+            int home = hash(idHigh[row], idLow[row]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > idHigh.length) {
+            int capacity = Math.max(required, idHigh.length + (idHigh.length >> 1));
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            types = Arrays.copyOf(types, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+            activeBits = Arrays.copyOf(activeBits, (capacity + 63) >>> 6);
+        }
+        if (required * 2 > table.length) {
+            table = new int[tableSizeFor(required)];
+            mask = table.length - 1;
+            for (int row = 0; row < size; row++) {
+                insertIntoTable(row);
+            }
+        }
+    }
+
+    private static int tableSizeFor(int entries) {
+        return Integer.highestOneBit(Math.max(MIN_CAPACITY, entries) * 2 - 1) << 1;
+    }
+
+    private static int hash(long high, long low) {
+        long h = high ^ (low * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29));
+    }
+
+    /**
+     * Reference-counted name table; a name is dropped once no sensor uses it.
+     */
+    private static final class NameTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] names = new String[MIN_CAPACITY];
+        private int[] references = new int[MIN_CAPACITY];
+        private int[] free = new int[MIN_CAPACITY];
+        private int freeCount;
+        private int used;
+
+        private int acquire(String name) {
+            Integer existing = ids.get(name);
+            int id;
+            if (existing != null) {
+                id = existing;
+            } else {
+                id = freeCount > 0 ? free[--freeCount] : used++;
+                if (id == names.length) {
+                    names = Arrays.copyOf(names, id * 2);
+                    references = Arrays.copyOf(references, id * 2);
+                }
+                names[id] = name;
+                ids.put(name, id);
+            }
+            references[id]++;
+            return id;
+        }
+
+        /**
+         * Fills an empty table with names that have no references yet.
+         */
+        private void preload(String[] loaded) {
+            int capacity = Math.max(MIN_CAPACITY, loaded.length);
+            names = Arrays.copyOf(loaded, capacity);
+            references = new int[capacity];
+            used = loaded.length;
+            for (int id = 0; id < loaded.length; id++) {
+                if (ids.putIfAbsent(loaded[id], id) != null) {
+                    throw new IllegalArgumentException("Duplicate sensor name " + loaded[id]);
+                }
+            }
+        }
+
+        private void release(int id) {
+            if (--references[id] > 0) return;
+            ids.remove(names[id]);
+            names[id] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = id;
+        }
+
+        private String nameOf(int id) {
+            return names[id];
+        }
+
+        private int size() {
+            return ids.size();
+        }
+    }
+
+    private final class ActiveIdSet extends AbstractSet<UUID> {
+        @Override
+        public int size() {
+            return activeCount;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof UUID && isActive((UUID) o);
+        }
+
+        @Override
+        public Iterator<UUID> iterator() {
+            return new Iterator<UUID>() {
+                private int next = nextActive(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public UUID next() {
+                    if (next < 0) throw new NoSuchElementException();
+                    UUID id = new UUID(idHigh[next], idLow[next]);
+                    next = nextActive(next + 1);
+                    return id;
+                }
+            };
+        }
+
+        private int nextActive(int from) {
+            int word = from >>> 6;
+            if (from >= size) return -1;
+            long bits = activeBits[word] & (-1L << from);
+            while (true) {
+                if (bits != 0) {
+                    int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    return row < size ? row : -1;
+                }
+                if (++word >= activeBits.length) return -1;
+                bits = activeBits[word];
+            }
+        }
+    }
+
+    /**
+     * Lets TreeSet take its linear-time path when copying an already sorted array.
+     */
+    private static final class SortedArraySet extends AbstractSet<Sensor> implements SortedSet<Sensor> {
+        private final Sensor[] sorted;
+
+        private SortedArraySet(Sensor[] sorted) {
+            this.sorted = sorted;
+        }
+
+        @Override
+        public Iterator<Sensor> iterator() {
+            return Arrays.asList(sorted).iterator();
+        }
+
+        @Override
+        public int size() {
+            return sorted.length;
+        }
+
+        @Override
+        public Comparator<? super Sensor> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<Sensor> subSet(Sensor fromElement, Sensor toElement) {
+            if (fromElement.compareTo(toElement) > 0) {
+                throw new IllegalArgumentException("fromElement is after toElement");
+            }
+            return slice(indexOf(fromElement), indexOf(toElement));
+        }
+
+        @Override
+        public SortedSet<Sensor> headSet(Sensor toElement) {
+            return slice(0, indexOf(toElement));
+        }
+
+        @Override
+        public SortedSet<Sensor> tailSet(Sensor fromElement) {
+            return slice(indexOf(fromElement), sorted.length);
+        }
+
+        @Override
+        public Sensor first() {
+            if (sorted.length == 0) throw new NoSuchElementException();
+            return sorted[0];
+        }
+
+        @Override
+        public Sensor last() {
+            if (sorted.length == 0) throw new NoSuchElementException();
+            return sorted[sorted.length - 1];
+        }
+
+        /**
+         * Position of the first sensor not before {@code sensor}.
+         */
+        private int indexOf(Sensor sensor) {
+            int index = Arrays.binarySearch(sorted, sensor);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private SortedSet<Sensor> slice(int from, int to) {
+            return new SortedArraySet(Arrays.copyOfRange(sorted, from, to));
+        }
+    }
+}
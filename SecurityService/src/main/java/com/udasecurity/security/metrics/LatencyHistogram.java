@@ -0,0 +1,161 @@
+package com.udasecurity.security.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets. Every power of two is
+ * split into 32 equal buckets, so any recorded value is reported within about 3% of
+ * its true value, from one nanosecond up to centuries, in under 2,000 counters.
+ * <p>
+ * Recording is a few arithmetic operations and atomic increments, and allocates nothing.
+ * Snapshots copy the counters; counts recorded while a snapshot is taken may land in
+ * either that snapshot or the next, but are never lost.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one latency. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since a {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public Snapshot snapshot() {
+        return capture(false);
+    }
+
+    /**
+     * Takes a snapshot and starts counting from zero.
+     */
+    public Snapshot snapshotAndReset() {
+        return capture(true);
+    }
+
+    private Snapshot capture(boolean reset) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            count += copy[i];
+        }
+        long totalSum = reset ? sum.sumThenReset() : sum.sum();
+        long maxValue = reset ? max.getAndSet(0) : max.get();
+        if (reset) total.reset();
+        return new Snapshot(copy, count, totalSum, maxValue);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Midpoint of the range of values that fall into a bucket.
+     */
+    static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + ((1L << shift) >>> 1);
+    }
+
+    /**
+     * Immutable copy of a histogram's counts. The getters report nanoseconds so the
+     * snapshot can be published as JMX composite data as it is.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public long getP50Nanos() {
+            return valueAtPercentile(50);
+        }
+
+        public long getP90Nanos() {
+            return valueAtPercentile(90);
+        }
+
+        public long getP99Nanos() {
+            return valueAtPercentile(99);
+        }
+
+        public long getP999Nanos() {
+            return valueAtPercentile(99.9);
+        }
+
+        /**
+         * Smallest recorded value that at least the given percentage of values do not
+         * exceed, within bucket precision, and never more than the recorded maximum.
+         * @param percentile Percentage from 0 to 100
+         */
+        public long valueAtPercentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(valueOf(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", count,
+                    getMeanNanos() / 1000, micros(getP50Nanos()), micros(getP99Nanos()), micros(max));
+        }
+
+        private static double micros(long nanos) {
+            return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+        }
+    }
+}
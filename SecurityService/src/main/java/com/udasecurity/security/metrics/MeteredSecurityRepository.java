@@ -0,0 +1,107 @@
+package com.udasecurity.security.metrics;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.SecurityRepository;
+import com.udasecurity.security.data.Sensor;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository decorator that times every write, such as the preferences or journal
+ * writes underneath, into {@link SecurityMetrics.Operation#REPOSITORY_WRITE}. Reads are
+ * passed straight through.
+ */
+public class MeteredSecurityRepository implements SecurityRepository {
+
+    private final SecurityRepository delegate;
+    private final SecurityMetrics metrics;
+
+    public MeteredSecurityRepository(SecurityRepository delegate, SecurityMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        long start = metrics.start();
+        delegate.addSensor(sensor);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        long start = metrics.start();
+        delegate.removeSensor(sensor);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        long start = metrics.start();
+        delegate.updateSensor(sensor);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void addSensors(Collection<Sensor> sensors) {
+        long start = metrics.start();
+        delegate.addSensors(sensors);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void removeSensors(Collection<Sensor> sensors) {
+        long start = metrics.start();
+        delegate.removeSensors(sensors);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> sensors) {
+        long start = metrics.start();
+        delegate.updateSensors(sensors);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        long start = metrics.start();
+        delegate.setAlarmStatus(alarmStatus);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        long start = metrics.start();
+        delegate.setArmingStatus(armingStatus);
+        metrics.recordSince(SecurityMetrics.Operation.REPOSITORY_WRITE, start);
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return delegate.getSensors();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return delegate.getAlarmStatus();
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return delegate.getArmingStatus();
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return delegate.getActiveSensorCount();
+    }
+
+    @Override
+    public Set<UUID> getActiveSensorIds() {
+        return delegate.getActiveSensorIds();
+    }
+}
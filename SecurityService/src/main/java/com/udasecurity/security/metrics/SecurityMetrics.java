@@ -0,0 +1,294 @@
+package com.udasecurity.security.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Latency histograms, event counters and queue-depth gauges for one security system.
+ * Recording takes no locks and allocates nothing, so it can stay on in production;
+ * {@link #DISABLED} skips even the clock reads for code that has no metrics wired in.
+ * <p>
+ * {@link #register(String)} publishes the metrics as an MXBean under
+ * {@code com.udasecurity:type=SecurityMetrics,name=<name>}.
+ */
+public class SecurityMetrics implements SecurityMetricsMXBean {
+
+    //declared before DISABLED, whose construction reads them
+    private static final Operation[] OPERATIONS = Operation.values();
+    private static final Event[] EVENTS = Event.values();
+
+    /**
+     * Metrics that record nothing, used until real metrics are supplied.
+     */
+    public static final SecurityMetrics DISABLED = new SecurityMetrics(false);
+
+    /**
+     * Timed code paths.
+     */
+    public enum Operation {
+        /** A camera frame from arrival to the alarm state being updated. */
+        PROCESS_IMAGE,
+        /** A call to the image service. */
+        DETECTOR,
+        /** A write to the security repository. */
+        REPOSITORY_WRITE,
+        /** Handing one status event to the listeners. */
+        LISTENER_DISPATCH
+    }
+
+    /**
+     * Counted events.
+     */
+    public enum Event {
+        ALARM_STATUS_CHANGED,
+        ARMING_STATUS_CHANGED,
+        SENSOR_ACTIVATION_CHANGED,
+        FRAME_PROCESSED,
+        CAT_DETECTED
+    }
+
+    private final boolean enabled;
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] events = new LongAdder[EVENTS.length];
+    private final Map<String, IntSupplier> queueDepths = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile long intervalStart = System.nanoTime();
+    private volatile ObjectName registeredName;
+
+    public SecurityMetrics() {
+        this(true);
+    }
+
+    private SecurityMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < events.length; i++) {
+            events[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Reads the clock for a later {@link #recordSince}, or returns 0 when disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void recordSince(Operation operation, long startNanos) {
+        if (enabled) latencies[operation.ordinal()].recordSince(startNanos);
+    }
+
+    public void increment(Event event) {
+        if (enabled) events[event.ordinal()].increment();
+    }
+
+    public void add(Event event, int count) {
+        if (enabled) events[event.ordinal()].add(count);
+    }
+
+    /**
+     * Publishes a live queue depth, such as a work queue's size. A gauge registered
+     * under an existing name replaces it.
+     */
+    public void registerQueueDepth(String name, IntSupplier depth) {
+        if (enabled) queueDepths.put(name, depth);
+    }
+
+    public void unregisterQueueDepth(String name) {
+        queueDepths.remove(name);
+    }
+
+    /**
+     * Publishes any other live value, such as a component's own counters or a circuit
+     * breaker's state. A gauge registered under an existing name replaces it.
+     */
+    public void registerGauge(String name, LongSupplier value) {
+        if (enabled) gauges.put(name, value);
+    }
+
+    public void unregisterGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public LatencyHistogram.Snapshot getLatency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    public long getEventCount(Event event) {
+        return events[event.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getLatencies() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        for (Operation operation : OPERATIONS) {
+            snapshots.put(operation.name(), latencies[operation.ordinal()].snapshot());
+        }
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, Long> getEventCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Event event : EVENTS) {
+            counts.put(event.name(), events[event.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getEventsPerSecond() {
+        double seconds = getIntervalSeconds();
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Event event : EVENTS) {
+            rates.put(event.name(), seconds > 0 ? events[event.ordinal()].sum() / seconds : 0.0);
+        }
+        return rates;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        queueDepths.forEach((name, depth) -> depths.put(name, depth.getAsInt()));
+        return depths;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public double getIntervalSeconds() {
+        return (System.nanoTime() - intervalStart) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public void reset() {
+        snapshotAndReset();
+    }
+
+    /**
+     * Captures every metric and then starts a new interval, so consecutive calls give
+     * non-overlapping windows.
+     */
+    public Snapshot snapshotAndReset() {
+        long now = System.nanoTime();
+        Map<Operation, LatencyHistogram.Snapshot> latencySnapshots = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            latencySnapshots.put(operation, latencies[operation.ordinal()].snapshotAndReset());
+        }
+        Map<Event, Long> counts = new EnumMap<>(Event.class);
+        for (Event event : EVENTS) {
+            counts.put(event, events[event.ordinal()].sumThenReset());
+        }
+        long start = intervalStart;
+        intervalStart = now;
+        return new Snapshot(latencySnapshots, counts, getQueueDepths(), getGauges(), now - start);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     * @param name Value of the {@code name} key in the object name, for example a premise ID
+     * @throws IllegalStateException if the name is taken or JMX refuses the bean
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("com.udasecurity", propertiesFor(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+            return objectName;
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Metrics named " + name + " are already registered", e);
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register metrics " + name, e);
+        }
+    }
+
+    /**
+     * Removes the MBean added by {@link #register(String)}, if any.
+     */
+    public void unregister() {
+        ObjectName objectName = registeredName;
+        if (objectName == null) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            //already gone
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to unregister metrics " + objectName, e);
+        }
+        registeredName = null;
+    }
+
+    private static Hashtable<String, String> propertiesFor(String name) {
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("type", "SecurityMetrics");
+        //only names with characters special to ObjectName need quoting
+        properties.put("name", name.matches("[\\w.-]+") ? name : ObjectName.quote(name));
+        return properties;
+    }
+
+    /**
+     * Every metric at one point in time, covering the interval since the previous reset.
+     */
+    public static final class Snapshot {
+        private final Map<Operation, LatencyHistogram.Snapshot> latencies;
+        private final Map<Event, Long> eventCounts;
+        private final Map<String, Integer> queueDepths;
+        private final Map<String, Long> gauges;
+        private final long intervalNanos;
+
+        private Snapshot(Map<Operation, LatencyHistogram.Snapshot> latencies, Map<Event, Long> eventCounts,
+                         Map<String, Integer> queueDepths, Map<String, Long> gauges, long intervalNanos) {
+            this.latencies = Collections.unmodifiableMap(latencies);
+            this.eventCounts = Collections.unmodifiableMap(eventCounts);
+            this.queueDepths = Collections.unmodifiableMap(queueDepths);
+            this.gauges = Collections.unmodifiableMap(gauges);
+            this.intervalNanos = intervalNanos;
+        }
+
+        public LatencyHistogram.Snapshot getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        public long getEventCount(Event event) {
+            return eventCounts.get(event);
+        }
+
+        public double getEventsPerSecond(Event event) {
+            return intervalNanos > 0 ? eventCounts.get(event) * (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos : 0;
+        }
+
+        public Map<String, Integer> getQueueDepths() {
+            return queueDepths;
+        }
+
+        public Map<String, Long> getGauges() {
+            return gauges;
+        }
+
+        public long getIntervalNanos() {
+            return intervalNanos;
+        }
+    }
+}
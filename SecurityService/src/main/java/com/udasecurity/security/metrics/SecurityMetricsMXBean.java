@@ -0,0 +1,33 @@
+package com.udasecurity.security.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link SecurityMetrics}. Latencies are in nanoseconds, rates are per
+ * second since the last reset.
+ */
+public interface SecurityMetricsMXBean {
+
+    Map<String, LatencyHistogram.Snapshot> getLatencies();
+
+    Map<String, Long> getEventCounts();
+
+    Map<String, Double> getEventsPerSecond();
+
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Other live values published by components, such as circuit breaker states.
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * Seconds covered by the current counts, that is since creation or the last reset.
+     */
+    double getIntervalSeconds();
+
+    /**
+     * Clears every histogram and event counter. Queue depths and gauges are live and unaffected.
+     */
+    void reset();
+}
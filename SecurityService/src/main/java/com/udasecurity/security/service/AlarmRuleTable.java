@@ -0,0 +1,225 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Alarm state machine compiled from declarative rules. A rule names the triggers it
+ * reacts to, optionally narrows them by arming status, alarm status, whether any sensor
+ * is active and whether a cat was last seen, and says which alarm status results. The
+ * first rule matching a situation decides it; situations no rule matches leave the alarm
+ * status alone.
+ * <p>
+ * {@link Builder#build()} resolves the rules for every possible situation up front, so
+ * {@link #evaluate} is a single array lookup that allocates nothing. It also rejects
+ * rules that earlier rules completely hide, since those are always mistakes.
+ */
+public final class AlarmRuleTable {
+
+    /**
+     * What just happened to the system.
+     */
+    public enum Trigger {
+        /** The system was armed or disarmed; the arming status is the new one. */
+        ARMING_CHANGED,
+        /** At least one sensor became active. */
+        SENSOR_ACTIVATED,
+        /** Sensors became inactive and none became active. */
+        SENSOR_DEACTIVATED,
+        /** A camera image was scanned; the cat flag is the scan's result. */
+        IMAGE_SCANNED
+    }
+
+    private static final Trigger[] TRIGGERS = Trigger.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final int SIZE = TRIGGERS.length * ARMING_STATUSES.length * ALARM_STATUSES.length * 2 * 2;
+
+    /**
+     * The rules {@link SecurityService} applies unless told otherwise.
+     */
+    public static final AlarmRuleTable STANDARD = builder()
+            .when(Trigger.ARMING_CHANGED).arming(ArmingStatus.DISARMED).then(AlarmStatus.NO_ALARM)
+            .when(Trigger.ARMING_CHANGED).arming(ArmingStatus.ARMED_HOME).catDetected(true).then(AlarmStatus.ALARM)
+            .when(Trigger.SENSOR_ACTIVATED).alarm(AlarmStatus.NO_ALARM).then(AlarmStatus.PENDING_ALARM)
+            .when(Trigger.SENSOR_ACTIVATED).alarm(AlarmStatus.PENDING_ALARM).anySensorActive(true).then(AlarmStatus.ALARM)
+            .when(Trigger.SENSOR_DEACTIVATED).alarm(AlarmStatus.PENDING_ALARM).anySensorActive(false).then(AlarmStatus.NO_ALARM)
+            .when(Trigger.IMAGE_SCANNED).arming(ArmingStatus.ARMED_HOME).catDetected(true).then(AlarmStatus.ALARM)
+            .when(Trigger.IMAGE_SCANNED).anySensorActive(false).then(AlarmStatus.NO_ALARM)
+            .build();
+
+    //resulting status per situation, null where the status is left alone
+    private final AlarmStatus[] outcomes;
+
+    private AlarmRuleTable(AlarmStatus[] outcomes) {
+        this.outcomes = outcomes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Looks up what the alarm status should become. A null arming or alarm status is
+     * read as {@link ArmingStatus#DISARMED} or {@link AlarmStatus#NO_ALARM}, which is
+     * what a repository that has never stored one reports.
+     * @param activeSensorCount Number of active sensors after the trigger took effect
+     * @param catDetected Whether the most recent scan saw a cat
+     * @return Status to store, possibly the current one again, or null to leave it alone
+     */
+    public AlarmStatus evaluate(Trigger trigger, ArmingStatus arming, AlarmStatus alarm,
+                                int activeSensorCount, boolean catDetected) {
+        return outcomes[index(trigger,
+                arming == null ? ArmingStatus.DISARMED : arming,
+                alarm == null ? AlarmStatus.NO_ALARM : alarm,
+                activeSensorCount > 0, catDetected)];
+    }
+
+    private static int index(Trigger trigger, ArmingStatus arming, AlarmStatus alarm,
+                             boolean anySensorActive, boolean catDetected) {
+        int index = trigger.ordinal();
+        index = index * ARMING_STATUSES.length + arming.ordinal();
+        index = index * ALARM_STATUSES.length + alarm.ordinal();
+        index = index * 2 + (anySensorActive ? 1 : 0);
+        return index * 2 + (catDetected ? 1 : 0);
+    }
+
+    /**
+     * Collects rules in priority order.
+     */
+    public static final class Builder {
+        private final List<Rule> rules = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Starts a rule for the given triggers. Until narrowed, it applies whatever the
+         * rest of the system's state is.
+         */
+        public Rule when(Trigger trigger, Trigger... more) {
+            return new Rule(this, EnumSet.of(trigger, more));
+        }
+
+        /**
+         * Resolves every situation against the rules.
+         * @throws IllegalStateException if a rule never decides any situation because
+         *                               earlier rules cover all of its situations
+         */
+        public AlarmRuleTable build() {
+            AlarmStatus[] outcomes = new AlarmStatus[SIZE];
+            boolean[] used = new boolean[rules.size()];
+            for (Trigger trigger : TRIGGERS) {
+                for (ArmingStatus arming : ARMING_STATUSES) {
+                    for (AlarmStatus alarm : ALARM_STATUSES) {
+                        for (int active = 0; active < 2; active++) {
+                            for (int cat = 0; cat < 2; cat++) {
+                                for (int i = 0; i < rules.size(); i++) {
+                                    Rule rule = rules.get(i);
+                                    if (rule.matches(trigger, arming, alarm, active == 1, cat == 1)) {
+                                        outcomes[index(trigger, arming, alarm, active == 1, cat == 1)] = rule.outcome;
+                                        used[i] = true;
+                                        break;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < used.length; i++) {
+                if (!used[i]) {
+                    throw new IllegalStateException("Rule " + (i + 1) + " is hidden by earlier rules: " + rules.get(i));
+                }
+            }
+            return new AlarmRuleTable(outcomes);
+        }
+    }
+
+    /**
+     * One rule under construction. Narrowing the same dimension twice keeps the last
+     * choice.
+     */
+    public static final class Rule {
+        private final Builder builder;
+        private final EnumSet<Trigger> triggers;
+        private EnumSet<ArmingStatus> armingStatuses = EnumSet.allOf(ArmingStatus.class);
+        private EnumSet<AlarmStatus> alarmStatuses = EnumSet.allOf(AlarmStatus.class);
+        private Boolean anySensorActive;
+        private Boolean catDetected;
+        private AlarmStatus outcome;
+
+        private Rule(Builder builder, EnumSet<Trigger> triggers) {
+            this.builder = builder;
+            this.triggers = triggers;
+        }
+
+        public Rule arming(ArmingStatus status, ArmingStatus... more) {
+            armingStatuses = EnumSet.of(status, more);
+            return this;
+        }
+
+        public Rule alarm(AlarmStatus status, AlarmStatus... more) {
+            alarmStatuses = EnumSet.of(status, more);
+            return this;
+        }
+
+        public Rule anySensorActive(boolean active) {
+            anySensorActive = active;
+            return this;
+        }
+
+        public Rule catDetected(boolean detected) {
+            catDetected = detected;
+            return this;
+        }
+
+        /**
+         * Finishes the rule, storing the given status whenever it applies, even if the
+         * alarm already has that status.
+         */
+        public Builder then(AlarmStatus status) {
+            if (status == null) {
+                throw new IllegalArgumentException("Resulting status cannot be null");
+            }
+            return add(status);
+        }
+
+        /**
+         * Finishes the rule, leaving the alarm status alone whenever it applies. Useful
+         * to exempt situations from broader rules that follow.
+         */
+        public Builder keep() {
+            return add(null);
+        }
+
+        private Builder add(AlarmStatus status) {
+            outcome = status;
+            builder.rules.add(this);
+            return builder;
+        }
+
+        private boolean matches(Trigger trigger, ArmingStatus arming, AlarmStatus alarm,
+                                boolean active, boolean cat) {
+            return triggers.contains(trigger)
+                    && armingStatuses.contains(arming)
+                    && alarmStatuses.contains(alarm)
+                    && (anySensorActive == null || anySensorActive == active)
+                    && (catDetected == null || catDetected == cat);
+        }
+
+        @Override
+        public String toString() {
+            return "when " + triggers
+                    + (armingStatuses.size() < ARMING_STATUSES.length ? " arming " + armingStatuses : "")
+                    + (alarmStatuses.size() < ALARM_STATUSES.length ? " alarm " + alarmStatuses : "")
+                    + (anySensorActive == null ? "" : " anySensorActive " + anySensorActive)
+                    + (catDetected == null ? "" : " catDetected " + catDetected)
+                    + (outcome == null ? " keep" : " then " + outcome);
+        }
+    }
+}
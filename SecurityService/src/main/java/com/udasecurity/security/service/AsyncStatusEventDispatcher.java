@@ -0,0 +1,268 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers status events asynchronously so a slow listener never holds up the state
+ * machine. Each listener has its own bounded mailbox and receives its events in order,
+ * one at a time; Swing components receive them on the event dispatch thread and all
+ * other listeners on a small pool of daemon threads.
+ * <p>
+ * When coalescing is on, an event replaces any undelivered event of the same kind for
+ * that listener, so a burst of alarm changes reaches a busy listener as just the latest
+ * one. When the mailbox is full the overflow policy decides which event is dropped.
+ * Posting an event takes one short lock per listener and reuses preallocated events,
+ * so it allocates little: an iterator over the listeners and, for a Swing listener
+ * that was idle, the event that {@link SwingUtilities#invokeLater} queues.
+ */
+public class AsyncStatusEventDispatcher implements StatusEventDispatcher, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncStatusEventDispatcher.class.getName());
+    private static final int DISPATCH_THREADS = 2;
+
+    /**
+     * What to do when an event arrives for a listener whose mailbox is full.
+     */
+    public enum OverflowPolicy {
+        /** Discard the oldest undelivered event to make room. */
+        DROP_OLDEST,
+        /** Discard the event being posted. */
+        DROP_NEWEST
+    }
+
+    private enum Kind { ALARM, CAT, SENSORS }
+
+    private static final Event[] ALARM_EVENTS = new Event[AlarmStatus.values().length];
+    private static final Event CAT_DETECTED = new Event(Kind.CAT, null, true);
+    private static final Event NO_CAT_DETECTED = new Event(Kind.CAT, null, false);
+    private static final Event SENSORS_CHANGED = new Event(Kind.SENSORS, null, false);
+
+    static {
+        for (AlarmStatus status : AlarmStatus.values()) {
+            ALARM_EVENTS[status.ordinal()] = new Event(Kind.ALARM, status, false);
+        }
+    }
+
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean coalesce;
+    private final List<Mailbox> mailboxes = new CopyOnWriteArrayList<>();
+    private final ExecutorService workers;
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    public AsyncStatusEventDispatcher() {
+        this(16, OverflowPolicy.DROP_OLDEST, true);
+    }
+
+    /**
+     * @param queueCapacity Maximum number of undelivered events per listener
+     * @param overflowPolicy Which event to drop when a listener's mailbox is full
+     * @param coalesce Whether a new event replaces an undelivered one of the same kind
+     */
+    public AsyncStatusEventDispatcher(int queueCapacity, OverflowPolicy overflowPolicy, boolean coalesce) {
+        if (queueCapacity < 1 || overflowPolicy == null) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1 and an overflow policy is required");
+        }
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.coalesce = coalesce;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(DISPATCH_THREADS, r -> {
+            Thread t = new Thread(r, "status-dispatch-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void addListener(StatusListener listener) {
+        for (Mailbox mailbox : mailboxes) {
+            if (mailbox.listener == listener) return;
+        }
+        mailboxes.add(new Mailbox(listener));
+    }
+
+    @Override
+    public void removeListener(StatusListener listener) {
+        mailboxes.removeIf(mailbox -> mailbox.listener == listener);
+    }
+
+    @Override
+    public Collection<StatusListener> getListeners() {
+        List<StatusListener> listeners = new ArrayList<>(mailboxes.size());
+        mailboxes.forEach(mailbox -> listeners.add(mailbox.listener));
+        return listeners;
+    }
+
+    @Override
+    public void alarmStatusChanged(AlarmStatus status) {
+        post(ALARM_EVENTS[status.ordinal()]);
+    }
+
+    @Override
+    public void catDetected(boolean detected) {
+        post(detected ? CAT_DETECTED : NO_CAT_DETECTED);
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        post(SENSORS_CHANGED);
+    }
+
+    /**
+     * Number of events discarded because a listener's mailbox was full or the
+     * dispatcher was closed. Coalesced events are not counted.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * Number of events waiting to be delivered, summed over every listener's mailbox.
+     */
+    public int getQueuedEventCount() {
+        int queued = 0;
+        for (Mailbox mailbox : mailboxes) {
+            queued += mailbox.size();
+        }
+        return queued;
+    }
+
+    /**
+     * Stops the dispatch threads. Events still waiting for non-Swing listeners are dropped.
+     */
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private void post(Event event) {
+        for (Mailbox mailbox : mailboxes) {
+            mailbox.post(event);
+        }
+    }
+
+    private final class Mailbox implements Runnable {
+        private final StatusListener listener;
+        private final boolean swing;
+        private final ArrayDeque<Event> queue = new ArrayDeque<>();
+        private boolean scheduled;
+
+        private Mailbox(StatusListener listener) {
+            this.listener = listener;
+            this.swing = listener instanceof Component;
+        }
+
+        private void post(Event event) {
+            synchronized (this) {
+                if (!(coalesce && removeQueued(event.kind)) && queue.size() >= queueCapacity) {
+                    droppedEvents.incrementAndGet();
+                    if (overflowPolicy == OverflowPolicy.DROP_NEWEST) return;
+                    queue.pollFirst();
+                }
+                queue.addLast(event);
+                if (scheduled) return;
+                scheduled = true;
+            }
+            schedule();
+        }
+
+        private synchronized int size() {
+            return queue.size();
+        }
+
+        private boolean removeQueued(Kind kind) {
+            Iterator<Event> it = queue.iterator();
+            while (it.hasNext()) {
+                if (it.next().kind == kind) {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void schedule() {
+            if (swing) {
+                SwingUtilities.invokeLater(this);
+                return;
+            }
+            try {
+                workers.execute(this);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    droppedEvents.addAndGet(queue.size());
+                    queue.clear();
+                    scheduled = false;
+                }
+            }
+        }
+
+        /**
+         * Delivers at most a mailbox's worth of events, then hands the thread back so one
+         * chatty listener cannot starve the others.
+         */
+        @Override
+        public void run() {
+            for (int delivered = 0; delivered < queueCapacity; delivered++) {
+                Event event;
+                synchronized (this) {
+                    event = queue.pollFirst();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                deliver(event);
+            }
+            schedule();
+        }
+
+        private void deliver(Event event) {
+            try {
+                switch (event.kind) {
+                    case ALARM:
+                        listener.notify(event.alarmStatus);
+                        break;
+                    case CAT:
+                        listener.catDetected(event.catDetected);
+                        break;
+                    default:
+                        listener.sensorStatusChanged();
+                        break;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Status listener failed", e);
+            }
+        }
+    }
+
+    private static final class Event {
+        private final Kind kind;
+        private final AlarmStatus alarmStatus;
+        private final boolean catDetected;
+
+        private Event(Kind kind, AlarmStatus alarmStatus, boolean catDetected) {
+            this.kind = kind;
+            this.alarmStatus = alarmStatus;
+            this.catDetected = catDetected;
+        }
+    }
+}
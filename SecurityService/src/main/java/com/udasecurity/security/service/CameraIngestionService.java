@@ -0,0 +1,337 @@
+package com.udasecurity.security.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Feeds frames from camera drop folders into {@link SecurityService} without the GUI.
+ * Each camera has its own directory, watched with a {@link WatchService}; every JPEG or
+ * PNG that appears there is memory-mapped and handed to the image service as encoded
+ * bytes, so services that upload frames never decode them.
+ * <p>
+ * Each camera has a token-bucket rate limit and a bounded queue. Frames over the rate
+ * are skipped, and when the queue is full the oldest waiting frame is dropped. Frames of
+ * one camera are scanned in arrival order on a shared pool of worker threads. Writers
+ * should create frames elsewhere and move them into the folder, so that a frame is
+ * complete when it appears; only newly created files are picked up, and one that is
+ * still being written fails to decode and is counted as failed.
+ * <p>
+ * Each camera's latest result is kept, and the alarm state sees a cat while any camera
+ * still shows one, as {@link SecurityService#processImages} treats a set of frames, so an
+ * empty frame from one camera does not clear a cat seen by another. Results are applied
+ * from the worker threads while other callers keep changing sensors and arming, so the
+ * service takes a {@link ConcurrentSecurityService}.
+ */
+public class CameraIngestionService implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CameraIngestionService.class.getName());
+
+    private final ConcurrentSecurityService securityService;
+    private final WatchService watchService;
+    private final LaneExecutor<Frame> scanning;
+    private final Thread watcher;
+    private final ConcurrentHashMap<WatchKey, Camera> camerasByKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Camera> cameras = new ConcurrentHashMap<>();
+    //keeps each camera's latest result and the OR applied from them in step across workers
+    private final Object applyLock = new Object();
+    //cameras whose latest scanned frame showed a cat, guarded by applyLock
+    private int camerasSeeingCat;
+    //held while registering so the watcher cannot see a key before its camera is recorded
+    private final Object registrationLock = new Object();
+    private volatile boolean closed;
+
+    public CameraIngestionService(ConcurrentSecurityService securityService) {
+        this(securityService, Runtime.getRuntime().availableProcessors(), 8);
+    }
+
+    /**
+     * @param securityService Service whose alarm state receives the detection results
+     * @param workerThreads Number of threads reading and scanning frames
+     * @param maxQueuedFramesPerCamera Frames a camera may have waiting before the oldest is dropped
+     */
+    public CameraIngestionService(ConcurrentSecurityService securityService, int workerThreads, int maxQueuedFramesPerCamera) {
+        if (workerThreads < 1 || maxQueuedFramesPerCamera < 1) {
+            throw new IllegalArgumentException("Worker threads and queued frames must be at least 1");
+        }
+        this.securityService = securityService;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create watch service", e);
+        }
+        this.scanning = new LaneExecutor<>("camera-ingest", workerThreads, maxQueuedFramesPerCamera, Integer.MAX_VALUE,
+                this::scan, (frame, cause) -> frame.camera.dropped.incrementAndGet());
+        this.watcher = new Thread(this::watch, "camera-ingest-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Starts watching a camera's drop folder. Files already in the folder are ignored.
+     * @param cameraId Name used for the camera in metrics
+     * @param directory Folder the camera writes its frames to
+     * @param maxFramesPerSecond Sustained frame rate accepted from this camera; bursts of up
+     *                           to one second's worth of frames are allowed
+     */
+    public void addCamera(String cameraId, Path directory, double maxFramesPerSecond) throws IOException {
+        if (maxFramesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive");
+        }
+        Camera camera = new Camera(cameraId, new TokenBucket(maxFramesPerSecond), scanning.newLane());
+        if (cameras.putIfAbsent(cameraId, camera) != null) {
+            throw new IllegalArgumentException("Camera " + cameraId + " is already registered");
+        }
+        try {
+            synchronized (registrationLock) {
+                camerasByKey.put(directory.register(watchService, ENTRY_CREATE), camera);
+            }
+        } catch (IOException | RuntimeException e) {
+            cameras.remove(cameraId);
+            throw e;
+        }
+    }
+
+    /**
+     * Current counters for one camera, or null if no camera has that id.
+     */
+    public CameraMetrics getMetrics(String cameraId) {
+        Camera camera = cameras.get(cameraId);
+        return camera == null ? null : camera.snapshot();
+    }
+
+    /**
+     * Stops watching and discards queued frames. Frames already being scanned finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to close watch service", e);
+        }
+        scanning.close();
+        try {
+            watcher.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void watch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Camera camera;
+            synchronized (registrationLock) {
+                camera = camerasByKey.get(key);
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (camera == null) continue;
+                if (event.kind() == OVERFLOW) {
+                    //the OS discarded events, so some frames were never seen
+                    camera.overflows.incrementAndGet();
+                    continue;
+                }
+                Path file = directory.resolve((Path) event.context());
+                if (isFrame(file)) {
+                    offer(camera, file);
+                }
+            }
+            if (!key.reset()) {
+                camerasByKey.remove(key);
+            }
+        }
+    }
+
+    private static boolean isFrame(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return !name.startsWith(".") && (name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png"));
+    }
+
+    private void offer(Camera camera, Path file) {
+        camera.seen.incrementAndGet();
+        if (!camera.rateLimit.tryAcquire()) {
+            camera.rateLimited.incrementAndGet();
+            return;
+        }
+        scanning.offer(camera.frames, new Frame(camera, file));
+    }
+
+    private void scan(Frame frame) {
+        Camera camera = frame.camera;
+        try {
+            boolean catDetected = securityService.detectCat(map(frame.file));
+            synchronized (applyLock) {
+                if (camera.catDetected != catDetected) {
+                    camera.catDetected = catDetected;
+                    camerasSeeingCat += catDetected ? 1 : -1;
+                }
+                securityService.applyFelineDetection(camerasSeeingCat > 0);
+            }
+            camera.processed.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            camera.failed.incrementAndGet();
+            LOGGER.log(Level.FINE, "Unable to scan frame " + frame.file + " from camera " + camera.id, e);
+        }
+    }
+
+    /**
+     * Maps the whole file read-only; the mapping stays valid after the channel is closed.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Point-in-time counters for one camera.
+     */
+    public static final class CameraMetrics {
+        private final long framesSeen;
+        private final long framesProcessed;
+        private final long framesRateLimited;
+        private final long framesDropped;
+        private final long framesFailed;
+        private final long eventOverflows;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+
+        private CameraMetrics(long framesSeen, long framesProcessed, long framesRateLimited, long framesDropped,
+                              long framesFailed, long eventOverflows, int queueDepth, int maxQueueDepth) {
+            this.framesSeen = framesSeen;
+            this.framesProcessed = framesProcessed;
+            this.framesRateLimited = framesRateLimited;
+            this.framesDropped = framesDropped;
+            this.framesFailed = framesFailed;
+            this.eventOverflows = eventOverflows;
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+        }
+
+        /** Frame files noticed in the camera's folder. */
+        public long getFramesSeen() {
+            return framesSeen;
+        }
+
+        /** Frames scanned and applied to the alarm state. */
+        public long getFramesProcessed() {
+            return framesProcessed;
+        }
+
+        /** Frames skipped because the camera was over its rate limit. */
+        public long getFramesRateLimited() {
+            return framesRateLimited;
+        }
+
+        /** Frames dropped from a full queue or discarded on close. */
+        public long getFramesDropped() {
+            return framesDropped;
+        }
+
+        /** Frames that could not be read or scanned. */
+        public long getFramesFailed() {
+            return framesFailed;
+        }
+
+        /** Times the file system reported that it lost events for this folder. */
+        public long getEventOverflows() {
+            return eventOverflows;
+        }
+
+        /** Frames waiting to be scanned right now. */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /** Most frames that have been waiting at once. */
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+    }
+
+    private static final class Camera {
+        private final String id;
+        private final TokenBucket rateLimit;
+        private final LaneExecutor.Lane<Frame> frames;
+        //whether the latest scanned frame showed a cat, guarded by applyLock
+        private boolean catDetected;
+        private final AtomicLong seen = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong overflows = new AtomicLong();
+
+        private Camera(String id, TokenBucket rateLimit, LaneExecutor.Lane<Frame> frames) {
+            this.id = id;
+            this.rateLimit = rateLimit;
+            this.frames = frames;
+        }
+
+        private CameraMetrics snapshot() {
+            return new CameraMetrics(seen.get(), processed.get(), rateLimited.get(), dropped.get(),
+                    failed.get(), overflows.get(), frames.depth(), frames.maxDepth());
+        }
+    }
+
+    private static final class Frame {
+        private final Camera camera;
+        private final Path file;
+
+        private Frame(Camera camera, Path file) {
+            this.camera = camera;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Refills continuously at the configured rate and holds at most one second's worth
+     * of tokens, and never less than one.
+     */
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        private TokenBucket(double tokensPerSecond) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1.0, tokensPerSecond);
+            this.tokens = capacity;
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens < 1.0) return false;
+            tokens -= 1.0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.SecurityRepository;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.metrics.SecurityMetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link SecurityService} for deployments that feed sensor and camera events
+ * from several threads. Every state-changing call is queued on a lock-free
+ * multi-producer queue and applied by a single writer thread, so transitions never
+ * interleave; the call returns once its transition has been applied and listeners told.
+ * With the default dispatcher listener callbacks therefore run on the writer thread;
+ * see {@link AsyncStatusEventDispatcher} to move them off it.
+ * <p>
+ * Alarm status, arming status and the active sensor count are read from an immutable
+ * snapshot published after each transition, without locking or queueing. The sensor set
+ * snapshot is copied on demand, at most once per change to the set's membership; the
+ * Sensor objects in it are the live ones.
+ * <p>
+ * Cat detection runs on the calling thread and only its result is queued, so a slow
+ * detector never holds up sensor events.
+ */
+public class ConcurrentSecurityService extends SecurityService implements AutoCloseable {
+
+    static final String QUEUE_DEPTH_NAME = "securityServiceWriter";
+
+    private final SecurityRepository securityRepository;
+    private final ConcurrentLinkedQueue<Command<?>> commands = new ConcurrentLinkedQueue<>();
+    //ConcurrentLinkedQueue.size() walks the queue, so the depth is counted alongside
+    private final AtomicInteger queuedCommands = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean writerParked;
+    private volatile boolean closed;
+
+    private volatile StateSnapshot snapshot;
+    private volatile SensorSnapshot sensorSnapshot;
+    //only touched by the writer thread
+    private long sensorVersion;
+
+    public ConcurrentSecurityService(SecurityRepository securityRepository, ImageService imageService) {
+        super(securityRepository, imageService);
+        this.securityRepository = securityRepository;
+        this.snapshot = captureState();
+        this.sensorSnapshot = new SensorSnapshot(sensorVersion, securityRepository.getSensors());
+        this.writer = new Thread(this::runWriter, "security-service-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus newStatus) {
+        //arming deactivates sensors, so it counts as a sensor change
+        execute(true, () -> super.setArmingStatus(newStatus));
+    }
+
+    @Override
+    public void changeSensorActivationStatus(Sensor sensor, boolean active) {
+        execute(true, () -> super.changeSensorActivationStatus(sensor, active));
+    }
+
+    @Override
+    public void applySensorChanges(Map<Sensor, Boolean> changes) {
+        execute(true, () -> super.applySensorChanges(changes));
+    }
+
+    @Override
+    public void applySensorEvents(List<Map.Entry<Sensor, Boolean>> events) {
+        execute(true, () -> super.applySensorEvents(events));
+    }
+
+    @Override
+    void applyFelineDetection(boolean felineDetected) {
+        execute(false, () -> super.applyFelineDetection(felineDetected));
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus status) {
+        execute(false, () -> super.setAlarmStatus(status));
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        execute(true, () -> super.addSensor(sensor));
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        execute(true, () -> super.removeSensor(sensor));
+    }
+
+    @Override
+    public void addSensors(Collection<Sensor> sensors) {
+        execute(true, () -> super.addSensors(sensors));
+    }
+
+    @Override
+    public void removeSensors(Collection<Sensor> sensors) {
+        execute(true, () -> super.removeSensors(sensors));
+    }
+
+    /**
+     * Also publishes the number of transitions waiting for the writer thread as the
+     * {@value #QUEUE_DEPTH_NAME} queue depth.
+     */
+    @Override
+    public void setMetrics(SecurityMetrics metrics) {
+        getMetrics().unregisterQueueDepth(QUEUE_DEPTH_NAME);
+        super.setMetrics(metrics);
+        metrics.registerQueueDepth(QUEUE_DEPTH_NAME, this::getQueuedCommandCount);
+    }
+
+    /**
+     * Number of transitions queued and not yet picked up by the writer thread.
+     */
+    public int getQueuedCommandCount() {
+        return queuedCommands.get();
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return onWriter() ? super.getAlarmStatus() : snapshot.alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return onWriter() ? super.getArmingStatus() : snapshot.armingStatus;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return onWriter() ? super.getActiveSensorCount() : snapshot.activeSensorCount;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        if (onWriter()) return super.getSensors();
+
+        SensorSnapshot sensors = sensorSnapshot;
+        if (sensors.version == snapshot.sensorVersion) return sensors.sensors;
+        //the membership changed since the last copy; take a new one in step with the writes
+        return submit(false, () -> {
+            SensorSnapshot current = sensorSnapshot;
+            if (current.version != sensorVersion) {
+                current = new SensorSnapshot(sensorVersion, securityRepository.getSensors());
+                sensorSnapshot = current;
+            }
+            return current.sensors;
+        });
+    }
+
+    /**
+     * Applies every transition already queued, then stops the writer. Calls made after
+     * this fail with {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        if (onWriter()) return;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void execute(boolean changesSensors, Runnable transition) {
+        submit(changesSensors, () -> {
+            transition.run();
+            return null;
+        });
+    }
+
+    private <T> T submit(boolean changesSensors, Supplier<T> action) {
+        Command<T> command = new Command<>(changesSensors, action);
+        if (onWriter()) {
+            //a listener calling back into the service is already serialized
+            return command.run();
+        }
+        if (closed) {
+            throw new RejectedExecutionException("Security service is closed");
+        }
+        queuedCommands.incrementAndGet();
+        commands.offer(command);
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        if (closed && commands.remove(command)) {
+            queuedCommands.decrementAndGet();
+            //raced with close() and the writer may already be gone
+            throw new RejectedExecutionException("Security service is closed");
+        }
+        try {
+            return command.result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            Command<?> command = commands.poll();
+            if (command != null) {
+                queuedCommands.decrementAndGet();
+                command.complete();
+                continue;
+            }
+            if (closed) {
+                //anything offered before a producer saw the flag is still applied
+                while ((command = commands.poll()) != null) {
+                    queuedCommands.decrementAndGet();
+                    command.complete();
+                }
+                return;
+            }
+            writerParked = true;
+            //re-check after publishing the flag so a producer that missed it is not lost
+            if (commands.isEmpty() && !closed) {
+                LockSupport.park(this);
+            }
+            writerParked = false;
+        }
+    }
+
+    private boolean onWriter() {
+        return Thread.currentThread() == writer;
+    }
+
+    private StateSnapshot captureState() {
+        return new StateSnapshot(
+                securityRepository.getAlarmStatus(),
+                securityRepository.getArmingStatus(),
+                securityRepository.getActiveSensorCount(),
+                sensorVersion);
+    }
+
+    private final class Command<T> {
+        private final boolean changesSensors;
+        private final Supplier<T> action;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Command(boolean changesSensors, Supplier<T> action) {
+            this.changesSensors = changesSensors;
+            this.action = action;
+        }
+
+        /**
+         * Runs the action on the writer thread and publishes the new state, even if the
+         * action failed part way through.
+         */
+        private T run() {
+            try {
+                return action.get();
+            } finally {
+                if (changesSensors) sensorVersion++;
+                snapshot = captureState();
+            }
+        }
+
+        private void complete() {
+            try {
+                result.complete(run());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
+    private static final class StateSnapshot {
+        private final AlarmStatus alarmStatus;
+        private final ArmingStatus armingStatus;
+        private final int activeSensorCount;
+        private final long sensorVersion;
+
+        private StateSnapshot(AlarmStatus alarmStatus, ArmingStatus armingStatus, int activeSensorCount, long sensorVersion) {
+            this.alarmStatus = alarmStatus;
+            this.armingStatus = armingStatus;
+            this.activeSensorCount = activeSensorCount;
+            this.sensorVersion = sensorVersion;
+        }
+    }
+
+    private static final class SensorSnapshot {
+        private final long version;
+        private final Set<Sensor> sensors;
+
+        private SensorSnapshot(long version, Set<Sensor> sensors) {
+            this.version = version;
+            //repositories hand out a fresh copy, so wrapping it is enough
+            this.sensors = Collections.unmodifiableSet(sensors);
+        }
+    }
+}
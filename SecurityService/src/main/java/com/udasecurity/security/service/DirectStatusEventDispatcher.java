@@ -0,0 +1,49 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Calls every listener inline on the thread that changed the state. This is the
+ * default, and keeps the service's behaviour fully synchronous.
+ */
+public class DirectStatusEventDispatcher implements StatusEventDispatcher {
+
+    //listeners may be added from the UI thread while a transition is notifying them
+    private final Set<StatusListener> listeners = new CopyOnWriteArraySet<>();
+
+    @Override
+    public void addListener(StatusListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(StatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Collection<StatusListener> getListeners() {
+        return new ArrayList<>(listeners);
+    }
+
+    @Override
+    public void alarmStatusChanged(AlarmStatus status) {
+        listeners.forEach(listener -> listener.notify(status));
+    }
+
+    @Override
+    public void catDetected(boolean detected) {
+        listeners.forEach(listener -> listener.catDetected(detected));
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        listeners.forEach(StatusListener::sensorStatusChanged);
+    }
+}
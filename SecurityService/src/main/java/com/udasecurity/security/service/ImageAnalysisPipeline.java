@@ -0,0 +1,152 @@
+package com.udasecurity.security.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Asynchronous camera frame analysis in front of {@link SecurityService}. Submitting a
+ * frame never waits on the detector: each camera holds at most one frame in flight and
+ * one waiting, and a newer frame replaces the waiting one (whose future is cancelled).
+ * Results are applied to the alarm state in submission order per camera.
+ * <p>
+ * Each camera's latest result is kept, and the alarm state sees a cat while any camera
+ * still shows one, as {@link SecurityService#processImages} treats a set of frames, so an
+ * empty frame from one camera does not clear a cat seen by another. Results are applied
+ * from the worker threads while other callers keep changing sensors and arming, so the
+ * pipeline takes a {@link ConcurrentSecurityService}.
+ */
+public class ImageAnalysisPipeline implements AutoCloseable {
+
+    private final ConcurrentSecurityService securityService;
+    private final LaneExecutor<PendingFrame> analysis;
+    private final ConcurrentHashMap<String, CameraLane> lanes = new ConcurrentHashMap<>();
+    //keeps each camera's latest result and the OR applied from them in step across workers
+    private final Object applyLock = new Object();
+    //cameras whose latest analysed frame showed a cat, guarded by applyLock
+    private int camerasSeeingCat;
+
+    public ImageAnalysisPipeline(ConcurrentSecurityService securityService) {
+        this(securityService, Runtime.getRuntime().availableProcessors(), 64);
+    }
+
+    /**
+     * @param securityService Service whose alarm state receives the detection results
+     * @param workerThreads Number of threads running the detector
+     * @param maxPendingFrames Maximum number of frames waiting for a worker across all cameras
+     */
+    public ImageAnalysisPipeline(ConcurrentSecurityService securityService, int workerThreads, int maxPendingFrames) {
+        if (workerThreads < 1 || maxPendingFrames < 1) {
+            throw new IllegalArgumentException("Worker threads and pending frames must be at least 1");
+        }
+        this.securityService = securityService;
+        //one waiting frame per camera, so a newer frame replaces it
+        this.analysis = new LaneExecutor<>("image-analysis", workerThreads, 1, maxPendingFrames,
+                this::analyse, ImageAnalysisPipeline::discard);
+    }
+
+    /**
+     * Queues a frame for analysis.
+     * @param cameraId Camera the frame came from; frames of one camera are analysed in order
+     * @param frame Image to scan for cats
+     * @return Future completed with the detection result once it has been applied. It is
+     * cancelled if a newer frame from the same camera replaces it, and fails with
+     * {@link RejectedExecutionException} if the pending queue is full.
+     */
+    public CompletableFuture<Boolean> submit(String cameraId, BufferedImage frame) {
+        return submit(lane(cameraId), frame, null);
+    }
+
+    /**
+     * Queues an encoded frame for analysis, so services that upload frames never decode
+     * it. The buffer must not be changed until the returned future completes.
+     * @see #submit(String, BufferedImage)
+     */
+    public CompletableFuture<Boolean> submit(String cameraId, ByteBuffer encodedFrame) {
+        return submit(lane(cameraId), null, encodedFrame);
+    }
+
+    private CompletableFuture<Boolean> submit(CameraLane lane, BufferedImage image, ByteBuffer encodedImage) {
+        PendingFrame pending = new PendingFrame(lane, image, encodedImage);
+        if (!analysis.offer(lane.frames, pending)) {
+            pending.result.completeExceptionally(new RejectedExecutionException("Image analysis queue is full"));
+        }
+        return pending.result;
+    }
+
+    /**
+     * Number of frames waiting for a worker across all cameras.
+     */
+    public int getPendingFrames() {
+        return analysis.queued();
+    }
+
+    /**
+     * Stops analysis and cancels the waiting frames. Frames being analysed finish.
+     */
+    @Override
+    public void close() {
+        analysis.close();
+    }
+
+    private CameraLane lane(String cameraId) {
+        return lanes.computeIfAbsent(cameraId, id -> new CameraLane(analysis.newLane()));
+    }
+
+    private static void discard(PendingFrame frame, RejectedExecutionException cause) {
+        if (cause == null) {
+            frame.result.cancel(false);
+        } else {
+            frame.result.completeExceptionally(cause);
+        }
+    }
+
+    private void analyse(PendingFrame frame) {
+        if (frame.result.isDone()) return;
+        try {
+            boolean catDetected = frame.image != null
+                    ? securityService.detectCat(frame.image)
+                    : securityService.detectCat(frame.encodedImage);
+            synchronized (applyLock) {
+                CameraLane lane = frame.lane;
+                if (lane.catDetected != catDetected) {
+                    lane.catDetected = catDetected;
+                    camerasSeeingCat += catDetected ? 1 : -1;
+                }
+                securityService.applyFelineDetection(camerasSeeingCat > 0);
+            }
+            frame.result.complete(catDetected);
+        } catch (RuntimeException e) {
+            frame.result.completeExceptionally(e);
+        } catch (Error e) {
+            frame.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static final class CameraLane {
+        private final LaneExecutor.Lane<PendingFrame> frames;
+        //whether the latest analysed frame showed a cat, guarded by applyLock
+        private boolean catDetected;
+
+        private CameraLane(LaneExecutor.Lane<PendingFrame> frames) {
+            this.frames = frames;
+        }
+    }
+
+    private static final class PendingFrame {
+        private final CameraLane lane;
+        //exactly one of the two is set
+        private final BufferedImage image;
+        private final ByteBuffer encodedImage;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private PendingFrame(CameraLane lane, BufferedImage image, ByteBuffer encodedImage) {
+            this.lane = lane;
+            this.image = image;
+            this.encodedImage = encodedImage;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.udasecurity.security.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Runs items from many lanes on a shared pool of worker threads. Items of one lane are
+ * processed one at a time in the order they were offered, and a lane holds the worker
+ * for one item at a time, so a busy lane cannot starve the others. A full lane drops
+ * its oldest waiting item to make room, so offering never blocks.
+ * <p>
+ * Items that leave without being processed are passed to the discard callback: with a
+ * null cause when a newer item superseded them or the executor was closed, and with the
+ * pool's {@link RejectedExecutionException} when it refused to run their lane.
+ */
+final class LaneExecutor<T> implements AutoCloseable {
+
+    private final ExecutorService workers;
+    private final int laneCapacity;
+    private final int maxQueued;
+    private final Consumer<T> process;
+    private final BiConsumer<T, RejectedExecutionException> discard;
+    private final List<Lane<T>> lanes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @param threadName Prefix of the worker thread names
+     * @param workerThreads Number of worker threads
+     * @param laneCapacity Items a lane may have waiting before the oldest is dropped
+     * @param maxQueued Items that may be waiting across all lanes
+     * @param process Called on a worker thread for each item in turn
+     * @param discard Called for each item dropped without being processed
+     */
+    LaneExecutor(String threadName, int workerThreads, int laneCapacity, int maxQueued,
+                 Consumer<T> process, BiConsumer<T, RejectedExecutionException> discard) {
+        if (workerThreads < 1 || laneCapacity < 1 || maxQueued < 1) {
+            throw new IllegalArgumentException("Worker threads and queue sizes must be at least 1");
+        }
+        this.laneCapacity = laneCapacity;
+        this.maxQueued = maxQueued;
+        this.process = process;
+        this.discard = discard;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, threadName + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    Lane<T> newLane() {
+        Lane<T> lane = new Lane<>();
+        lanes.add(lane);
+        return lane;
+    }
+
+    /**
+     * Queues an item on its lane, dropping the lane's oldest waiting item if the lane is full.
+     * @return false, without queuing the item, if the lane has room but the executor as a
+     * whole already has {@code maxQueued} items waiting
+     */
+    boolean offer(Lane<T> lane, T item) {
+        T dropped = null;
+        boolean schedule;
+        synchronized (lane) {
+            if (lane.queue.size() >= laneCapacity) {
+                dropped = lane.queue.pollFirst();
+            } else if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                return false;
+            }
+            lane.queue.addLast(item);
+            lane.maxDepth = Math.max(lane.maxDepth, lane.queue.size());
+            schedule = !lane.scheduled;
+            lane.scheduled = true;
+        }
+        if (dropped != null) {
+            discard.accept(dropped, null);
+        }
+        if (schedule) {
+            schedule(lane);
+        }
+        return true;
+    }
+
+    /**
+     * Number of items waiting across all lanes.
+     */
+    int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Stops the workers and discards the waiting items. Items being processed finish.
+     */
+    @Override
+    public void close() {
+        workers.shutdown();
+        for (Lane<T> lane : lanes) {
+            for (T item : drain(lane)) {
+                discard.accept(item, null);
+            }
+        }
+    }
+
+    private void schedule(Lane<T> lane) {
+        try {
+            workers.execute(() -> runNext(lane));
+        } catch (RejectedExecutionException e) {
+            List<T> rejected;
+            synchronized (lane) {
+                lane.scheduled = false;
+                rejected = drain(lane);
+            }
+            for (T item : rejected) {
+                discard.accept(item, e);
+            }
+        }
+    }
+
+    private void runNext(Lane<T> lane) {
+        try {
+            T item;
+            synchronized (lane) {
+                item = lane.queue.pollFirst();
+            }
+            if (item != null) {
+                queued.decrementAndGet();
+                process.accept(item);
+            }
+        } finally {
+            //even after an Error, or the lane would stay scheduled and never run again;
+            //hand the worker back between items so a busy lane cannot starve the others
+            boolean more;
+            synchronized (lane) {
+                more = !lane.queue.isEmpty();
+                lane.scheduled = more;
+            }
+            if (more) {
+                schedule(lane);
+            }
+        }
+    }
+
+    private List<T> drain(Lane<T> lane) {
+        synchronized (lane) {
+            List<T> items = new ArrayList<>(lane.queue);
+            lane.queue.clear();
+            queued.addAndGet(-items.size());
+            return items;
+        }
+    }
+
+    /**
+     * One ordered queue of items, such as the frames of one camera.
+     */
+    static final class Lane<T> {
+        private final ArrayDeque<T> queue = new ArrayDeque<>();
+        private boolean scheduled;
+        private int maxDepth;
+
+        private Lane() {
+        }
+
+        /** Items waiting right now. */
+        synchronized int depth() {
+            return queue.size();
+        }
+
+        /** Most items that have been waiting at once. */
+        synchronized int maxDepth() {
+            return maxDepth;
+        }
+    }
+}
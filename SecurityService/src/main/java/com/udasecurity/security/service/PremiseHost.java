@@ -0,0 +1,343 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udasecurity.security.data.SecurityRepository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent premises in one JVM. Each premise has its own repository and
+ * {@link SecurityService}, and lives on exactly one of a fixed number of shards. A shard
+ * is a single thread that owns its premises outright, so a premise's service and
+ * repository are only ever touched by that thread and need no locking. Commands for a
+ * premise are queued to its shard and run in the order they were queued.
+ * <p>
+ * Premises can be moved between shards. The source shard hands the premise over to the
+ * target shard's queue, and a command that reaches the old shard afterwards is forwarded
+ * to the new one. {@link #rebalance()} uses the number of commands each premise ran since
+ * the last rebalance to even out the shards.
+ */
+public class PremiseHost implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PremiseHost.class.getName());
+    //a command only follows a premise this many times before giving up on it
+    private static final int MAX_FORWARDS = 32;
+
+    private final Shard[] shards;
+    private final Function<String, SecurityRepository> repositoryFactory;
+    private final ImageService imageService;
+    //routing only; each premise itself is owned by the thread of the shard recorded here
+    private final ConcurrentHashMap<String, Shard> placement = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a host with one shard per processor, storing each premise in its own
+     * preferences namespace.
+     */
+    public PremiseHost(ImageService imageService) {
+        this(Runtime.getRuntime().availableProcessors(), PretendDatabaseSecurityRepositoryImpl::new, imageService);
+    }
+
+    /**
+     * @param shardCount Number of shard threads
+     * @param repositoryFactory Creates the isolated repository for a premise ID
+     * @param imageService Detector shared by all premises; it must be safe to call from several threads
+     */
+    public PremiseHost(int shardCount, Function<String, SecurityRepository> repositoryFactory, ImageService imageService) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.repositoryFactory = repositoryFactory;
+        this.imageService = imageService;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Creates a premise on the shard with the fewest premises.
+     * @return Future completed once the premise is ready for commands, or failed with
+     * whatever creating its repository threw, in which case the premise does not exist
+     * @throws IllegalArgumentException if a premise with that ID already exists
+     */
+    public CompletableFuture<Void> addPremise(String premiseId) {
+        Shard target = shards[0];
+        for (Shard shard : shards) {
+            if (shard.assigned.get() < target.assigned.get()) target = shard;
+        }
+        Shard shard = target;
+        AtomicReference<CompletableFuture<Void>> created = new AtomicReference<>();
+        //the creation is queued before the route is published, so commands routed here run after it
+        placement.computeIfAbsent(premiseId, id -> {
+            shard.assigned.incrementAndGet();
+            created.set(shard.run(() -> createPremise(shard, premiseId)));
+            return shard;
+        });
+        if (created.get() == null) {
+            throw new IllegalArgumentException("Premise " + premiseId + " already exists");
+        }
+        return created.get();
+    }
+
+    private Void createPremise(Shard shard, String premiseId) {
+        try {
+            SecurityRepository repository = repositoryFactory.apply(premiseId);
+            shard.premises.put(premiseId, new Premise(repository, new SecurityService(repository, imageService)));
+            return null;
+        } catch (RuntimeException | Error e) {
+            //undone before the shard runs anything else, so queued commands find no such premise
+            placement.remove(premiseId, shard);
+            shard.assigned.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a premise and closes its repository if it is closeable.
+     */
+    public CompletableFuture<Void> removePremise(String premiseId) {
+        return submit(premiseId, (shard, premise) -> {
+            shard.premises.remove(premiseId);
+            shard.assigned.decrementAndGet();
+            placement.remove(premiseId);
+            premise.close();
+            return null;
+        });
+    }
+
+    /**
+     * Runs an action against a premise's service on the premise's shard.
+     * @return Future completed with the action's result, or failed with
+     * {@link IllegalArgumentException} if there is no such premise
+     */
+    public <T> CompletableFuture<T> submit(String premiseId, Function<SecurityService, T> action) {
+        return submit(premiseId, (shard, premise) -> {
+            premise.commands++;
+            return action.apply(premise.securityService);
+        });
+    }
+
+    /**
+     * Moves a premise to another shard. Commands already queued on the old shard are
+     * forwarded, and later commands go straight to the new shard.
+     * @param targetShard Index of the destination shard
+     */
+    public CompletableFuture<Void> migrate(String premiseId, int targetShard) {
+        if (targetShard < 0 || targetShard >= shards.length) {
+            throw new IllegalArgumentException("No shard " + targetShard);
+        }
+        Shard target = shards[targetShard];
+        return submit(premiseId, (source, premise) -> {
+            if (source == target) return null;
+            source.premises.remove(premiseId);
+            source.assigned.decrementAndGet();
+            target.assigned.incrementAndGet();
+            //queue the handover before switching the route, so anything routed to the target arrives after the premise
+            target.run(() -> {
+                target.premises.put(premiseId, premise);
+                return null;
+            });
+            placement.put(premiseId, target);
+            return null;
+        });
+    }
+
+    /**
+     * Moves premises from the busiest shards to the least busy until no move would
+     * narrow the gap, using the commands each premise ran since the last rebalance as
+     * its load. Counters are reset afterwards.
+     * @return Number of premises moved
+     */
+    public int rebalance() {
+        List<Map<String, Long>> loads = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            loads.add(shard.run(() -> {
+                Map<String, Long> load = new HashMap<>();
+                shard.premises.forEach((id, premise) -> {
+                    load.put(id, premise.commands);
+                    premise.commands = 0;
+                });
+                return load;
+            }).join());
+        }
+
+        long[] totals = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            for (long load : loads.get(i).values()) totals[i] += load;
+        }
+
+        List<CompletableFuture<Void>> moves = new ArrayList<>();
+        while (true) {
+            int busiest = 0;
+            int idlest = 0;
+            for (int i = 1; i < shards.length; i++) {
+                if (totals[i] > totals[busiest]) busiest = i;
+                if (totals[i] < totals[idlest]) idlest = i;
+            }
+            long gap = totals[busiest] - totals[idlest];
+            //the premise whose load is closest to half the gap narrows it the most
+            String best = null;
+            long bestLoad = 0;
+            for (Map.Entry<String, Long> entry : loads.get(busiest).entrySet()) {
+                long load = entry.getValue();
+                if (load > 0 && load < gap && (best == null || Math.abs(gap - 2 * load) < Math.abs(gap - 2 * bestLoad))) {
+                    best = entry.getKey();
+                    bestLoad = load;
+                }
+            }
+            if (best == null) break;
+            loads.get(busiest).remove(best);
+            loads.get(idlest).put(best, bestLoad);
+            totals[busiest] -= bestLoad;
+            totals[idlest] += bestLoad;
+            moves.add(migrate(best, idlest));
+        }
+        CompletableFuture.allOf(moves.toArray(new CompletableFuture[0])).join();
+        return moves.size();
+    }
+
+    /**
+     * Index of the shard a premise currently lives on, or -1 if there is no such premise.
+     */
+    public int shardOf(String premiseId) {
+        Shard shard = placement.get(premiseId);
+        return shard == null ? -1 : shard.index;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public int getPremiseCount() {
+        return placement.size();
+    }
+
+    /**
+     * Stops the shard threads after their queued commands and closes every repository.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.run(() -> {
+                shard.premises.values().forEach(Premise::close);
+                shard.premises.clear();
+                return null;
+            });
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(String premiseId, PremiseAction<T> action) {
+        return submit(premiseId, action, 0);
+    }
+
+    /**
+     * Runs the action on whichever shard owns the premise when the action gets there,
+     * forwarding it if the premise has moved in the meantime. A premise that keeps
+     * moving ahead of the action fails it after {@value #MAX_FORWARDS} forwards.
+     */
+    private <T> CompletableFuture<T> submit(String premiseId, PremiseAction<T> action, int forwards) {
+        Shard shard = placement.get(premiseId);
+        if (shard == null) {
+            return failed(new IllegalArgumentException("Unknown premise " + premiseId));
+        }
+        if (forwards > MAX_FORWARDS) {
+            return failed(new IllegalStateException("Premise " + premiseId + " moved " + MAX_FORWARDS
+                    + " times before a command could reach it"));
+        }
+        return shard.run(() -> {
+            Premise premise = shard.premises.get(premiseId);
+            if (premise == null) return null;
+            return new Owned<>(action.apply(shard, premise));
+        }).thenCompose(owned -> owned != null
+                ? CompletableFuture.completedFuture(owned.value)
+                : submit(premiseId, action, forwards + 1));
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable failure) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+
+    private interface PremiseAction<T> {
+        T apply(Shard shard, Premise premise);
+    }
+
+    /**
+     * Marks a result as produced by the owning shard, as opposed to "premise not here".
+     */
+    private static final class Owned<T> {
+        private final T value;
+
+        private Owned(T value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Shard {
+        private final int index;
+        private final ExecutorService executor;
+        //only touched on this shard's thread
+        private final Map<String, Premise> premises = new HashMap<>();
+        //premises routed to this shard, including ones still being handed over
+        private final AtomicInteger assigned = new AtomicInteger();
+
+        private Shard(int index) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "premise-shard-" + index);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        private <T> CompletableFuture<T> run(Supplier<T> task) {
+            return CompletableFuture.supplyAsync(task, executor);
+        }
+    }
+
+    private static final class Premise {
+        private final SecurityRepository repository;
+        private final SecurityService securityService;
+        private long commands;
+
+        private Premise(SecurityRepository repository, SecurityService securityService) {
+            this.repository = repository;
+            this.securityService = securityService;
+        }
+
+        private void close() {
+            if (repository instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) repository).close();
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unable to close premise repository", e);
+                }
+            }
+        }
+    }
+}
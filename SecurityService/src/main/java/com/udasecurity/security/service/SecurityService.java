@@ -6,16 +6,25 @@ import com.udasecurity.security.data.AlarmStatus;
 import com.udasecurity.security.data.ArmingStatus;
 import com.udasecurity.security.data.SecurityRepository;
 import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.metrics.SecurityMetrics;
+import com.udasecurity.security.metrics.SecurityMetrics.Event;
+import com.udasecurity.security.metrics.SecurityMetrics.Operation;
+import com.udasecurity.security.service.AlarmRuleTable.Trigger;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Core security system controller managing alarm states, sensor status,
  * and image processing. Orchestrates system behavior based on inputs
- * from sensors and user commands.
+ * from sensors and user commands. How the alarm status reacts to each
+ * input is decided by an {@link AlarmRuleTable}.
  */
 public class SecurityService {
 
@@ -23,8 +32,10 @@ public class SecurityService {
 
     private final SecurityRepository securityRepository;
     private final ImageService imageService;
-    private final Set<StatusListener> statusListeners = new HashSet<>();
-    private boolean catDetected;
+    private volatile StatusEventDispatcher statusEventDispatcher = new DirectStatusEventDispatcher();
+    private volatile boolean catDetected;
+    private volatile SecurityMetrics metrics = SecurityMetrics.DISABLED;
+    private volatile AlarmRuleTable alarmRules = AlarmRuleTable.STANDARD;
 
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
         this.securityRepository = securityRepository;
@@ -36,35 +47,26 @@ public class SecurityService {
      * @param newStatus Target arming status for the system
      */
     public void setArmingStatus(ArmingStatus newStatus) {
-        if (newStatus == ArmingStatus.DISARMED) {
-            handleSystemDisarming();
-        } else {
-            handleSystemArming(newStatus);
+        if (newStatus != ArmingStatus.DISARMED) {
+            deactivateAllSensors();
         }
+        applyAlarmRules(Trigger.ARMING_CHANGED, newStatus);
         securityRepository.setArmingStatus(newStatus);
+        metrics.increment(Event.ARMING_STATUS_CHANGED);
         notifyStatusListeners();
     }
 
-    private void handleSystemDisarming() {
-        setAlarmStatus(AlarmStatus.NO_ALARM);
-    }
-
-    private void handleSystemArming(ArmingStatus status) {
-        deactivateAllSensors();
-        evaluateAlarmStateOnArming(status);
-    }
-
     private void deactivateAllSensors() {
-        getSensors().forEach(sensor -> {
-            sensor.setActive(false);
-            securityRepository.updateSensor(sensor);
-        });
-    }
-
-    private void evaluateAlarmStateOnArming(ArmingStatus status) {
-        if (status == ArmingStatus.ARMED_HOME && catDetected) {
-            setAlarmStatus(AlarmStatus.ALARM);
+        if (noActiveSensors()) return;
+
+        List<Sensor> deactivated = new ArrayList<>();
+        for (Sensor sensor : securityRepository.getSensors()) {
+            if (sensor.getActive()) {
+                sensor.setActive(false);
+                deactivated.add(sensor);
+            }
         }
+        securityRepository.updateSensors(deactivated);
     }
 
     /**
@@ -73,39 +75,63 @@ public class SecurityService {
      * @param active New activation state
      */
     public void changeSensorActivationStatus(Sensor sensor, boolean active) {
-        if (sensor.getActive() == active) return;
+        applySensorActivation(sensor, active);
+    }
+
+    /**
+     * Applies a burst of sensor events in the order they happened, exactly as if each
+     * had been passed to {@link #changeSensorActivationStatus} on its own, so a sensor
+     * that opens and closes again within the burst still moves the alarm on. Unlike
+     * {@link #applySensorChanges} the alarm rules see every event, not the net result;
+     * listeners are told once at the end.
+     * @param events Sensor and requested activation state, oldest first
+     */
+    public void applySensorEvents(List<Map.Entry<Sensor, Boolean>> events) {
+        boolean anyChanged = false;
+        for (Map.Entry<Sensor, Boolean> event : events) {
+            anyChanged |= applySensorActivation(event.getKey(), event.getValue());
+        }
+        if (anyChanged) {
+            notifyStatusListeners();
+        }
+    }
+
+    private boolean applySensorActivation(Sensor sensor, boolean active) {
+        if (sensor.getActive() == active) return false;
 
         sensor.setActive(active);
         securityRepository.updateSensor(sensor);
+        metrics.increment(Event.SENSOR_ACTIVATION_CHANGED);
 
-        if (active) {
-            handleSensorActivation();
-        } else {
-            handleSensorDeactivation();
-        }
+        applyAlarmRules(active ? Trigger.SENSOR_ACTIVATED : Trigger.SENSOR_DEACTIVATED);
+        return true;
     }
 
-    private void handleSensorActivation() {
-        switch (getAlarmStatus()) {
-            case NO_ALARM:
-                setAlarmStatus(AlarmStatus.PENDING_ALARM);
-                break;
-            case PENDING_ALARM:
-                evaluatePendingAlarmState();
-                break;
+    /**
+     * Applies a burst of sensor activation changes as one batch. Sensors already in the
+     * requested state are ignored; the rest are persisted in a single repository write,
+     * the alarm state is evaluated once on the net result and listeners are told once.
+     * @param changes Requested activation state per sensor
+     */
+    public void applySensorChanges(Map<Sensor, Boolean> changes) {
+        List<Sensor> changed = new ArrayList<>(changes.size());
+        boolean anyActivated = false;
+        for (Map.Entry<Sensor, Boolean> change : changes.entrySet()) {
+            Sensor sensor = change.getKey();
+            boolean active = change.getValue();
+            if (sensor.getActive() == active) continue;
+
+            sensor.setActive(active);
+            changed.add(sensor);
+            anyActivated |= active;
         }
-    }
+        if (changed.isEmpty()) return;
 
-    private void evaluatePendingAlarmState() {
-        if (anyActiveSensors()) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        }
-    }
+        securityRepository.updateSensors(changed);
+        metrics.add(Event.SENSOR_ACTIVATION_CHANGED, changed.size());
 
-    private void handleSensorDeactivation() {
-        if (getAlarmStatus() == AlarmStatus.PENDING_ALARM && noActiveSensors()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        }
+        applyAlarmRules(anyActivated ? Trigger.SENSOR_ACTIVATED : Trigger.SENSOR_DEACTIVATED);
+        notifyStatusListeners();
     }
 
     /**
@@ -113,61 +139,180 @@ public class SecurityService {
      * @param cameraImage Image frame from security camera
      */
     public void processImage(BufferedImage cameraImage) {
-        boolean felineDetected = imageService.imageContainsCat(cameraImage, CAT_DETECTION_THRESHOLD);
+        long start = metrics.start();
+        applyFelineDetection(detectCat(cameraImage));
+        recordFrames(start, 1);
+    }
+
+    /**
+     * Analyzes a camera image that is still encoded, such as the contents of a JPEG file,
+     * so image services that upload it can skip decoding and re-encoding.
+     * @param encodedImage Encoded image bytes; the buffer's position is left unchanged
+     */
+    public void processImage(ByteBuffer encodedImage) {
+        long start = metrics.start();
+        applyFelineDetection(detectCat(encodedImage));
+        recordFrames(start, 1);
+    }
+
+    /**
+     * Analyzes one frame from each of several cameras in a single batch. The image
+     * service may scan them concurrently; a cat in any frame counts as a cat detected.
+     * @param cameraImages Latest frame from each camera
+     */
+    public void processImages(List<BufferedImage> cameraImages) {
+        if (cameraImages.isEmpty()) return;
+        long start = metrics.start();
+        List<Boolean> results = imageService.detectCats(cameraImages, CAT_DETECTION_THRESHOLD);
+        metrics.recordSince(Operation.DETECTOR, start);
+        applyFelineDetection(results.contains(Boolean.TRUE));
+        recordFrames(start, cameraImages.size());
+    }
+
+    private void recordFrames(long start, int frames) {
+        metrics.recordSince(Operation.PROCESS_IMAGE, start);
+        metrics.add(Event.FRAME_PROCESSED, frames);
+    }
+
+    /**
+     * Runs the detector only, without touching alarm state. Used by
+     * {@link ImageAnalysisPipeline} to keep detector latency off the caller's thread.
+     */
+    boolean detectCat(BufferedImage cameraImage) {
+        long start = metrics.start();
+        boolean detected = imageService.imageContainsCat(cameraImage, CAT_DETECTION_THRESHOLD);
+        metrics.recordSince(Operation.DETECTOR, start);
+        return detected;
+    }
+
+    /**
+     * Encoded-image counterpart of {@link #detectCat(BufferedImage)}, used by
+     * {@link ImageAnalysisPipeline} and {@link CameraIngestionService}.
+     */
+    boolean detectCat(ByteBuffer encodedImage) {
+        long start = metrics.start();
+        boolean detected = imageService.imageContainsCat(encodedImage, CAT_DETECTION_THRESHOLD);
+        metrics.recordSince(Operation.DETECTOR, start);
+        return detected;
+    }
+
+    void applyFelineDetection(boolean felineDetected) {
         updateFelineDetectionState(felineDetected);
     }
 
     private void updateFelineDetectionState(boolean detected) {
         catDetected = detected;
+        applyAlarmRules(Trigger.IMAGE_SCANNED);
+        notifyFelineDetection(detected);
+    }
 
-        if (detected && armedHome()) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if (noActiveSensors()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        }
+    /**
+     * Reads the current state once and stores whatever status the rules decide on.
+     */
+    private void applyAlarmRules(Trigger trigger) {
+        applyAlarmRules(trigger, securityRepository.getArmingStatus());
+    }
 
-        notifyFelineDetection(detected);
+    private void applyAlarmRules(Trigger trigger, ArmingStatus armingStatus) {
+        AlarmStatus next = alarmRules.evaluate(trigger, armingStatus, securityRepository.getAlarmStatus(),
+                securityRepository.getActiveSensorCount(), catDetected);
+        if (next != null) {
+            updateAlarmStatus(next);
+        }
     }
 
     // Status listener management
     public void addStatusListener(StatusListener listener) {
-        statusListeners.add(listener);
+        statusEventDispatcher.addListener(listener);
     }
 
     public void removeStatusListener(StatusListener listener) {
-        statusListeners.remove(listener);
+        statusEventDispatcher.removeListener(listener);
+    }
+
+    /**
+     * Replaces how listeners are notified. Listeners registered with the current
+     * dispatcher are carried over to the new one. The service owns its dispatcher, so
+     * the replaced one is closed if it is {@link AutoCloseable}.
+     * @param dispatcher Dispatcher used for all future events
+     */
+    public void setStatusEventDispatcher(StatusEventDispatcher dispatcher) {
+        StatusEventDispatcher replaced = statusEventDispatcher;
+        if (replaced == dispatcher) return;
+
+        for (StatusListener listener : replaced.getListeners()) {
+            dispatcher.addListener(listener);
+        }
+        statusEventDispatcher = dispatcher;
+        if (replaced instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) replaced).close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to close the replaced status event dispatcher", e);
+            }
+        }
+    }
+
+    /**
+     * Starts recording frame, detector and listener timings and event counts. Repository
+     * writes are timed by wrapping the repository in a
+     * {@link com.udasecurity.security.metrics.MeteredSecurityRepository}.
+     * @param metrics Metrics to record into, or {@link SecurityMetrics#DISABLED}
+     */
+    public void setMetrics(SecurityMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    protected SecurityMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the rules deciding how the alarm status reacts to arming, sensor and
+     * camera events.
+     * @param alarmRules Rules for all future events, {@link AlarmRuleTable#STANDARD} by default
+     */
+    public void setAlarmRules(AlarmRuleTable alarmRules) {
+        this.alarmRules = alarmRules;
     }
 
     // Alarm state management
     public void setAlarmStatus(AlarmStatus status) {
+        updateAlarmStatus(status);
+    }
+
+    //transitions use this rather than the public setter so subclasses can wrap the public API
+    private void updateAlarmStatus(AlarmStatus status) {
         securityRepository.setAlarmStatus(status);
         notifyAlarmStateChange(status);
     }
 
     // Notification methods
     private void notifyStatusListeners() {
-        statusListeners.forEach(StatusListener::sensorStatusChanged);
+        long start = metrics.start();
+        statusEventDispatcher.sensorStatusChanged();
+        metrics.recordSince(Operation.LISTENER_DISPATCH, start);
     }
 
     private void notifyAlarmStateChange(AlarmStatus status) {
-        statusListeners.forEach(listener -> listener.notify(status));
+        metrics.increment(Event.ALARM_STATUS_CHANGED);
+        long start = metrics.start();
+        statusEventDispatcher.alarmStatusChanged(status);
+        metrics.recordSince(Operation.LISTENER_DISPATCH, start);
     }
 
     private void notifyFelineDetection(boolean detected) {
-        statusListeners.forEach(listener -> listener.catDetected(detected));
+        if (detected) metrics.increment(Event.CAT_DETECTED);
+        long start = metrics.start();
+        statusEventDispatcher.catDetected(detected);
+        metrics.recordSince(Operation.LISTENER_DISPATCH, start);
     }
 
     // Utility methods
-    private boolean armedHome() {
-        return getArmingStatus() == ArmingStatus.ARMED_HOME;
-    }
-
-    private boolean anyActiveSensors() {
-        return getSensors().stream().anyMatch(Sensor::getActive);
-    }
-
     private boolean noActiveSensors() {
-        return !anyActiveSensors();
+        return securityRepository.getActiveSensorCount() == 0;
     }
 
     // Repository delegates
@@ -179,6 +324,10 @@ public class SecurityService {
         return Collections.unmodifiableSet(securityRepository.getSensors());
     }
 
+    public int getActiveSensorCount() {
+        return securityRepository.getActiveSensorCount();
+    }
+
     public void addSensor(Sensor sensor) {
         securityRepository.addSensor(sensor);
     }
@@ -187,6 +336,14 @@ public class SecurityService {
         securityRepository.removeSensor(sensor);
     }
 
+    public void addSensors(Collection<Sensor> sensors) {
+        securityRepository.addSensors(sensors);
+    }
+
+    public void removeSensors(Collection<Sensor> sensors) {
+        securityRepository.removeSensors(sensors);
+    }
+
     public ArmingStatus getArmingStatus() {
         return securityRepository.getArmingStatus();
     }
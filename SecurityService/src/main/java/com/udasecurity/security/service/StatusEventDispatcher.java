@@ -0,0 +1,26 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+
+import java.util.Collection;
+
+/**
+ * Delivers {@link SecurityService} status events to the registered {@link StatusListener}s.
+ * Implementations decide on which thread and how promptly listeners hear about an event;
+ * the service only reports that it happened.
+ */
+public interface StatusEventDispatcher {
+    void addListener(StatusListener listener);
+    void removeListener(StatusListener listener);
+
+    /**
+     * Snapshot of the registered listeners, used to carry them over when the service
+     * switches dispatchers.
+     */
+    Collection<StatusListener> getListeners();
+
+    void alarmStatusChanged(AlarmStatus status);
+    void catDetected(boolean detected);
+    void sensorStatusChanged();
+}
@@ -7,5 +7,7 @@ module SecurityService {
     requires transitive dev.mccue.guava.collect;
     requires transitive dev.mccue.guava.reflect;
     requires java.logging;
+    requires java.management;
     opens com.udasecurity.security.data;
+    exports com.udasecurity.security.metrics;
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+package com.udasecurity.security.application;
+
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorTableModelTest {
+
+    private long nextId;
+    private SensorTableModel model;
+    private List<TableModelEvent> events;
+
+    @BeforeEach
+    void init() {
+        model = new SensorTableModel();
+        events = new ArrayList<>();
+        model.addTableModelListener(events::add);
+    }
+
+    @Test
+    void whenSensorsAreSet_thenRowsAreSortedByName() {
+        Sensor back = sensor("Back door");
+        Sensor window = sensor("Window");
+        Sensor front = sensor("Front door");
+
+        model.setSensors(List.of(window, front, back));
+
+        assertEquals(3, model.getRowCount());
+        assertSame(back, model.getSensorAt(0));
+        assertSame(front, model.getSensorAt(1));
+        assertSame(window, model.getSensorAt(2));
+    }
+
+    @Test
+    void whenSensorIsAdded_thenOnlyItsRowIsInserted() {
+        model.setSensors(List.of(sensor("A"), sensor("C")));
+        events.clear();
+
+        int row = model.addSensor(sensor("B"));
+
+        assertEquals(1, row);
+        assertEquals(3, model.getRowCount());
+        assertEvent(TableModelEvent.INSERT, 1);
+    }
+
+    @Test
+    void whenListedSensorIsAddedAgain_thenNothingChanges() {
+        Sensor sensor = sensor("A");
+        model.setSensors(List.of(sensor));
+        events.clear();
+
+        assertEquals(0, model.addSensor(sensor));
+
+        assertEquals(1, model.getRowCount());
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void whenSameSensorsAreSynced_thenRowsAreRedrawnInPlace() {
+        Sensor a = sensor("A");
+        Sensor b = sensor("B");
+        a.setActive(true);
+        model.setSensors(List.of(a, b));
+        events.clear();
+
+        //as arming does behind the table's back
+        a.setActive(false);
+        model.syncSensors(List.of(b, a));
+
+        //only the row whose state moved
+        assertEvent(TableModelEvent.UPDATE, 0);
+        assertEquals("Inactive", model.getValueAt(0, SensorTableModel.STATUS_COLUMN));
+        assertSame(a, model.getSensorAt(0));
+    }
+
+    @Test
+    void whenSyncFollowsChangesAlreadyShown_thenOnlyUnshownChangesAreRedrawn() {
+        Sensor a = sensor("A");
+        Sensor b = sensor("B");
+        Sensor c = sensor("C");
+        Sensor d = sensor("D");
+        Set<Sensor> serviceSensors = new HashSet<>(List.of(a, b, c, d));
+        model.setSensors(serviceSensors);
+        b.setActive(true);
+        model.sensorChanged(b);
+        events.clear();
+
+        model.syncSensors(serviceSensors);
+        assertTrue(events.isEmpty());
+
+        a.setActive(true);
+        c.setActive(true);
+        d.setActive(true);
+        model.syncSensors(serviceSensors);
+
+        assertEquals(2, events.size());
+        assertEquals(0, events.get(0).getFirstRow());
+        assertEquals(0, events.get(0).getLastRow());
+        assertEquals(2, events.get(1).getFirstRow());
+        assertEquals(3, events.get(1).getLastRow());
+    }
+
+    @Test
+    void whenSyncedSensorsDiffer_thenRowsAreReplaced() {
+        Sensor a = sensor("A");
+        model.setSensors(List.of(a, sensor("B")));
+        events.clear();
+
+        Sensor c = sensor("C");
+        model.syncSensors(List.of(c, a));
+
+        assertEquals(2, model.getRowCount());
+        assertSame(a, model.getSensorAt(0));
+        assertSame(c, model.getSensorAt(1));
+        //a data-changed event covers every row
+        assertEquals(1, events.size());
+        assertEquals(Integer.MAX_VALUE, events.get(0).getLastRow());
+    }
+
+    @Test
+    void whenSensorChanges_thenOnlyItsRowIsUpdated() {
+        Sensor sensor = sensor("B");
+        model.setSensors(List.of(sensor("A"), sensor, sensor("C")));
+        events.clear();
+
+        sensor.setActive(true);
+        model.sensorChanged(sensor);
+
+        assertEvent(TableModelEvent.UPDATE, 1);
+        assertEquals("Active", model.getValueAt(1, SensorTableModel.STATUS_COLUMN));
+        assertEquals("Deactivate", model.getValueAt(1, SensorTableModel.TOGGLE_COLUMN));
+    }
+
+    @Test
+    void whenSensorIsRemoved_thenOnlyItsRowIsDeleted() {
+        Sensor sensor = sensor("B");
+        model.setSensors(List.of(sensor("A"), sensor, sensor("C")));
+        events.clear();
+
+        model.removeSensor(sensor);
+
+        assertEvent(TableModelEvent.DELETE, 1);
+        assertEquals(2, model.getRowCount());
+        assertEquals("C", model.getValueAt(1, SensorTableModel.NAME_COLUMN));
+    }
+
+    @Test
+    void whenUnlistedSensorIsRemovedOrChanged_thenNoEventIsFired() {
+        model.setSensors(List.of(sensor("A")));
+        events.clear();
+
+        model.removeSensor(sensor("B"));
+        model.sensorChanged(sensor("B"));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void whenManySensorsAreListed_thenEachChangeTouchesOneRow() {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            sensors.add(sensor("Sensor " + (100_000 + i)));
+        }
+        model.setSensors(sensors);
+        events.clear();
+
+        Sensor middle = sensors.get(50_000);
+        middle.setActive(true);
+        model.sensorChanged(middle);
+        model.removeSensor(middle);
+        model.addSensor(middle);
+
+        assertEquals(3, events.size());
+        for (TableModelEvent event : events) {
+            assertEquals(50_000, event.getFirstRow());
+            assertEquals(50_000, event.getLastRow());
+        }
+    }
+
+    private void assertEvent(int type, int row) {
+        assertEquals(1, events.size());
+        TableModelEvent event = events.get(0);
+        assertEquals(type, event.getType());
+        assertEquals(row, event.getFirstRow());
+        assertEquals(row, event.getLastRow());
+    }
+
+    private Sensor sensor(String name) {
+        return new Sensor(new UUID(0, nextId++), name, SensorType.DOOR, false);
+    }
+}
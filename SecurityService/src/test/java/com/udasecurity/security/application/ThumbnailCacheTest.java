@@ -0,0 +1,96 @@
+package com.udasecurity.security.application;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ThumbnailCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenImageIsScaled_thenResultHasRequestedSizeAndColor() {
+        BufferedImage source = filled(1920, 1080, Color.RED);
+
+        BufferedImage scaled = ThumbnailCache.scale(source, 300, 225);
+
+        assertEquals(300, scaled.getWidth());
+        assertEquals(225, scaled.getHeight());
+        assertEquals(Color.RED.getRGB(), scaled.getRGB(150, 112));
+    }
+
+    @Test
+    void whenImageIsSmallerThanTarget_thenItIsScaledUp() {
+        BufferedImage scaled = ThumbnailCache.scale(filled(40, 30, Color.BLUE), 300, 225);
+
+        assertEquals(300, scaled.getWidth());
+        assertEquals(225, scaled.getHeight());
+    }
+
+    @Test
+    void whenSameFileIsLoadedTwice_thenThumbnailIsReused() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(300, 225, 4);
+        byte[] encoded = png(filled(640, 480, Color.GREEN));
+        Path file = Files.write(directory.resolve("still.png"), encoded);
+
+        BufferedImage first = cache.thumbnailFor(file, encoded);
+
+        assertSame(first, cache.thumbnailFor(file, encoded));
+    }
+
+    @Test
+    void whenFileChanges_thenThumbnailIsRebuilt() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(300, 225, 4);
+        Path file = directory.resolve("still.png");
+        byte[] green = png(filled(640, 480, Color.GREEN));
+        Files.write(file, green);
+        BufferedImage first = cache.thumbnailFor(file, green);
+
+        byte[] yellow = png(filled(640, 480, Color.YELLOW));
+        Files.write(file, yellow);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+        BufferedImage second = cache.thumbnailFor(file, yellow);
+
+        assertNotSame(first, second);
+        assertEquals(Color.YELLOW.getRGB(), second.getRGB(10, 10));
+    }
+
+    @Test
+    void whenBytesAreNotAnImage_thenIOExceptionIsThrown() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(300, 225, 4);
+        byte[] encoded = "not an image".getBytes();
+        Path file = Files.write(directory.resolve("still.png"), encoded);
+
+        assertThrows(IOException.class, () -> cache.thumbnailFor(file, encoded));
+    }
+
+    private static BufferedImage filled(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
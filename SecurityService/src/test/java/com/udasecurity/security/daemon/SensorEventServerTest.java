@@ -0,0 +1,240 @@
+package com.udasecurity.security.daemon;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import com.udasecurity.security.service.ConcurrentSecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorEventServerTest {
+
+    private static final int LOAD_SENSORS = 1000;
+    private static final int LOAD_CLIENTS = 4;
+    private static final int LOAD_EVENTS_PER_CLIENT = 100_000;
+
+    @TempDir
+    Path directory;
+
+    private JournalSecurityRepositoryImpl repository;
+    private ConcurrentSecurityService securityService;
+    private SensorEventServer server;
+    private final List<Socket> clients = new ArrayList<>();
+
+    @BeforeEach
+    void initialize() throws IOException {
+        repository = new JournalSecurityRepositoryImpl(directory, Long.MAX_VALUE, false);
+        securityService = new ConcurrentSecurityService(repository, (image, threshold) -> image.getWidth() == 2);
+        server = new SensorEventServer(securityService, 0);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        server.close();
+        securityService.close();
+        repository.close();
+    }
+
+    @Test
+    void whenSensorChangesArrive_thenSubscriberIsToldEveryAlarmChange() throws Exception {
+        Sensor door = new Sensor(UUID.randomUUID(), "Front door", SensorType.DOOR, false);
+        Socket subscriber = connect();
+        send(subscriber, WireFormat.putSubscribe(ByteBuffer.allocate(WireFormat.HEADER_BYTES)));
+        DataInputStream notifications = new DataInputStream(subscriber.getInputStream());
+        assertEquals(AlarmStatus.NO_ALARM, readAlarmStatus(notifications));
+
+        Socket sensors = connect();
+        send(sensors, WireFormat.putSensorAdded(ByteBuffer.allocate(64), door));
+        send(sensors, sensorEvent(door.getSensorId(), true));
+        assertEquals(AlarmStatus.PENDING_ALARM, readAlarmStatus(notifications));
+
+        send(sensors, sensorEvent(door.getSensorId(), false));
+        assertEquals(AlarmStatus.NO_ALARM, readAlarmStatus(notifications));
+        //listeners hear of a change just before the service publishes it to readers
+        await(() -> server.getAppliedEventCount() == 3);
+        assertEquals(0, securityService.getActiveSensorCount());
+        assertEquals(1, securityService.getSensors().size());
+    }
+
+    @Test
+    void whenSensorOpensAndClosesInOneBurstWhilePending_thenAlarmIsRaised() throws Exception {
+        Sensor door = new Sensor(UUID.randomUUID(), "Front door", SensorType.DOOR, false);
+        Sensor window = new Sensor(UUID.randomUUID(), "Kitchen window", SensorType.WINDOW, false);
+        Socket client = connect();
+        send(client, WireFormat.putSensorAdded(ByteBuffer.allocate(64), door));
+        send(client, WireFormat.putSensorAdded(ByteBuffer.allocate(64), window));
+        send(client, sensorEvent(door.getSensorId(), true));
+        await(() -> server.getAppliedEventCount() == 3);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        //both in one write, so they reach the applier together
+        ByteBuffer burst = ByteBuffer.allocate(2 * WireFormat.SENSOR_EVENT_BYTES);
+        WireFormat.putSensorEvent(burst, window.getSensorId(), true);
+        WireFormat.putSensorEvent(burst, window.getSensorId(), false);
+        send(client, burst);
+
+        await(() -> server.getAppliedEventCount() == 5);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void whenArmingStatusArrives_thenSystemIsArmed() throws Exception {
+        Socket client = connect();
+        send(client, WireFormat.putArmingStatus(ByteBuffer.allocate(8), ArmingStatus.ARMED_AWAY));
+
+        await(() -> server.getAppliedEventCount() == 1);
+        assertEquals(ArmingStatus.ARMED_AWAY, securityService.getArmingStatus());
+    }
+
+    @Test
+    void whenFrameWithCatArrivesWhileArmedHome_thenAlarmIsRaised() throws Exception {
+        Socket client = connect();
+        send(client, WireFormat.putArmingStatus(ByteBuffer.allocate(8), ArmingStatus.ARMED_HOME));
+        await(() -> server.getAppliedEventCount() == 1);
+
+        //padded past the read buffer, so the frame arrives over several reads
+        ByteBuffer frame = ByteBuffer.allocate(256 * 1024).put(png(2, 2));
+        frame.clear();
+        send(client, WireFormat.putFrame(ByteBuffer.allocate(WireFormat.HEADER_BYTES + frame.remaining()), frame));
+
+        await(() -> server.getAppliedEventCount() == 2);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void whenSensorIsUnknown_thenEventIsRejected() throws Exception {
+        Socket client = connect();
+        send(client, sensorEvent(UUID.randomUUID(), true));
+
+        await(() -> server.getRejectedEventCount() == 1);
+        assertEquals(0, server.getAppliedEventCount());
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void whenMessageIsMalformed_thenConnectionIsClosed() throws Exception {
+        Socket client = connect();
+        //an arming status with an ordinal that does not exist
+        send(client, ByteBuffer.allocate(6).putInt(1).put(WireFormat.ARMING_STATUS).put((byte) 9));
+
+        assertEquals(-1, client.getInputStream().read());
+        assertEquals(0, server.getReceivedEventCount());
+    }
+
+    /**
+     * Several local clients flip sensors as fast as they can write; every event must be
+     * applied, at a sustained rate of tens of thousands per second.
+     */
+    @Test
+    void whenClientsSendSensorEventsFlatOut_thenEveryEventIsApplied() throws Exception {
+        List<Sensor> sensors = new ArrayList<>();
+        ByteBuffer setup = ByteBuffer.allocate(LOAD_SENSORS * 64);
+        for (int i = 0; i < LOAD_SENSORS; i++) {
+            Sensor sensor = new Sensor(new UUID(1, i), "Sensor " + i, SensorType.values()[i % 3], false);
+            sensors.add(sensor);
+            WireFormat.putSensorAdded(setup, sensor);
+        }
+        send(connect(), setup);
+        await(() -> server.getAppliedEventCount() == LOAD_SENSORS);
+
+        List<Thread> senders = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < LOAD_CLIENTS; c++) {
+            Socket client = connect();
+            int offset = c;
+            Thread sender = new Thread(() -> {
+                ByteBuffer events = ByteBuffer.allocate(LOAD_EVENTS_PER_CLIENT * WireFormat.SENSOR_EVENT_BYTES);
+                for (int i = 0; i < LOAD_EVENTS_PER_CLIENT; i++) {
+                    Sensor sensor = sensors.get((i * LOAD_CLIENTS + offset) % LOAD_SENSORS);
+                    WireFormat.putSensorEvent(events, sensor.getSensorId(), (i / LOAD_SENSORS) % 2 == 0);
+                }
+                try {
+                    send(client, events);
+                } catch (IOException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long total = LOAD_SENSORS + (long) LOAD_CLIENTS * LOAD_EVENTS_PER_CLIENT;
+        await(() -> server.getAppliedEventCount() == total);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertTrue(failures.isEmpty(), failures.toString());
+        assertEquals(0, server.getRejectedEventCount());
+        double eventsPerSecond = LOAD_CLIENTS * LOAD_EVENTS_PER_CLIENT / seconds;
+        assertTrue(eventsPerSecond > 20_000, "Only " + (long) eventsPerSecond + " events per second");
+    }
+
+    private Socket connect() throws IOException {
+        Socket client = new Socket(server.getAddress().getAddress(), server.getAddress().getPort());
+        client.setSoTimeout(10_000);
+        clients.add(client);
+        return client;
+    }
+
+    private static void send(Socket client, ByteBuffer message) throws IOException {
+        message.flip();
+        OutputStream out = new BufferedOutputStream(client.getOutputStream(), 64 * 1024);
+        out.write(message.array(), message.arrayOffset() + message.position(), message.remaining());
+        out.flush();
+    }
+
+    private static ByteBuffer sensorEvent(UUID sensorId, boolean active) {
+        return WireFormat.putSensorEvent(ByteBuffer.allocate(WireFormat.SENSOR_EVENT_BYTES), sensorId, active);
+    }
+
+    private static AlarmStatus readAlarmStatus(DataInputStream in) throws IOException {
+        assertEquals(1, in.readInt());
+        assertEquals(WireFormat.ALARM_STATUS, in.readByte());
+        return AlarmStatus.values()[in.readByte()];
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met in time");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
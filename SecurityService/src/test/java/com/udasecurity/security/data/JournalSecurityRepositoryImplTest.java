@@ -0,0 +1,267 @@
+package com.udasecurity.security.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JournalSecurityRepositoryImplTest {
+
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenReopened_thenStateIsRestoredFromJournal() {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+
+        String expected;
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+            expected = fingerprint(repository);
+        }
+
+        try (JournalSecurityRepositoryImpl reopened = new JournalSecurityRepositoryImpl(directory)) {
+            assertEquals(expected, fingerprint(reopened));
+            assertEquals(1, reopened.getActiveSensorCount());
+            assertTrue(reopened.getActiveSensorIds().contains(door.getSensorId()));
+        }
+    }
+
+    @Test
+    void whenActiveSensorIdsAreRead_thenLaterChangesDoNotShowThrough() {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        door.setActive(true);
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            repository.addSensor(door);
+
+            Set<UUID> activeIds = repository.getActiveSensorIds();
+            door.setActive(false);
+            repository.updateSensor(door);
+
+            assertEquals(Set.of(door.getSensorId()), activeIds);
+            assertTrue(repository.getActiveSensorIds().isEmpty());
+        }
+    }
+
+    @Test
+    void whenActivationFlips_thenOnlySmallRecordsAreAppended() throws IOException {
+        Sensor motion = new Sensor("Hallway Motion", SensorType.MOTION);
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            repository.addSensor(motion);
+            long before = Files.size(directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE));
+
+            motion.setActive(true);
+            repository.updateSensor(motion);
+
+            long recordSize = Files.size(directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE)) - before;
+            assertTrue(recordSize <= 32, "activation record was " + recordSize + " bytes");
+        }
+    }
+
+    @Test
+    void whenJournalExceedsThreshold_thenItIsCompactedIntoSnapshot() throws IOException {
+        String expected;
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, 512, false)) {
+            Random random = new Random(7);
+            List<Sensor> sensors = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % 3]);
+                sensors.add(sensor);
+                repository.addSensor(sensor);
+            }
+            for (int i = 0; i < 1000; i++) {
+                Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                sensor.setActive(!sensor.getActive());
+                repository.updateSensor(sensor);
+            }
+            expected = fingerprint(repository);
+            assertTrue(Files.size(directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE)) < 512);
+            assertTrue(Files.exists(directory.resolve(JournalSecurityRepositoryImpl.SNAPSHOT_FILE)));
+        }
+
+        try (JournalSecurityRepositoryImpl reopened = new JournalSecurityRepositoryImpl(directory)) {
+            assertEquals(expected, fingerprint(reopened));
+        }
+    }
+
+    @Test
+    void whenJournalIsTruncatedAtRandomOffsets_thenStartupRecoversLastCompleteRecord() throws IOException {
+        Path journal = directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE);
+        List<Long> recordEnds = new ArrayList<>();
+        List<String> states = new ArrayList<>();
+
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            recordEnds.add(0L);
+            states.add(fingerprint(repository));
+            runRandomOperations(repository, new Random(42), 300, recordEnds, states, journal);
+        }
+
+        Random random = new Random(1234);
+        long journalSize = Files.size(journal);
+        for (int i = 0; i < 60; i++) {
+            long offset = (long) (random.nextDouble() * journalSize);
+            Path copy = Files.createTempDirectory(directory, "crash");
+            Files.copy(journal, copy.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE));
+            try (FileChannel channel = FileChannel.open(copy.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE), StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+
+            int lastComplete = 0;
+            while (lastComplete + 1 < recordEnds.size() && recordEnds.get(lastComplete + 1) <= offset) {
+                lastComplete++;
+            }
+
+            try (JournalSecurityRepositoryImpl recovered = new JournalSecurityRepositoryImpl(copy, NO_COMPACTION, false)) {
+                assertEquals(states.get(lastComplete), fingerprint(recovered), "truncated at " + offset);
+
+                //the torn tail is dropped, so new writes must survive another restart
+                recovered.setAlarmStatus(AlarmStatus.ALARM);
+                String afterWrite = fingerprint(recovered);
+                recovered.close();
+                try (JournalSecurityRepositoryImpl reopened = new JournalSecurityRepositoryImpl(copy, NO_COMPACTION, false)) {
+                    assertEquals(afterWrite, fingerprint(reopened));
+                }
+            }
+        }
+    }
+
+    @Test
+    void whenBatchRecordIsTorn_thenNoneOfTheBatchIsApplied() throws IOException {
+        Path journal = directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE);
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sensors.add(new Sensor("Sensor " + i, SensorType.DOOR));
+        }
+
+        String beforeBatch;
+        long batchStart;
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            repository.addSensors(sensors);
+            beforeBatch = fingerprint(repository);
+            batchStart = Files.size(journal);
+
+            sensors.forEach(sensor -> sensor.setActive(true));
+            repository.updateSensors(sensors);
+            assertEquals(10, repository.getActiveSensorCount());
+        }
+
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(batchStart + (Files.size(journal) - batchStart) / 2);
+        }
+
+        try (JournalSecurityRepositoryImpl recovered = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            assertEquals(beforeBatch, fingerprint(recovered));
+            assertEquals(0, recovered.getActiveSensorCount());
+        }
+    }
+
+    @Test
+    void whenBatchOutgrowsOneRecord_thenItIsSplitAndReplayedInFull() throws IOException {
+        Path journal = directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE);
+        //about 70 bytes an entry, so the batch is well past the record limit
+        String padding = "-----------------------------------------";
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            sensors.add(new Sensor(new UUID(7, i), "Sensor " + i + padding, SensorType.values()[i % 3], i % 2 == 0));
+        }
+
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            repository.addSensors(sensors);
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        }
+        assertTrue(Files.size(journal) > JournalSecurityRepositoryImpl.MAX_RECORD_BYTES);
+
+        try (JournalSecurityRepositoryImpl reopened = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            assertEquals(300_000, reopened.getSensors().size());
+            assertEquals(150_000, reopened.getActiveSensorCount());
+            //the record after the batch survives too
+            assertEquals(ArmingStatus.ARMED_HOME, reopened.getArmingStatus());
+        }
+    }
+
+    @Test
+    void whenJournalEndsInGarbage_thenGarbageIsIgnored() throws IOException {
+        Path journal = directory.resolve(JournalSecurityRepositoryImpl.JOURNAL_FILE);
+        String expected;
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            runRandomOperations(repository, new Random(3), 50, new ArrayList<>(), new ArrayList<>(), journal);
+            expected = fingerprint(repository);
+        }
+
+        byte[] garbage = new byte[37];
+        new Random(9).nextBytes(garbage);
+        Files.write(journal, garbage, StandardOpenOption.APPEND);
+
+        try (JournalSecurityRepositoryImpl recovered = new JournalSecurityRepositoryImpl(directory, NO_COMPACTION, false)) {
+            assertEquals(expected, fingerprint(recovered));
+        }
+    }
+
+    private static void runRandomOperations(JournalSecurityRepositoryImpl repository, Random random, int count,
+                                            List<Long> recordEnds, List<String> states, Path journal) throws IOException {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int operation = sensors.isEmpty() ? 0 : random.nextInt(6);
+            switch (operation) {
+                case 0: {
+                    Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[random.nextInt(3)]);
+                    sensors.add(sensor);
+                    repository.addSensor(sensor);
+                    break;
+                }
+                case 1: {
+                    Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                    sensor.setActive(!sensor.getActive());
+                    repository.updateSensor(sensor);
+                    break;
+                }
+                case 2: {
+                    Sensor sensor = sensors.get(random.nextInt(sensors.size()));
+                    sensor.setName(sensor.getName() + "'");
+                    repository.updateSensor(sensor);
+                    break;
+                }
+                case 3:
+                    repository.removeSensor(sensors.remove(random.nextInt(sensors.size())));
+                    break;
+                case 4:
+                    repository.setAlarmStatus(AlarmStatus.values()[random.nextInt(3)]);
+                    break;
+                default:
+                    repository.setArmingStatus(ArmingStatus.values()[random.nextInt(3)]);
+                    break;
+            }
+            recordEnds.add(Files.size(journal));
+            states.add(fingerprint(repository));
+        }
+    }
+
+    private static String fingerprint(SecurityRepository repository) {
+        return repository.getAlarmStatus() + "/" + repository.getArmingStatus() + "/"
+                + repository.getSensors().stream()
+                .map(s -> s.getSensorId() + ":" + s.getName() + ":" + s.getSensorType() + ":" + s.getActive())
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,263 @@
+package com.udasecurity.security.data;
+
+import com.google.gson.Gson;
+import com.udasecurity.security.service.SecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PretendDatabaseSecurityRepositoryImplTest {
+
+    private static final String FIRST = "test-premise-a";
+    private static final String SECOND = "test-premise-b";
+
+    @AfterEach
+    void removeNamespaces() throws BackingStoreException {
+        Preferences root = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+        for (String namespace : new String[]{FIRST, SECOND}) {
+            if (root.nodeExists(namespace)) root.node(namespace).removeNode();
+        }
+    }
+
+    @Test
+    void whenTwoNamespacesAreUsed_thenTheirStateIsKeptApart() {
+        PretendDatabaseSecurityRepositoryImpl first = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        PretendDatabaseSecurityRepositoryImpl second = new PretendDatabaseSecurityRepositoryImpl(SECOND);
+        first.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        first.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        second.setAlarmStatus(AlarmStatus.ALARM);
+
+        PretendDatabaseSecurityRepositoryImpl reloadedFirst = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        PretendDatabaseSecurityRepositoryImpl reloadedSecond = new PretendDatabaseSecurityRepositoryImpl(SECOND);
+
+        assertEquals(ArmingStatus.ARMED_AWAY, reloadedFirst.getArmingStatus());
+        assertEquals(AlarmStatus.NO_ALARM, reloadedFirst.getAlarmStatus());
+        assertEquals(1, reloadedFirst.getSensors().size());
+        assertEquals(ArmingStatus.DISARMED, reloadedSecond.getArmingStatus());
+        assertEquals(AlarmStatus.ALARM, reloadedSecond.getAlarmStatus());
+        assertEquals(0, reloadedSecond.getSensors().size());
+    }
+
+    @Test
+    void whenSensorsWereSavedAsJson_thenTheyAreMigratedToASnapshot() {
+        List<Sensor> sensors = new ArrayList<>();
+        sensors.add(new Sensor("Front Door", SensorType.DOOR));
+        sensors.add(new Sensor("Back Window", SensorType.WINDOW));
+        sensors.get(1).setActive(true);
+        Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class).node(FIRST);
+        prefs.put("SENSORS", new Gson().toJson(sensors));
+        prefs.put("ARMING_STATUS", ArmingStatus.ARMED_HOME.name());
+
+        PretendDatabaseSecurityRepositoryImpl migrated = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        assertEquals(new TreeSet<>(sensors), migrated.getSensors());
+        assertEquals(1, migrated.getActiveSensorCount());
+        assertNull(prefs.get("SENSORS", null));
+
+        PretendDatabaseSecurityRepositoryImpl reloaded = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        assertEquals(new TreeSet<>(sensors), reloaded.getSensors());
+        assertEquals(1, reloaded.getActiveSensorCount());
+        assertEquals(ArmingStatus.ARMED_HOME, reloaded.getArmingStatus());
+    }
+
+    @Test
+    void whenSensorsOutgrowOnePreferenceValue_thenTheyAreStillSaved() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST, 0, 10_000);
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            sensors.add(new Sensor("Sensor " + i % 100, SensorType.values()[i % 3]));
+        }
+        repository.addSensors(sensors);
+        repository.close();
+
+        PretendDatabaseSecurityRepositoryImpl reloaded = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        assertEquals(2_000, reloaded.getSensors().size());
+
+        //shrinking drops the chunks that are no longer needed
+        reloaded.removeSensors(sensors.subList(10, sensors.size()));
+        assertEquals(10, new PretendDatabaseSecurityRepositoryImpl(FIRST).getSensors().size());
+    }
+
+    /**
+     * Arming deactivates the sensors the repository hands out; those must be the
+     * caller's own objects, or the caller's still-active copy swallows the next activation.
+     */
+    @Test
+    void whenSensorIsActivatedAfterArming_thenAlarmIsRaised() {
+        SecurityService securityService = new SecurityService(new PretendDatabaseSecurityRepositoryImpl(FIRST), (image, threshold) -> false);
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        securityService.addSensor(door);
+        securityService.changeSensorActivationStatus(door, true);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        assertFalse(door.getActive());
+        assertEquals(0, securityService.getActiveSensorCount());
+
+        securityService.changeSensorActivationStatus(door, true);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(1, securityService.getActiveSensorCount());
+    }
+
+    @Test
+    void whenWriteBehindBatchFills_thenSensorsAreFlushed() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST, 0, 3);
+        repository.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        repository.addSensor(new Sensor("Back Door", SensorType.DOOR));
+        assertEquals(0, reload(FIRST).getSensors().size());
+
+        repository.addSensor(new Sensor("Kitchen Window", SensorType.WINDOW));
+        assertEquals(3, reload(FIRST).getSensors().size());
+
+        //a flush starts a new batch
+        repository.addSensor(new Sensor("Hallway Motion", SensorType.MOTION));
+        assertEquals(3, reload(FIRST).getSensors().size());
+        repository.close();
+    }
+
+    @Test
+    void whenFlushedOrClosed_thenPendingSensorsAreWritten() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST, 0, 100);
+        repository.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        repository.flush();
+        assertEquals(1, reload(FIRST).getSensors().size());
+
+        repository.addSensor(new Sensor("Back Door", SensorType.DOOR));
+        repository.close();
+        assertEquals(2, reload(FIRST).getSensors().size());
+    }
+
+    @Test
+    void whenFlushIntervalPasses_thenSensorsAreFlushedInTheBackground() throws InterruptedException {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST, 10, 100);
+        repository.addSensor(new Sensor("Front Door", SensorType.DOOR));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reload(FIRST).getSensors().isEmpty()) {
+            assertTrue(System.nanoTime() < deadline, "sensors were not flushed in time");
+            Thread.sleep(10);
+        }
+        repository.close();
+    }
+
+    @Test
+    void whenShutdownFlushRuns_thenOnlyOpenRepositoriesAreFlushed() {
+        PretendDatabaseSecurityRepositoryImpl open = new PretendDatabaseSecurityRepositoryImpl(FIRST, 0, 100);
+        PretendDatabaseSecurityRepositoryImpl closed = new PretendDatabaseSecurityRepositoryImpl(SECOND, 0, 100);
+        closed.close();
+        open.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        //changes after close are no longer the shutdown hook's to save
+        closed.addSensor(new Sensor("Back Door", SensorType.DOOR));
+
+        PretendDatabaseSecurityRepositoryImpl.flushAll();
+
+        assertEquals(1, reload(FIRST).getSensors().size());
+        assertEquals(0, reload(SECOND).getSensors().size());
+        open.close();
+    }
+
+    @Test
+    void whenWriteBehindRepositoryIsDropped_thenItCanBeCollected() throws InterruptedException {
+        WeakReference<PretendDatabaseSecurityRepositoryImpl> dropped =
+                new WeakReference<>(new PretendDatabaseSecurityRepositoryImpl(FIRST, 60_000, 100));
+
+        for (int i = 0; i < 50 && dropped.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(dropped.get());
+    }
+
+    @Test
+    void whenActiveSensorIdsAreRead_thenLaterChangesDoNotShowThrough() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        door.setActive(true);
+        repository.addSensor(door);
+
+        Set<UUID> activeIds = repository.getActiveSensorIds();
+        door.setActive(false);
+        repository.updateSensor(door);
+
+        assertEquals(Set.of(door.getSensorId()), activeIds);
+        assertTrue(repository.getActiveSensorIds().isEmpty());
+    }
+
+    @Test
+    void whenFlushStopsBeforeThePointerMoves_thenTheLastCompleteSnapshotLoads() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        repository.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        repository.addSensor(new Sensor("Back Door", SensorType.DOOR));
+
+        //what a crash part way through writing the other set leaves behind
+        Preferences prefs = namespace(FIRST);
+        String other = "A".equals(prefs.get("SNAPSHOT_CURRENT", null)) ? "B" : "A";
+        prefs.putByteArray("SNAPSHOT_" + other + "_0", new byte[]{1, 2, 3});
+        prefs.putByteArray("SNAPSHOT_" + other + "_1", new byte[]{4, 5, 6});
+
+        assertEquals(2, reload(FIRST).getSensors().size());
+        //and the next flush writes over the partial set
+        reload(FIRST).addSensor(new Sensor("Kitchen Window", SensorType.WINDOW));
+        assertEquals(3, reload(FIRST).getSensors().size());
+        assertNull(prefs.getByteArray("SNAPSHOT_" + other + "_1", null));
+    }
+
+    @Test
+    void whenCurrentSnapshotIsCorrupt_thenThePreviousOneLoads() {
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(FIRST);
+        repository.addSensor(new Sensor("Front Door", SensorType.DOOR));
+        repository.addSensor(new Sensor("Back Door", SensorType.DOOR));
+
+        Preferences prefs = namespace(FIRST);
+        byte[] chunk = prefs.getByteArray("SNAPSHOT_" + prefs.get("SNAPSHOT_CURRENT", null) + "_0", null);
+        chunk[chunk.length - 1] ^= 1;
+        prefs.putByteArray("SNAPSHOT_" + prefs.get("SNAPSHOT_CURRENT", null) + "_0", chunk);
+
+        assertEquals(1, reload(FIRST).getSensors().size());
+    }
+
+    @Test
+    void whenSensorsWereSavedAsOneChunkSet_thenTheyLoadAndMoveToTheAlternatingSets() {
+        SensorStore store = new SensorStore();
+        store.put(new Sensor("Front Door", SensorType.DOOR));
+        Preferences prefs = namespace(FIRST);
+        prefs.putByteArray("SNAPSHOT_0", RepositorySnapshot.write(AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, store));
+        prefs.putInt("SNAPSHOT_CHUNKS", 1);
+
+        PretendDatabaseSecurityRepositoryImpl repository = reload(FIRST);
+        assertEquals(1, repository.getSensors().size());
+
+        repository.addSensor(new Sensor("Back Door", SensorType.DOOR));
+        assertNull(prefs.getByteArray("SNAPSHOT_0", null));
+        assertEquals(0, prefs.getInt("SNAPSHOT_CHUNKS", 0));
+        assertEquals(2, reload(FIRST).getSensors().size());
+    }
+
+    @Test
+    void whenNamespaceIsNotAValidNodeName_thenItIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new PretendDatabaseSecurityRepositoryImpl("a/b"));
+        assertThrows(IllegalArgumentException.class, () -> new PretendDatabaseSecurityRepositoryImpl(""));
+    }
+
+    private static Preferences namespace(String namespace) {
+        return Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class).node(namespace);
+    }
+
+    private static PretendDatabaseSecurityRepositoryImpl reload(String namespace) {
+        return new PretendDatabaseSecurityRepositoryImpl(namespace);
+    }
+}
@@ -0,0 +1,88 @@
+package com.udasecurity.security.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RepositorySnapshotTest {
+
+    @Test
+    void whenSnapshotIsReadBack_thenStateMatches() throws IOException {
+        Random random = new Random(5);
+        SensorStore store = new SensorStore();
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Sensor sensor = new Sensor(new UUID(random.nextLong(), random.nextLong()), "Sensor \u00e9 " + random.nextInt(20),
+                    SensorType.values()[random.nextInt(3)], random.nextBoolean());
+            sensors.add(sensor);
+            store.put(sensor);
+        }
+        //leaves a freed slot in the name table
+        store.remove(sensors.remove(0).getSensorId());
+
+        byte[] bytes = RepositorySnapshot.write(AlarmStatus.PENDING_ALARM, ArmingStatus.ARMED_AWAY, store);
+        RepositorySnapshot snapshot = RepositorySnapshot.read(ByteBuffer.wrap(bytes));
+
+        assertEquals(AlarmStatus.PENDING_ALARM, snapshot.getAlarmStatus());
+        assertEquals(ArmingStatus.ARMED_AWAY, snapshot.getArmingStatus());
+        SensorStore loaded = snapshot.getSensors();
+        assertEquals(new TreeSet<>(sensors), loaded.sortedView());
+        assertEquals(store.activeCount(), loaded.activeCount());
+        assertEquals(store.activeIds(), loaded.activeIds());
+        for (Sensor sensor : sensors) {
+            assertEquals(sensor.getName(), loaded.get(sensor.getSensorId()).getName());
+            assertEquals(sensor.getActive(), loaded.isActive(sensor.getSensorId()));
+        }
+        assertSame(loaded.sortedView().first().getName(), loaded.get(loaded.sortedView().first().getSensorId()).getName());
+        assertEquals(store.distinctNameCount(), loaded.distinctNameCount());
+    }
+
+    @Test
+    void whenLoadedStoreIsChanged_thenItBehavesLikeAnyOther() throws IOException {
+        SensorStore store = new SensorStore();
+        Sensor door = new Sensor("Door", SensorType.DOOR);
+        store.put(door);
+        SensorStore loaded = RepositorySnapshot.read(ByteBuffer.wrap(
+                RepositorySnapshot.write(AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, store))).getSensors();
+
+        loaded.put(new Sensor("Door", SensorType.WINDOW));
+        loaded.remove(door.getSensorId());
+        loaded.put(new Sensor("Motion", SensorType.MOTION));
+
+        assertEquals(2, loaded.size());
+        assertEquals(2, loaded.distinctNameCount());
+    }
+
+    @Test
+    void whenSnapshotIsDamaged_thenItIsRejected() {
+        byte[] bytes = RepositorySnapshot.write(AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, new SensorStore());
+
+        byte[] flipped = bytes.clone();
+        flipped[9] ^= 1;
+        assertThrows(IOException.class, () -> RepositorySnapshot.read(ByteBuffer.wrap(flipped)));
+        assertThrows(IOException.class, () -> RepositorySnapshot.read(ByteBuffer.wrap(bytes, 0, bytes.length - 1)));
+    }
+
+    @Test
+    void whenVersionIsUnknown_thenItIsRejected() {
+        byte[] bytes = RepositorySnapshot.write(AlarmStatus.NO_ALARM, ArmingStatus.DISARMED, new SensorStore());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(4, RepositorySnapshot.VERSION + 1);
+        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        buffer.putInt(bytes.length - 4, (int) crc.getValue());
+
+        IOException error = assertThrows(IOException.class, () -> RepositorySnapshot.read(buffer));
+        assertEquals("Unsupported repository snapshot version " + (RepositorySnapshot.VERSION + 1), error.getMessage());
+    }
+}
@@ -0,0 +1,121 @@
+package com.udasecurity.security.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import dev.mccue.guava.reflect.TypeToken;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorJsonTest {
+
+    private static final Type SENSOR_SET_TYPE = new TypeToken<Set<Sensor>>() {
+    }.getType();
+
+    @Test
+    void whenSensorsAreWritten_thenOutputMatchesReflectiveGson() throws IOException {
+        List<Sensor> sensors = sensors(50);
+        StringWriter out = new StringWriter();
+
+        SensorJson.writeSensors(sensors, out);
+
+        assertEquals(new Gson().toJson(sensors), out.toString());
+    }
+
+    @Test
+    void whenJsonFromReflectiveGsonIsRead_thenSensorsAreRestoredOneByOne() throws IOException {
+        List<Sensor> sensors = sensors(50);
+        List<Sensor> read = new ArrayList<>();
+
+        int count = SensorJson.readSensors(new StringReader(new Gson().toJson(sensors)), read::add);
+
+        assertEquals(50, count);
+        for (int i = 0; i < sensors.size(); i++) {
+            assertSameSensor(sensors.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    void whenAdaptersAreRegistered_thenGsonUsesThem() throws IOException {
+        Gson gson = SensorJson.registerAdapters(new GsonBuilder()).create();
+        List<Sensor> sensors = sensors(5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SensorJson.writeSensors(sensors, bytes);
+
+        Set<Sensor> read = gson.fromJson(new String(bytes.toByteArray(), StandardCharsets.UTF_8), SENSOR_SET_TYPE);
+
+        assertEquals(new HashSet<>(sensors), read);
+        assertEquals("\"PENDING_ALARM\"", gson.toJson(AlarmStatus.PENDING_ALARM));
+        assertEquals(ArmingStatus.ARMED_AWAY, gson.fromJson("\"ARMED_AWAY\"", ArmingStatus.class));
+    }
+
+    @Test
+    void whenArrayIsRead_thenNothingPastTheCurrentSensorIsBuffered() throws IOException {
+        int[] charsRead = new int[1];
+        Reader endless = new Reader() {
+            private final String element = "{\"sensorId\":\"" + UUID.randomUUID() + "\",\"name\":\"n\",\"sensorType\":\"DOOR\"},";
+            private int position = -1;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                int written = 0;
+                while (written < length) {
+                    buffer[offset + written++] = position < 0 ? '[' : element.charAt(position % element.length());
+                    position++;
+                }
+                charsRead[0] += written;
+                return written;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        int[] seen = new int[1];
+
+        assertThrows(IllegalStateException.class, () -> SensorJson.readSensors(endless, sensor -> {
+            if (++seen[0] == 1000) throw new IllegalStateException("enough");
+        }));
+        //JsonReader reads ahead in 1K chunks, not the whole input
+        assertTrue(charsRead[0] < 1000 * 100);
+    }
+
+    @Test
+    void whenSensorIsIncomplete_thenReadingFails() {
+        assertThrows(JsonParseException.class, () -> SensorJson.readSensors(
+                new StringReader("[{\"name\":\"Door\",\"sensorType\":\"DOOR\"}]"), sensor -> { }));
+        assertThrows(JsonParseException.class, () -> SensorJson.readSensors(
+                new StringReader("[{\"sensorId\":\"" + UUID.randomUUID() + "\",\"name\":\"Door\",\"sensorType\":\"GARAGE\"}]"), sensor -> { }));
+    }
+
+    private static List<Sensor> sensors(int count) {
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sensors.add(new Sensor(UUID.randomUUID(), "Sensor \"" + i + "\" \u00e9", SensorType.values()[i % 3], i % 2 == 0));
+        }
+        return sensors;
+    }
+
+    private static void assertSameSensor(Sensor expected, Sensor actual) {
+        assertEquals(expected.getSensorId(), actual.getSensorId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getActive(), actual.getActive());
+        assertEquals(expected.getSensorType(), actual.getSensorType());
+    }
+}
@@ -0,0 +1,183 @@
+package com.udasecurity.security.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensorStoreTest {
+
+    @Test
+    void whenRandomOperationsAreApplied_thenStoreMatchesReferenceModel() {
+        Random random = new Random(17);
+        SensorStore store = new SensorStore();
+        Map<UUID, Sensor> model = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int operation = ids.isEmpty() ? 0 : random.nextInt(5);
+            switch (operation) {
+                case 0: {
+                    //colliding high halves exercise the probe sequence
+                    UUID id = new UUID(random.nextInt(64), random.nextLong());
+                    Sensor sensor = new Sensor(id, "Sensor " + random.nextInt(50), SensorType.values()[random.nextInt(3)], random.nextBoolean());
+                    assertEquals(!model.containsKey(id), store.put(sensor));
+                    if (!model.containsKey(id)) ids.add(id);
+                    model.put(id, copy(sensor));
+                    break;
+                }
+                case 1: {
+                    UUID id = ids.remove(random.nextInt(ids.size()));
+                    assertTrue(store.remove(id));
+                    model.remove(id);
+                    assertFalse(store.contains(id));
+                    break;
+                }
+                case 2: {
+                    UUID id = ids.get(random.nextInt(ids.size()));
+                    boolean active = random.nextBoolean();
+                    assertEquals(model.get(id).getActive() != active, store.setActive(id, active));
+                    model.get(id).setActive(active);
+                    break;
+                }
+                case 3: {
+                    Sensor renamed = copy(model.get(ids.get(random.nextInt(ids.size()))));
+                    renamed.setName("Renamed " + random.nextInt(50));
+                    renamed.setSensorType(SensorType.values()[random.nextInt(3)]);
+                    assertFalse(store.put(renamed));
+                    model.put(renamed.getSensorId(), renamed);
+                    break;
+                }
+                default:
+                    assertFalse(store.remove(UUID.randomUUID()));
+                    break;
+            }
+            if (i % 1000 == 0) {
+                assertMatches(model, store);
+            }
+        }
+        assertMatches(model, store);
+    }
+
+    @Test
+    void whenOnlyActivationChanges_thenCachedViewIsPatchedNotRebuilt() {
+        SensorStore store = new SensorStore();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        store.put(door);
+        store.put(new Sensor("Back Door", SensorType.DOOR));
+
+        Set<Sensor> view = store.sortedView();
+        store.setActive(door.getSensorId(), true);
+
+        assertSame(view, store.sortedView());
+        assertTrue(view.stream().filter(s -> s.equals(door)).findFirst().get().getActive());
+
+        store.put(new Sensor("Garage Door", SensorType.DOOR));
+        assertEquals(3, store.sortedView().size());
+    }
+
+    @Test
+    void whenSensorIsStored_thenCallersInstanceIsKeptAndUpdated() {
+        SensorStore store = new SensorStore();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        store.put(door);
+
+        assertSame(door, store.get(door.getSensorId()));
+        assertSame(door, store.sortedView().first());
+        store.setActive(door.getSensorId(), true);
+        assertTrue(door.getActive());
+
+        Sensor replacement = copy(door);
+        store.put(replacement);
+        assertSame(replacement, store.get(door.getSensorId()));
+        assertSame(replacement, store.sortedView().first());
+    }
+
+    @Test
+    void whenSensorIsRemoved_thenCallersInstanceKeepsItsState() {
+        SensorStore store = new SensorStore();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        door.setActive(true);
+        store.put(door);
+
+        assertTrue(store.remove(door.getSensorId()));
+        assertTrue(door.getActive());
+        assertEquals(0, store.activeCount());
+        assertTrue(store.activeIds().isEmpty());
+    }
+
+    @Test
+    void whenSensorsShareNames_thenNameIsStoredOnceAndReleasedWithLastUser() throws IOException {
+        SensorStore store = new SensorStore();
+        List<Sensor> sensors = new ArrayList<>();
+        List<String> givenNames = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String name = new String("Hallway Motion");
+            Sensor sensor = new Sensor(name, SensorType.MOTION);
+            sensors.add(sensor);
+            givenNames.add(name);
+            store.put(sensor);
+        }
+        assertEquals(1, store.distinctNameCount());
+        //the callers' sensors keep the names they were given
+        for (int i = 0; i < sensors.size(); i++) {
+            assertSame(givenNames.get(i), sensors.get(i).getName());
+        }
+
+        //sensors the store creates itself share the table's String
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        store.writeTo(new DataOutputStream(bytes));
+        SensorStore loaded = SensorStore.readFrom(ByteBuffer.wrap(bytes.toByteArray()));
+        Set<String> instances = loaded.sortedView().stream()
+                .map(Sensor::getName)
+                .collect(Collectors.toCollection(() -> Collections.newSetFromMap(new IdentityHashMap<>())));
+        assertEquals(1, instances.size());
+
+        sensors.forEach(sensor -> store.remove(sensor.getSensorId()));
+        assertEquals(0, store.distinctNameCount());
+        assertEquals(0, store.size());
+        assertNull(store.get(sensors.get(0).getSensorId()));
+    }
+
+    private static void assertMatches(Map<UUID, Sensor> model, SensorStore store) {
+        assertEquals(model.size(), store.size());
+        assertEquals(new TreeSet<>(model.values()).stream().map(SensorStoreTest::describe).collect(Collectors.toList()),
+                store.sortedView().stream().map(SensorStoreTest::describe).collect(Collectors.toList()));
+
+        Set<UUID> active = model.values().stream().filter(Sensor::getActive).map(Sensor::getSensorId).collect(Collectors.toSet());
+        assertEquals(active.size(), store.activeCount());
+        assertEquals(active, new HashSet<>(store.activeIds()));
+        for (Sensor sensor : model.values()) {
+            assertEquals(describe(sensor), describe(store.get(sensor.getSensorId())));
+            assertEquals(sensor.getActive(), store.activeIds().contains(sensor.getSensorId()));
+        }
+    }
+
+    private static Sensor copy(Sensor sensor) {
+        return new Sensor(sensor.getSensorId(), sensor.getName(), sensor.getSensorType(), sensor.getActive());
+    }
+
+    private static String describe(Sensor sensor) {
+        return sensor.getSensorId() + ":" + sensor.getName() + ":" + sensor.getSensorType() + ":" + sensor.getActive();
+    }
+}
@@ -0,0 +1,71 @@
+package com.udasecurity.security.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentiles_areWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value * 100);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1_000_000, snapshot.getCount());
+        assertEquals(100_000_000, snapshot.getMaxNanos());
+        assertWithin(50_000_000, snapshot.getP50Nanos());
+        assertWithin(90_000_000, snapshot.getP90Nanos());
+        assertWithin(99_000_000, snapshot.getP99Nanos());
+        assertWithin(99_900_000, snapshot.getP999Nanos());
+        assertWithin(50_000_050, (long) snapshot.getMeanNanos());
+    }
+
+    @Test
+    void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 32; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(15, histogram.snapshot().getP50Nanos());
+        assertEquals(31, histogram.snapshot().valueAtPercentile(100));
+    }
+
+    @Test
+    void bucketMidpoints_roundTripForEveryMagnitude() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long reported = LatencyHistogram.valueOf(LatencyHistogram.bucketOf(value));
+            assertTrue(Math.abs(reported - value) <= value / 32 + 1, value + " reported as " + reported);
+        }
+        assertEquals(LatencyHistogram.bucketOf(Long.MAX_VALUE), LatencyHistogram.bucketOf(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void snapshotAndReset_startsANewInterval() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000);
+        histogram.record(-5);
+
+        LatencyHistogram.Snapshot first = histogram.snapshotAndReset();
+        histogram.record(2_000);
+        LatencyHistogram.Snapshot second = histogram.snapshot();
+
+        assertEquals(2, first.getCount());
+        assertEquals(0, first.valueAtPercentile(50));
+        assertEquals(1, second.getCount());
+        assertEquals(2_000, second.getMaxNanos());
+        assertEquals(0, new LatencyHistogram().snapshot().getP99Nanos());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.03, "expected ~" + expected + " but was " + actual);
+    }
+}
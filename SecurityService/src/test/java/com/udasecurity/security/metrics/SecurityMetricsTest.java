@@ -0,0 +1,118 @@
+package com.udasecurity.security.metrics;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import com.udasecurity.security.metrics.SecurityMetrics.Event;
+import com.udasecurity.security.metrics.SecurityMetrics.Operation;
+import com.udasecurity.security.service.SecurityService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecurityMetricsTest {
+
+    @TempDir
+    Path directory;
+
+    private final SecurityMetrics metrics = new SecurityMetrics();
+
+    @AfterEach
+    void cleanUp() {
+        metrics.unregister();
+    }
+
+    @Test
+    void securityService_recordsLatenciesAndEvents() {
+        SecurityService securityService = new SecurityService(
+                new MeteredSecurityRepository(new JournalSecurityRepositoryImpl(directory), metrics), (image, threshold) -> true);
+        securityService.setMetrics(metrics);
+        Sensor sensor = new Sensor("door", SensorType.DOOR);
+
+        securityService.addSensor(sensor);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        securityService.changeSensorActivationStatus(sensor, true);
+        securityService.processImage(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(1, metrics.getEventCount(Event.ARMING_STATUS_CHANGED));
+        assertEquals(1, metrics.getEventCount(Event.SENSOR_ACTIVATION_CHANGED));
+        assertEquals(1, metrics.getEventCount(Event.FRAME_PROCESSED));
+        assertEquals(1, metrics.getEventCount(Event.CAT_DETECTED));
+        assertEquals(2, metrics.getEventCount(Event.ALARM_STATUS_CHANGED));
+        assertEquals(1, metrics.getLatency(Operation.PROCESS_IMAGE).getCount());
+        assertEquals(1, metrics.getLatency(Operation.DETECTOR).getCount());
+        assertTrue(metrics.getLatency(Operation.REPOSITORY_WRITE).getCount() >= 4);
+        assertTrue(metrics.getLatency(Operation.LISTENER_DISPATCH).getCount() >= 4);
+    }
+
+    @Test
+    void disabled_recordsNothing() {
+        SecurityMetrics.DISABLED.increment(Event.FRAME_PROCESSED);
+        SecurityMetrics.DISABLED.recordSince(Operation.DETECTOR, SecurityMetrics.DISABLED.start());
+
+        assertEquals(0, SecurityMetrics.DISABLED.getEventCount(Event.FRAME_PROCESSED));
+        assertEquals(0, SecurityMetrics.DISABLED.getLatency(Operation.DETECTOR).getCount());
+    }
+
+    @Test
+    void snapshotAndReset_givesNonOverlappingIntervals() {
+        AtomicInteger depth = new AtomicInteger(3);
+        metrics.registerQueueDepth("work", depth::get);
+        metrics.add(Event.FRAME_PROCESSED, 10);
+        metrics.recordSince(Operation.PROCESS_IMAGE, metrics.start());
+
+        SecurityMetrics.Snapshot first = metrics.snapshotAndReset();
+        metrics.increment(Event.FRAME_PROCESSED);
+        SecurityMetrics.Snapshot second = metrics.snapshotAndReset();
+
+        assertEquals(10, first.getEventCount(Event.FRAME_PROCESSED));
+        assertEquals(1, first.getLatency(Operation.PROCESS_IMAGE).getCount());
+        assertTrue(first.getEventsPerSecond(Event.FRAME_PROCESSED) > 0);
+        assertEquals(Integer.valueOf(3), first.getQueueDepths().get("work"));
+        assertEquals(1, second.getEventCount(Event.FRAME_PROCESSED));
+        assertEquals(0, second.getLatency(Operation.PROCESS_IMAGE).getCount());
+    }
+
+    @Test
+    void register_exposesMetricsOverJmx() throws Exception {
+        metrics.add(Event.CAT_DETECTED, 5);
+        metrics.recordSince(Operation.DETECTOR, metrics.start());
+        metrics.registerQueueDepth("work", () -> 7);
+        metrics.registerGauge("detector.circuitState", () -> 2L);
+
+        ObjectName name = metrics.register("jmx test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        TabularData counts = (TabularData) server.getAttribute(name, "EventCounts");
+        assertEquals(5L, counts.get(new Object[]{"CAT_DETECTED"}).get("value"));
+        TabularData depths = (TabularData) server.getAttribute(name, "QueueDepths");
+        assertEquals(7, depths.get(new Object[]{"work"}).get("value"));
+        TabularData gauges = (TabularData) server.getAttribute(name, "Gauges");
+        assertEquals(2L, gauges.get(new Object[]{"detector.circuitState"}).get("value"));
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        CompositeData detector = (CompositeData) latencies.get(new Object[]{"DETECTOR"}).get("value");
+        assertEquals(1L, detector.get("count"));
+        assertThrows(IllegalStateException.class, () -> metrics.register("jmx test"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getEventCount(Event.CAT_DETECTED));
+        metrics.unregister();
+        assertTrue(!server.isRegistered(name));
+    }
+}
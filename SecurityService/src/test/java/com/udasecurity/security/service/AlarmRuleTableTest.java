@@ -0,0 +1,112 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.service.AlarmRuleTable.Trigger;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AlarmRuleTableTest {
+
+    private static final int[] ACTIVE_SENSOR_COUNTS = {0, 1, 7};
+
+    /**
+     * Every combination of inputs, checked against the alarm logic as
+     * {@link SecurityService} spelled it out before the rules existed.
+     */
+    @Test
+    void standardRules_matchHandWrittenLogicInEverySituation() {
+        int situations = 0;
+        for (Trigger trigger : Trigger.values()) {
+            for (ArmingStatus arming : ArmingStatus.values()) {
+                for (AlarmStatus alarm : AlarmStatus.values()) {
+                    for (int activeSensors : ACTIVE_SENSOR_COUNTS) {
+                        for (boolean cat : new boolean[]{false, true}) {
+                            assertEquals(expected(trigger, arming, alarm, activeSensors, cat),
+                                    AlarmRuleTable.STANDARD.evaluate(trigger, arming, alarm, activeSensors, cat),
+                                    trigger + " " + arming + " " + alarm + " " + activeSensors + " " + cat);
+                            situations++;
+                        }
+                    }
+                }
+            }
+        }
+        assertEquals(Trigger.values().length * 3 * 3 * ACTIVE_SENSOR_COUNTS.length * 2, situations);
+    }
+
+    @Test
+    void whenStatusesAreUnknown_thenTheyReadAsAFreshSystem() {
+        for (Trigger trigger : Trigger.values()) {
+            for (boolean cat : new boolean[]{false, true}) {
+                assertEquals(AlarmRuleTable.STANDARD.evaluate(trigger, ArmingStatus.DISARMED, AlarmStatus.NO_ALARM, 0, cat),
+                        AlarmRuleTable.STANDARD.evaluate(trigger, null, null, 0, cat));
+            }
+        }
+    }
+
+    @Test
+    void whenSeveralRulesMatch_thenFirstOneDecides() {
+        AlarmRuleTable rules = AlarmRuleTable.builder()
+                .when(Trigger.SENSOR_ACTIVATED).arming(ArmingStatus.ARMED_AWAY).then(AlarmStatus.ALARM)
+                .when(Trigger.SENSOR_ACTIVATED).then(AlarmStatus.PENDING_ALARM)
+                .build();
+
+        assertEquals(AlarmStatus.ALARM,
+                rules.evaluate(Trigger.SENSOR_ACTIVATED, ArmingStatus.ARMED_AWAY, AlarmStatus.NO_ALARM, 1, false));
+        assertEquals(AlarmStatus.PENDING_ALARM,
+                rules.evaluate(Trigger.SENSOR_ACTIVATED, ArmingStatus.ARMED_HOME, AlarmStatus.NO_ALARM, 1, false));
+    }
+
+    @Test
+    void whenKeepRuleMatchesFirst_thenStatusIsLeftAlone() {
+        AlarmRuleTable rules = AlarmRuleTable.builder()
+                .when(Trigger.IMAGE_SCANNED).arming(ArmingStatus.DISARMED).keep()
+                .when(Trigger.IMAGE_SCANNED).catDetected(true).then(AlarmStatus.ALARM)
+                .build();
+
+        assertNull(rules.evaluate(Trigger.IMAGE_SCANNED, ArmingStatus.DISARMED, AlarmStatus.NO_ALARM, 0, true));
+        assertEquals(AlarmStatus.ALARM,
+                rules.evaluate(Trigger.IMAGE_SCANNED, ArmingStatus.ARMED_AWAY, AlarmStatus.NO_ALARM, 0, true));
+    }
+
+    @Test
+    void whenNoRuleMatches_thenStatusIsLeftAlone() {
+        AlarmRuleTable rules = AlarmRuleTable.builder().build();
+
+        for (Trigger trigger : Trigger.values()) {
+            assertNull(rules.evaluate(trigger, ArmingStatus.ARMED_HOME, AlarmStatus.PENDING_ALARM, 3, true));
+        }
+    }
+
+    @Test
+    void whenRuleIsHiddenByEarlierRules_thenBuildFails() {
+        AlarmRuleTable.Builder builder = AlarmRuleTable.builder()
+                .when(Trigger.SENSOR_DEACTIVATED).anySensorActive(false).then(AlarmStatus.NO_ALARM)
+                .when(Trigger.SENSOR_DEACTIVATED).anySensorActive(true).keep()
+                .when(Trigger.SENSOR_DEACTIVATED).alarm(AlarmStatus.ALARM).then(AlarmStatus.PENDING_ALARM);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, builder::build);
+        assertEquals("Rule 3 is hidden by earlier rules: when [SENSOR_DEACTIVATED] alarm [ALARM] then PENDING_ALARM",
+                e.getMessage());
+    }
+
+    private static AlarmStatus expected(Trigger trigger, ArmingStatus arming, AlarmStatus alarm,
+                                        int activeSensors, boolean cat) {
+        switch (trigger) {
+            case ARMING_CHANGED:
+                if (arming == ArmingStatus.DISARMED) return AlarmStatus.NO_ALARM;
+                return arming == ArmingStatus.ARMED_HOME && cat ? AlarmStatus.ALARM : null;
+            case SENSOR_ACTIVATED:
+                if (alarm == AlarmStatus.NO_ALARM) return AlarmStatus.PENDING_ALARM;
+                return alarm == AlarmStatus.PENDING_ALARM && activeSensors > 0 ? AlarmStatus.ALARM : null;
+            case SENSOR_DEACTIVATED:
+                return alarm == AlarmStatus.PENDING_ALARM && activeSensors == 0 ? AlarmStatus.NO_ALARM : null;
+            default:
+                if (cat && arming == ArmingStatus.ARMED_HOME) return AlarmStatus.ALARM;
+                return activeSensors == 0 ? AlarmStatus.NO_ALARM : null;
+        }
+    }
+}
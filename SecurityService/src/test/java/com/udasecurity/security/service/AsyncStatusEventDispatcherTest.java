@@ -0,0 +1,251 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncStatusEventDispatcherTest {
+
+    @TempDir
+    Path directory;
+
+    private AsyncStatusEventDispatcher dispatcher;
+
+    @AfterEach
+    void cleanUp() {
+        if (dispatcher != null) dispatcher.close();
+    }
+
+    @Test
+    void whenListenerIsBusy_thenEventsOfTheSameKindCollapseToTheLatest() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher();
+        RecordingListener listener = new RecordingListener();
+        dispatcher.addListener(listener);
+
+        dispatcher.alarmStatusChanged(AlarmStatus.NO_ALARM);
+        assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+        dispatcher.alarmStatusChanged(AlarmStatus.PENDING_ALARM);
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        dispatcher.sensorStatusChanged();
+        dispatcher.sensorStatusChanged();
+        dispatcher.alarmStatusChanged(AlarmStatus.NO_ALARM);
+        listener.release.countDown();
+
+        listener.awaitEvents(3);
+        assertEquals(List.of("alarm:NO_ALARM", "sensors", "alarm:NO_ALARM"), listener.events);
+        assertEquals(0, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    void whenListenerIsBusy_thenPostingDoesNotWaitForIt() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher();
+        RecordingListener listener = new RecordingListener();
+        dispatcher.addListener(listener);
+
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            dispatcher.alarmStatusChanged(AlarmStatus.values()[i % 3]);
+            dispatcher.catDetected(i % 2 == 0);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        listener.release.countDown();
+
+        assertTrue(elapsedMillis < 2000, "posting took " + elapsedMillis + " ms");
+        listener.awaitEvents(3);
+        assertEquals("alarm:" + AlarmStatus.values()[99_999 % 3], listener.events.get(1));
+        assertEquals("cat:false", listener.events.get(2));
+    }
+
+    @Test
+    void whenMailboxOverflowsAndNotCoalescing_thenOldestEventsAreDropped() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher(2, AsyncStatusEventDispatcher.OverflowPolicy.DROP_OLDEST, false);
+        RecordingListener listener = new RecordingListener();
+        dispatcher.addListener(listener);
+
+        dispatcher.catDetected(true);
+        assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+        dispatcher.alarmStatusChanged(AlarmStatus.PENDING_ALARM);
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        dispatcher.alarmStatusChanged(AlarmStatus.NO_ALARM);
+        dispatcher.sensorStatusChanged();
+        listener.release.countDown();
+
+        listener.awaitEvents(3);
+        assertEquals(List.of("cat:true", "alarm:NO_ALARM", "sensors"), listener.events);
+        assertEquals(2, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    void whenMailboxOverflowsWithDropNewest_thenLaterEventsAreDropped() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher(2, AsyncStatusEventDispatcher.OverflowPolicy.DROP_NEWEST, false);
+        RecordingListener listener = new RecordingListener();
+        dispatcher.addListener(listener);
+
+        dispatcher.catDetected(true);
+        assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+        dispatcher.alarmStatusChanged(AlarmStatus.PENDING_ALARM);
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        dispatcher.alarmStatusChanged(AlarmStatus.NO_ALARM);
+        listener.release.countDown();
+
+        listener.awaitEvents(3);
+        Thread.sleep(50);
+        assertEquals(List.of("cat:true", "alarm:PENDING_ALARM", "alarm:ALARM"), listener.events);
+        assertEquals(1, dispatcher.getDroppedEventCount());
+    }
+
+    @Test
+    void whenListenerIsSwingComponent_thenEventsArriveOnEventDispatchThread() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher();
+        SwingListener panel = new SwingListener();
+        RecordingListener plain = new RecordingListener();
+        plain.release.countDown();
+        dispatcher.addListener(panel);
+        dispatcher.addListener(plain);
+
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+
+        assertTrue(panel.delivered.await(5, TimeUnit.SECONDS));
+        assertTrue(panel.onEventDispatchThread);
+        plain.awaitEvents(1);
+        assertEquals(List.of("alarm:ALARM"), plain.events);
+    }
+
+    @Test
+    void whenListenerThrows_thenLaterEventsAreStillDelivered() throws Exception {
+        dispatcher = new AsyncStatusEventDispatcher();
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void catDetected(boolean catDetected) {
+                throw new IllegalStateException("listener bug");
+            }
+        };
+        listener.release.countDown();
+        dispatcher.addListener(listener);
+
+        dispatcher.catDetected(true);
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+
+        listener.awaitEvents(1);
+        assertEquals(List.of("alarm:ALARM"), listener.events);
+    }
+
+    @Test
+    void whenServiceSwitchesDispatcher_thenExistingListenersKeepReceivingEvents() throws Exception {
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory)) {
+            SecurityService securityService = new SecurityService(repository, (image, threshold) -> false);
+            RecordingListener listener = new RecordingListener();
+            listener.release.countDown();
+            securityService.addStatusListener(listener);
+
+            dispatcher = new AsyncStatusEventDispatcher();
+            securityService.setStatusEventDispatcher(dispatcher);
+            Sensor door = new Sensor("Front Door", SensorType.DOOR);
+            securityService.addSensor(door);
+            securityService.changeSensorActivationStatus(door, true);
+
+            listener.awaitEvents(1);
+            assertEquals(List.of("alarm:PENDING_ALARM"), listener.events);
+        }
+    }
+
+    @Test
+    void whenServiceSwitchesDispatcher_thenTheReplacedOneIsClosed() throws Exception {
+        try (JournalSecurityRepositoryImpl repository = new JournalSecurityRepositoryImpl(directory)) {
+            SecurityService securityService = new SecurityService(repository, (image, threshold) -> false);
+            AsyncStatusEventDispatcher replaced = new AsyncStatusEventDispatcher();
+            securityService.setStatusEventDispatcher(replaced);
+            dispatcher = new AsyncStatusEventDispatcher();
+            securityService.setStatusEventDispatcher(dispatcher);
+            //setting the current dispatcher again must not close it
+            securityService.setStatusEventDispatcher(dispatcher);
+
+            RecordingListener listener = new RecordingListener();
+            listener.release.countDown();
+            replaced.addListener(listener);
+            replaced.alarmStatusChanged(AlarmStatus.ALARM);
+            assertEquals(1, replaced.getDroppedEventCount());
+
+            securityService.addStatusListener(listener);
+            dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+            listener.awaitEvents(1);
+            assertEquals(0, dispatcher.getDroppedEventCount());
+        }
+    }
+
+    private static class RecordingListener implements StatusListener {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void notify(AlarmStatus status) {
+            record("alarm:" + status);
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+            record("cat:" + catDetected);
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            record("sensors");
+        }
+
+        private void record(String event) {
+            events.add(event);
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void awaitEvents(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (events.size() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, events.size(), "events: " + events);
+        }
+    }
+
+    private static final class SwingListener extends JPanel implements StatusListener {
+        private final CountDownLatch delivered = new CountDownLatch(1);
+        private volatile boolean onEventDispatchThread;
+
+        @Override
+        public void notify(AlarmStatus status) {
+            onEventDispatchThread = SwingUtilities.isEventDispatchThread();
+            delivered.countDown();
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CameraIngestionServiceTest {
+
+    private static final int CAT = Color.ORANGE.getRGB();
+
+    @TempDir
+    Path directory;
+
+    private JournalSecurityRepositoryImpl repository;
+    private CameraIngestionService ingestion;
+    private ConcurrentSecurityService service;
+    private Path staging;
+    private int frameCount;
+
+    @BeforeEach
+    void initialize() throws IOException {
+        repository = new JournalSecurityRepositoryImpl(directory.resolve("journal"));
+        staging = Files.createDirectories(directory.resolve("staging"));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        if (ingestion != null) ingestion.close();
+        if (service != null) service.close();
+        repository.close();
+    }
+
+    private ConcurrentSecurityService securityService(ImageService imageService) {
+        service = new ConcurrentSecurityService(repository, imageService);
+        return service;
+    }
+
+    @Test
+    void whenCatFrameIsDroppedIntoCameraFolder_thenAlarmIsTriggered() throws Exception {
+        ConcurrentSecurityService securityService = securityService((image, threshold) -> image.getRGB(0, 0) == CAT);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        ingestion = new CameraIngestionService(securityService, 2, 8);
+        Path front = camera("front", 100);
+        Path back = camera("back", 100);
+
+        drop(back, Color.GRAY, "png");
+        awaitUntil(() -> processed("back") == 1);
+        drop(front, Color.ORANGE, "png");
+
+        awaitUntil(() -> processed("front") == 1);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(1, ingestion.getMetrics("front").getFramesSeen());
+        assertNull(ingestion.getMetrics("side"));
+    }
+
+    @Test
+    void whenOneCameraLosesSightOfCat_thenAnotherCamerasCatKeepsTheAlarm() throws Exception {
+        ConcurrentSecurityService securityService = securityService((image, threshold) -> image.getRGB(0, 0) == CAT);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        ingestion = new CameraIngestionService(securityService, 2, 8);
+        Path front = camera("front", 100);
+        Path back = camera("back", 100);
+
+        drop(front, Color.ORANGE, "png");
+        awaitUntil(() -> processed("front") == 1);
+        drop(back, Color.GRAY, "png");
+        awaitUntil(() -> processed("back") == 1);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+        drop(front, Color.GRAY, "png");
+        awaitUntil(() -> processed("front") == 2);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void whenCameraExceedsItsRate_thenExtraFramesAreSkipped() throws Exception {
+        ConcurrentSecurityService securityService = securityService((image, threshold) -> false);
+        ingestion = new CameraIngestionService(securityService, 2, 64);
+        Path front = camera("front", 3);
+
+        for (int i = 0; i < 20; i++) {
+            drop(front, Color.GRAY, "jpg");
+        }
+
+        awaitUntil(() -> ingestion.getMetrics("front").getFramesSeen() == 20
+                && processed("front") + ingestion.getMetrics("front").getFramesRateLimited() == 20);
+        CameraIngestionService.CameraMetrics metrics = ingestion.getMetrics("front");
+        //a burst of three plus whatever refilled while the frames were being written
+        assertTrue(metrics.getFramesProcessed() >= 3 && metrics.getFramesProcessed() < 10,
+                "processed " + metrics.getFramesProcessed());
+        assertEquals(0, metrics.getFramesFailed());
+    }
+
+    @Test
+    void whenDetectorFallsBehind_thenQueueIsBoundedAndOldestFramesAreDropped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch entered = new CountDownLatch(1);
+        ConcurrentSecurityService securityService = securityService((image, threshold) -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        });
+        ingestion = new CameraIngestionService(securityService, 1, 3);
+        Path front = camera("front", 1000);
+
+        drop(front, Color.GRAY, "png");
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            drop(front, Color.GRAY, "png");
+        }
+        awaitUntil(() -> ingestion.getMetrics("front").getFramesSeen() == 11);
+
+        assertEquals(3, ingestion.getMetrics("front").getQueueDepth());
+        assertEquals(7, ingestion.getMetrics("front").getFramesDropped());
+        release.countDown();
+        awaitUntil(() -> processed("front") == 4);
+        assertEquals(0, ingestion.getMetrics("front").getQueueDepth());
+        assertEquals(3, ingestion.getMetrics("front").getMaxQueueDepth());
+    }
+
+    @Test
+    void whenFileIsNotAnImage_thenItIsCountedAsFailed() throws Exception {
+        ConcurrentSecurityService securityService = securityService((image, threshold) -> false);
+        ingestion = new CameraIngestionService(securityService, 1, 8);
+        Path front = camera("front", 100);
+
+        Path bogus = staging.resolve("bogus.jpg");
+        Files.write(bogus, new byte[]{1, 2, 3});
+        Files.move(bogus, front.resolve("bogus.jpg"), StandardCopyOption.ATOMIC_MOVE);
+        Files.write(front.resolve("notes.txt"), new byte[]{1});
+
+        awaitUntil(() -> ingestion.getMetrics("front").getFramesFailed() == 1);
+        assertEquals(1, ingestion.getMetrics("front").getFramesSeen());
+    }
+
+    private Path camera(String id, double framesPerSecond) throws IOException {
+        Path folder = Files.createDirectories(directory.resolve(id));
+        ingestion.addCamera(id, folder, framesPerSecond);
+        return folder;
+    }
+
+    private void drop(Path folder, Color color, String format) throws IOException {
+        BufferedImage frame = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                frame.setRGB(x, y, color.getRGB());
+            }
+        }
+        String name = "frame-" + frameCount++ + "." + format;
+        Path written = staging.resolve(name);
+        ImageIO.write(frame, format, written.toFile());
+        Files.move(written, folder.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long processed(String cameraId) {
+        return ingestion.getMetrics(cameraId).getFramesProcessed();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
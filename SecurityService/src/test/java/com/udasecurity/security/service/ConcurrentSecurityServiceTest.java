@@ -0,0 +1,328 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentSecurityServiceTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 2000;
+
+    @TempDir
+    Path directory;
+
+    private JournalSecurityRepositoryImpl repository;
+    private ConcurrentSecurityService securityService;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void initialize() {
+        repository = new JournalSecurityRepositoryImpl(directory, Long.MAX_VALUE, false);
+        securityService = new ConcurrentSecurityService(repository, (image, threshold) -> image.getWidth() == 2);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        executor.shutdownNow();
+        securityService.close();
+        repository.close();
+    }
+
+    @Test
+    void whenManyThreadsChangeSensors_thenListenersAreNeverCalledConcurrently() throws Exception {
+        ConcurrencyProbe probe = new ConcurrencyProbe();
+        securityService.addStatusListener(probe);
+        List<List<Sensor>> sensorsPerThread = addSensors(4);
+
+        runOnAllThreads(thread -> {
+            Random random = new Random(thread);
+            List<Sensor> mine = sensorsPerThread.get(thread);
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Sensor sensor = mine.get(random.nextInt(mine.size()));
+                securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
+            }
+            mine.forEach(sensor -> securityService.changeSensorActivationStatus(sensor, false));
+        });
+
+        assertEquals(1, probe.maxConcurrentCallbacks.get());
+        assertEquals(0, securityService.getActiveSensorCount());
+        assertEquals(0, repository.getActiveSensorCount());
+        assertEquals(repository.getAlarmStatus(), securityService.getAlarmStatus());
+        assertEquals(repository.getAlarmStatus(), probe.lastAlarmStatus.get());
+    }
+
+    @Test
+    void whenSensorChangeReturns_thenSnapshotReflectsIt() throws Exception {
+        List<List<Sensor>> sensorsPerThread = addSensors(1);
+
+        runOnAllThreads(thread -> {
+            Sensor mine = sensorsPerThread.get(thread).get(0);
+            for (int i = 0; i < OPERATIONS_PER_THREAD / 4; i++) {
+                securityService.changeSensorActivationStatus(mine, true);
+                //only this thread deactivates its sensor, so every later read must count it
+                assertTrue(securityService.getActiveSensorCount() >= 1);
+                assertTrue(securityService.getSensors().contains(mine));
+                assertTrue(repository.getActiveSensorIds().contains(mine.getSensorId()));
+                securityService.changeSensorActivationStatus(mine, false);
+            }
+        });
+
+        assertEquals(0, securityService.getActiveSensorCount());
+    }
+
+    @Test
+    void whenArmingRacesSensorEventsAndCameraFrames_thenStateStaysConsistent() throws Exception {
+        List<List<Sensor>> sensorsPerThread = addSensors(4);
+        BufferedImage cat = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage noCat = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+        runOnAllThreads(thread -> {
+            Random random = new Random(100 + thread);
+            List<Sensor> mine = sensorsPerThread.get(thread);
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        securityService.setArmingStatus(ArmingStatus.values()[random.nextInt(3)]);
+                        break;
+                    case 1:
+                        securityService.processImage(random.nextBoolean() ? cat : noCat);
+                        break;
+                    default: {
+                        Sensor sensor = mine.get(random.nextInt(mine.size()));
+                        securityService.changeSensorActivationStatus(sensor, !sensor.getActive());
+                        break;
+                    }
+                }
+            }
+        });
+
+        int active = 0;
+        for (Sensor sensor : repository.getSensors()) {
+            if (sensor.getActive()) active++;
+        }
+        assertEquals(active, repository.getActiveSensorCount());
+        assertEquals(active, securityService.getActiveSensorCount());
+        assertEquals(repository.getArmingStatus(), securityService.getArmingStatus());
+        assertEquals(repository.getAlarmStatus(), securityService.getAlarmStatus());
+
+        //arming always clears the sensors, so arming now must leave none active
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        assertEquals(0, securityService.getActiveSensorCount());
+    }
+
+    @Test
+    void whenUsedFromOneThread_thenTransitionsMatchSecurityService() {
+        Path plainDirectory = directory.resolve("plain");
+        try (JournalSecurityRepositoryImpl plainRepository = new JournalSecurityRepositoryImpl(plainDirectory)) {
+            SecurityService plain = new SecurityService(plainRepository, (image, threshold) -> image.getWidth() == 2);
+            Random random = new Random(5);
+            List<Sensor> concurrentSensors = new ArrayList<>();
+            List<Sensor> plainSensors = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.DOOR);
+                concurrentSensors.add(sensor);
+                securityService.addSensor(sensor);
+                Sensor twin = new Sensor("Sensor " + i, SensorType.DOOR);
+                plainSensors.add(twin);
+                plain.addSensor(twin);
+            }
+
+            for (int i = 0; i < 500; i++) {
+                int operation = random.nextInt(4);
+                int index = random.nextInt(5);
+                boolean flag = random.nextBoolean();
+                ArmingStatus arming = ArmingStatus.values()[random.nextInt(3)];
+                BufferedImage frame = new BufferedImage(flag ? 2 : 1, 1, BufferedImage.TYPE_INT_RGB);
+                for (SecurityService service : List.of(securityService, plain)) {
+                    List<Sensor> sensors = service == plain ? plainSensors : concurrentSensors;
+                    switch (operation) {
+                        case 0:
+                            service.setArmingStatus(arming);
+                            break;
+                        case 1:
+                            service.processImage(frame);
+                            break;
+                        default:
+                            service.changeSensorActivationStatus(sensors.get(index), flag);
+                            break;
+                    }
+                }
+                assertEquals(plain.getAlarmStatus(), securityService.getAlarmStatus(), "after step " + i);
+                assertEquals(plain.getArmingStatus(), securityService.getArmingStatus(), "after step " + i);
+                assertEquals(plain.getActiveSensorCount(), securityService.getActiveSensorCount(), "after step " + i);
+            }
+        }
+    }
+
+    @Test
+    void whenBurstOpensAndClosesSensorWhilePending_thenEveryEventReachesTheAlarmRules() {
+        Sensor door = new Sensor("Front door", SensorType.DOOR);
+        Sensor window = new Sensor("Kitchen window", SensorType.WINDOW);
+        securityService.addSensors(List.of(door, window));
+        securityService.changeSensorActivationStatus(door, true);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        securityService.applySensorEvents(List.of(
+                new AbstractMap.SimpleImmutableEntry<>(window, true),
+                new AbstractMap.SimpleImmutableEntry<>(window, false)));
+
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(1, securityService.getActiveSensorCount());
+    }
+
+    @Test
+    void whenListenerCallsBackIntoService_thenItDoesNotDeadlock() {
+        AtomicReference<AlarmStatus> seenInCallback = new AtomicReference<>();
+        securityService.addStatusListener(new StatusListener() {
+            @Override
+            public void notify(AlarmStatus status) {
+                seenInCallback.set(securityService.getAlarmStatus());
+                if (status == AlarmStatus.PENDING_ALARM) {
+                    securityService.setAlarmStatus(AlarmStatus.ALARM);
+                }
+            }
+
+            @Override
+            public void catDetected(boolean catDetected) {
+            }
+
+            @Override
+            public void sensorStatusChanged() {
+            }
+        });
+
+        Sensor sensor = new Sensor("Front Door", SensorType.DOOR);
+        securityService.addSensor(sensor);
+        securityService.changeSensorActivationStatus(sensor, true);
+
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+        assertEquals(AlarmStatus.ALARM, seenInCallback.get());
+    }
+
+    @Test
+    void whenClosedWhileWritesAreQueued_thenEachWriteIsAppliedOrRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(THREADS);
+        List<Future<?>> writes = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            writes.add(executor.submit(() -> {
+                started.countDown();
+                securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        securityService.close();
+
+        int applied = 0;
+        for (Future<?> write : writes) {
+            try {
+                write.get(5, TimeUnit.SECONDS);
+                applied++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(RejectedExecutionException.class, e.getCause());
+            }
+        }
+        assertEquals(applied > 0 ? ArmingStatus.ARMED_HOME : ArmingStatus.DISARMED, repository.getArmingStatus());
+        assertEquals(repository.getArmingStatus(), securityService.getArmingStatus());
+        assertThrows(RejectedExecutionException.class, () -> securityService.setAlarmStatus(AlarmStatus.ALARM));
+    }
+
+    private List<List<Sensor>> addSensors(int perThread) {
+        List<List<Sensor>> sensorsPerThread = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            List<Sensor> mine = new ArrayList<>();
+            for (int i = 0; i < perThread; i++) {
+                mine.add(new Sensor("Sensor " + thread + "-" + i, SensorType.values()[i % 3]));
+            }
+            securityService.addSensors(mine);
+            sensorsPerThread.add(mine);
+        }
+        return sensorsPerThread;
+    }
+
+    private void runOnAllThreads(ThreadBody body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int index = thread;
+            Callable<Void> task = () -> {
+                start.await();
+                body.run(index);
+                return null;
+            };
+            results.add(executor.submit(task));
+        }
+        start.countDown();
+        for (Future<Void> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    private static final class ConcurrencyProbe implements StatusListener {
+        private final AtomicInteger inCallback = new AtomicInteger();
+        private final AtomicInteger maxConcurrentCallbacks = new AtomicInteger();
+        private final AtomicReference<AlarmStatus> lastAlarmStatus = new AtomicReference<>(AlarmStatus.NO_ALARM);
+
+        @Override
+        public void notify(AlarmStatus status) {
+            enter();
+            lastAlarmStatus.set(status);
+            exit();
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+            enter();
+            exit();
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            enter();
+            exit();
+        }
+
+        private void enter() {
+            maxConcurrentCallbacks.accumulateAndGet(inCallback.incrementAndGet(), Math::max);
+            Thread.yield();
+        }
+
+        private void exit() {
+            inCallback.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageAnalysisPipelineTest {
+
+    @TempDir
+    Path directory;
+
+    private final CountDownLatch detectorEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseDetector = new CountDownLatch(1);
+    private final List<BufferedImage> analysed = new CopyOnWriteArrayList<>();
+
+    private JournalSecurityRepositoryImpl repository;
+    private ConcurrentSecurityService securityService;
+
+    @BeforeEach
+    void initialize() {
+        repository = new JournalSecurityRepositoryImpl(directory);
+        securityService = new ConcurrentSecurityService(repository, (image, threshold) -> {
+            detectorEntered.countDown();
+            awaitQuietly(releaseDetector);
+            analysed.add(image);
+            return image.getWidth() == 2;
+        });
+    }
+
+    @AfterEach
+    void cleanUp() {
+        securityService.close();
+        repository.close();
+    }
+
+    @Test
+    void whenFramesArriveWhileDetectorIsBusy_thenOnlyLatestFrameIsAnalysed() throws Exception {
+        try (ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(securityService, 2, 8)) {
+            BufferedImage first = frame(1);
+            BufferedImage stale = frame(1);
+            BufferedImage latest = frame(2);
+
+            CompletableFuture<Boolean> firstResult = pipeline.submit("porch", first);
+            assertTrue(detectorEntered.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> staleResult = pipeline.submit("porch", stale);
+            CompletableFuture<Boolean> latestResult = pipeline.submit("porch", latest);
+            releaseDetector.countDown();
+
+            assertEquals(false, firstResult.get(5, TimeUnit.SECONDS));
+            assertEquals(true, latestResult.get(5, TimeUnit.SECONDS));
+            assertTrue(staleResult.isCancelled());
+            assertEquals(List.of(first, latest), analysed);
+        }
+    }
+
+    @Test
+    void whenPendingQueueIsFull_thenSubmissionIsRejectedWithoutBlocking() throws Exception {
+        try (ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(securityService, 1, 1)) {
+            pipeline.submit("porch", frame(1));
+            assertTrue(detectorEntered.await(5, TimeUnit.SECONDS));
+
+            pipeline.submit("garage", frame(1));
+            CompletableFuture<Boolean> rejected = pipeline.submit("garden", frame(1));
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+            assertEquals(1, pipeline.getPendingFrames());
+            releaseDetector.countDown();
+        }
+    }
+
+    @Test
+    void whenCatDetectedWhileArmedHome_thenResultIsAppliedToAlarmState() throws Exception {
+        releaseDetector.countDown();
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+
+        try (ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(securityService)) {
+            assertEquals(true, pipeline.submit("porch", frame(2)).get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    void whenDetectorThrowsAnError_thenTheCameraKeepsBeingAnalysed() throws Exception {
+        Error crash = new Error("detector crashed");
+        try (ConcurrentSecurityService crashing = new ConcurrentSecurityService(repository, (image, threshold) -> {
+                 if (image.getWidth() == 3) throw crash;
+                 return image.getWidth() == 2;
+             });
+             ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(crashing, 1, 8)) {
+            CompletableFuture<Boolean> failed = pipeline.submit("porch", frame(3));
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertEquals(crash, failure.getCause());
+
+            assertEquals(true, pipeline.submit("porch", frame(2)).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void whenOneCameraLosesSightOfCat_thenAnotherCamerasCatKeepsTheAlarm() throws Exception {
+        releaseDetector.countDown();
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+
+        try (ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(securityService)) {
+            assertEquals(true, pipeline.submit("porch", frame(2)).get(5, TimeUnit.SECONDS));
+            assertEquals(false, pipeline.submit("garage", frame(1)).get(5, TimeUnit.SECONDS));
+            assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+            assertEquals(false, pipeline.submit("porch", frame(1)).get(5, TimeUnit.SECONDS));
+            assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        }
+    }
+
+    @Test
+    void whenEncodedFrameIsSubmitted_thenItIsAnalysedWithoutBlockingTheCaller() throws Exception {
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(frame(2), "png", png);
+
+        try (ImageAnalysisPipeline pipeline = new ImageAnalysisPipeline(securityService)) {
+            CompletableFuture<Boolean> result = pipeline.submit("porch", ByteBuffer.wrap(png.toByteArray()));
+            assertTrue(detectorEntered.await(5, TimeUnit.SECONDS));
+            assertFalse(result.isDone());
+            releaseDetector.countDown();
+
+            assertEquals(true, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    private static BufferedImage frame(int width) {
+        return new BufferedImage(width, 1, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.udasecurity.security.service;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PremiseHostTest {
+
+    @TempDir
+    Path directory;
+
+    private PremiseHost host;
+
+    @AfterEach
+    void cleanUp() {
+        if (host != null) host.close();
+    }
+
+    @Test
+    void whenOnePremiseChanges_thenOthersAreUnaffected() {
+        host = new PremiseHost(2, id -> new JournalSecurityRepositoryImpl(directory.resolve(id)), (image, threshold) -> false);
+        host.addPremise("home-1").join();
+        host.addPremise("home-2").join();
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+
+        host.submit("home-1", service -> {
+            service.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            service.addSensor(door);
+            service.changeSensorActivationStatus(door, true);
+            return null;
+        }).join();
+
+        assertEquals(AlarmStatus.PENDING_ALARM, host.submit("home-1", SecurityService::getAlarmStatus).join());
+        assertEquals(AlarmStatus.NO_ALARM, host.submit("home-2", SecurityService::getAlarmStatus).join());
+        assertEquals(Integer.valueOf(0), host.submit("home-2", service -> service.getSensors().size()).join());
+        assertTrue(host.shardOf("home-1") != host.shardOf("home-2"));
+    }
+
+    @Test
+    void whenPremiseIsUnknown_thenSubmitFails() {
+        host = new PremiseHost(1, id -> new JournalSecurityRepositoryImpl(directory.resolve(id)), (image, threshold) -> false);
+
+        CompletionException failure = assertThrows(CompletionException.class,
+                () -> host.submit("nowhere", SecurityService::getAlarmStatus).join());
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        assertThrows(IllegalArgumentException.class, () -> host.migrate("nowhere", 5));
+    }
+
+    @Test
+    void whenRepositoryCannotBeCreated_thenPremiseDoesNotExist() {
+        AtomicInteger attempts = new AtomicInteger();
+        host = new PremiseHost(2, id -> {
+            if (attempts.getAndIncrement() == 0) throw new IllegalStateException("Corrupt preferences");
+            return new JournalSecurityRepositoryImpl(directory.resolve(id));
+        }, (image, threshold) -> false);
+
+        CompletableFuture<Void> created = host.addPremise("home");
+        CompletableFuture<AlarmStatus> queuedBehind = host.submit("home", SecurityService::getAlarmStatus);
+
+        CompletionException failure = assertThrows(CompletionException.class, created::join);
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        failure = assertThrows(CompletionException.class, queuedBehind::join);
+        assertInstanceOf(IllegalArgumentException.class, failure.getCause());
+        assertEquals(0, host.getPremiseCount());
+        assertEquals(-1, host.shardOf("home"));
+
+        //nothing is left behind to block a second attempt
+        host.addPremise("home").join();
+        assertEquals(AlarmStatus.NO_ALARM, host.submit("home", SecurityService::getAlarmStatus).join());
+    }
+
+    @Test
+    void whenPremiseMigratesUnderLoad_thenEveryCommandRunsOnceOnItsOwningShard() {
+        host = new PremiseHost(4, id -> new JournalSecurityRepositoryImpl(directory.resolve(id)), (image, threshold) -> false);
+        host.addPremise("home").join();
+        ConcurrentHashMap<String, AtomicInteger> runsPerThread = new ConcurrentHashMap<>();
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> commands = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            if (i % 250 == 0) {
+                host.migrate("home", (i / 250) % 4);
+            }
+            commands.add(host.submit("home", service -> {
+                maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                runsPerThread.computeIfAbsent(Thread.currentThread().getName(), name -> new AtomicInteger()).incrementAndGet();
+                concurrent.decrementAndGet();
+                return 1;
+            }));
+        }
+
+        int total = 0;
+        for (CompletableFuture<Integer> command : commands) {
+            total += command.join();
+        }
+        assertEquals(5_000, total);
+        assertEquals(1, maxConcurrent.get());
+        assertEquals(4, runsPerThread.size(), "threads " + runsPerThread.keySet());
+        assertEquals(5_000, runsPerThread.values().stream().mapToInt(AtomicInteger::get).sum());
+    }
+
+    @Test
+    void whenOneShardIsBusier_thenRebalanceMovesPremisesToTheIdleShard() {
+        host = new PremiseHost(2, id -> new JournalSecurityRepositoryImpl(directory.resolve(id)), (image, threshold) -> false);
+        for (int i = 0; i < 4; i++) {
+            host.addPremise("home-" + i).join();
+        }
+        for (int i = 0; i < 4; i++) {
+            host.migrate("home-" + i, 0).join();
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int command = 0; command < 100; command++) {
+                host.submit("home-" + i, SecurityService::getAlarmStatus).join();
+            }
+        }
+
+        assertEquals(2, host.rebalance());
+
+        int onFirstShard = 0;
+        for (int i = 0; i < 4; i++) {
+            if (host.shardOf("home-" + i) == 0) onFirstShard++;
+        }
+        assertEquals(2, onFirstShard);
+        assertEquals(0, host.rebalance());
+    }
+
+    @Test
+    void whenPremiseIsRemoved_thenItCanNoLongerBeReached() {
+        host = new PremiseHost(2, id -> new JournalSecurityRepositoryImpl(directory.resolve(id)), (image, threshold) -> false);
+        host.addPremise("home").join();
+
+        host.removePremise("home").join();
+
+        assertEquals(0, host.getPremiseCount());
+        assertEquals(-1, host.shardOf("home"));
+        assertThrows(CompletionException.class, () -> host.submit("home", SecurityService::getAlarmStatus).join());
+    }
+}
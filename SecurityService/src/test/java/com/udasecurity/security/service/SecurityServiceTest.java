@@ -13,12 +13,17 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.awt.image.BufferedImage;
-import java.util.Collections;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyFloat;
 import static org.mockito.Mockito.*;
 
@@ -54,7 +59,7 @@ class SecurityServiceTest {
     void givenSensorActivatedAndAlarmPending_whenSensorTriggeredAgain_thenAlarmIsTriggered() {
         Sensor entrySensor = new Sensor("Front Door", SensorType.DOOR);
         when(repository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
-        when(repository.getSensors()).thenReturn(Set.of(entrySensor));
+        when(repository.getActiveSensorCount()).thenReturn(1);
 
         systemUnderTest.changeSensorActivationStatus(entrySensor, true);
 
@@ -64,10 +69,8 @@ class SecurityServiceTest {
     @Test
     void givenAlarmPending_whenAllSensorsDeactivated_thenAlarmIsCleared() {
         mockSensor.setActive(true);
-        Set<Sensor> activeSensors = new HashSet<>();
-        activeSensors.add(mockSensor);
 
-        when(repository.getSensors()).thenReturn(activeSensors);
+        when(repository.getActiveSensorCount()).thenReturn(0);
         when(repository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
 
         systemUnderTest.changeSensorActivationStatus(mockSensor, false);
@@ -89,7 +92,7 @@ class SecurityServiceTest {
         Sensor sensor = new Sensor("Window Sensor", SensorType.WINDOW);
 
         when(repository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
-        when(repository.getSensors()).thenReturn(Set.of(sensor));
+        when(repository.getActiveSensorCount()).thenReturn(1);
 
         systemUnderTest.changeSensorActivationStatus(sensor, true);
 
@@ -108,7 +111,7 @@ class SecurityServiceTest {
     @Test
     void givenCatDetectedAndSystemArmedHome_thenAlarmIsTriggered() {
         when(repository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
-        when(imageProcessor.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(imageProcessor.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
 
         BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
         systemUnderTest.processImage(image);
@@ -116,10 +119,35 @@ class SecurityServiceTest {
         verify(repository).setAlarmStatus(AlarmStatus.ALARM);
     }
 
+    @Test
+    void givenEncodedImageWithCatAndSystemArmedHome_thenBytesArePassedThroughAndAlarmIsTriggered() {
+        ByteBuffer encodedImage = ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        when(repository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageProcessor.imageContainsCat(same(encodedImage), anyFloat())).thenReturn(true);
+
+        systemUnderTest.processImage(encodedImage);
+
+        verify(imageProcessor, never()).imageContainsCat(any(BufferedImage.class), anyFloat());
+        verify(repository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    void givenCatInOneOfSeveralCameraFramesAndSystemArmedHome_thenAlarmIsTriggered() {
+        List<BufferedImage> frames = List.of(
+                new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        when(repository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(imageProcessor.detectCats(same(frames), anyFloat())).thenReturn(List.of(false, true));
+
+        systemUnderTest.processImages(frames);
+
+        verify(repository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
     @Test
     void givenNoCatDetectedAndAllSensorsInactive_thenAlarmIsCleared() {
-        when(imageProcessor.imageContainsCat(any(), anyFloat())).thenReturn(false);
-        when(repository.getSensors()).thenReturn(Collections.singleton(mockSensor));
+        when(imageProcessor.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
+        when(repository.getActiveSensorCount()).thenReturn(0);
 
         BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
         systemUnderTest.processImage(image);
@@ -143,11 +171,12 @@ class SecurityServiceTest {
         sensorList.add(mockSensor);
 
         when(repository.getSensors()).thenReturn(sensorList);
+        when(repository.getActiveSensorCount()).thenReturn(1);
 
         systemUnderTest.setArmingStatus(newStatus);
 
         assertFalse(mockSensor.getActive());
-        verify(repository).updateSensor(mockSensor);
+        verify(repository).updateSensors(List.of(mockSensor));
     }
 
     @Test
@@ -156,7 +185,7 @@ class SecurityServiceTest {
                 .thenReturn(ArmingStatus.DISARMED)
                 .thenReturn(ArmingStatus.ARMED_HOME);
 
-        when(imageProcessor.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(imageProcessor.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(true);
 
         BufferedImage catImage = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
         systemUnderTest.processImage(catImage);
@@ -165,4 +194,44 @@ class SecurityServiceTest {
 
         verify(repository).setAlarmStatus(AlarmStatus.ALARM);
     }
+
+    @Test
+    void givenNoAlarm_whenSensorBurstActivates_thenRepositoryIsWrittenOnceAndAlarmIsPending() {
+        Sensor window = new Sensor("Back Window", SensorType.WINDOW);
+        Map<Sensor, Boolean> changes = new LinkedHashMap<>();
+        changes.put(mockSensor, true);
+        changes.put(window, true);
+        when(repository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+
+        systemUnderTest.applySensorChanges(changes);
+
+        verify(repository).updateSensors(argThat(batch -> batch.size() == 2));
+        verify(repository, never()).updateSensor(any());
+        verify(repository, times(1)).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    }
+
+    @Test
+    void givenAlarmPending_whenSensorBurstDeactivatesEverything_thenAlarmIsCleared() {
+        Sensor window = new Sensor("Back Window", SensorType.WINDOW);
+        mockSensor.setActive(true);
+        window.setActive(true);
+        Map<Sensor, Boolean> changes = new LinkedHashMap<>();
+        changes.put(mockSensor, false);
+        changes.put(window, false);
+        when(repository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
+        when(repository.getActiveSensorCount()).thenReturn(0);
+
+        systemUnderTest.applySensorChanges(changes);
+
+        assertFalse(window.getActive());
+        verify(repository).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    void givenSensorsAlreadyInRequestedState_whenBurstApplied_thenNothingIsWritten() {
+        systemUnderTest.applySensorChanges(Map.of(mockSensor, false));
+
+        verify(repository, never()).updateSensors(anyCollection());
+        verify(repository, never()).setAlarmStatus(any(AlarmStatus.class));
+    }
 }
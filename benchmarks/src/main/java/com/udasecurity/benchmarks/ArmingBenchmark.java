@@ -0,0 +1,75 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.SecurityRepository;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of arming a system with many sensors. Arming deactivates every active sensor, so
+ * the worst case re-activates all of them before each call. The per-invocation setup is
+ * not timed and the measured call is in the microsecond-to-millisecond range, well above
+ * the resolution where invocation-level fixtures skew results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArmingBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Fixture {
+        @Param({"1000", "100000"})
+        int sensorCount;
+
+        SecurityRepository repository;
+        SecurityService securityService;
+        List<Sensor> sensors;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            repository = new InMemorySecurityRepository();
+            securityService = new SecurityService(repository, (image, threshold) -> false);
+            sensors = Sensors.create(sensorCount, 2);
+            securityService.addSensors(sensors);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AllSensorsActive {
+        @Setup(Level.Invocation)
+        public void activateAll(Fixture fixture) {
+            fixture.sensors.forEach(sensor -> sensor.setActive(true));
+            fixture.repository.updateSensors(fixture.sensors);
+            fixture.repository.setArmingStatus(ArmingStatus.DISARMED);
+        }
+    }
+
+    @Benchmark
+    public ArmingStatus armWithAllSensorsActive(Fixture fixture, AllSensorsActive active) {
+        fixture.securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        return fixture.securityService.getArmingStatus();
+    }
+
+    @Benchmark
+    public ArmingStatus armWithNoSensorsActive(Fixture fixture) {
+        fixture.securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        return fixture.securityService.getArmingStatus();
+    }
+}
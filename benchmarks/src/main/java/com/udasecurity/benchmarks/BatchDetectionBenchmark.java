@@ -0,0 +1,76 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.image.service.StubImageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One multi-camera batch against {@link StubImageService}, which sleeps like a remote
+ * detector would. Compares scanning the frames one by one with the concurrent batch
+ * path, so the gain from fan-out can be measured without a network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchDetectionBenchmark {
+
+    private static final float THRESHOLD = 50.0f;
+
+    @Param({"4", "16", "64"})
+    int cameras;
+
+    @Param({"20"})
+    long latencyMillis;
+
+    private StubImageService detector;
+    private List<BufferedImage> frames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        detector = new StubImageService(7, latencyMillis, latencyMillis / 2, 0.01, 0.1);
+        frames = new ArrayList<>(cameras);
+        for (int i = 0; i < cameras; i++) {
+            frames.add(new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB));
+        }
+    }
+
+    @Benchmark
+    public int sequential() {
+        int cats = 0;
+        for (BufferedImage frame : frames) {
+            try {
+                if (detector.imageContainsCat(frame, THRESHOLD)) cats++;
+            } catch (IllegalStateException e) {
+                //simulated failure counts as no cat, as in the batch path
+            }
+        }
+        return cats;
+    }
+
+    @Benchmark
+    public int batch() {
+        int cats = 0;
+        for (Boolean cat : detector.detectCats(frames, THRESHOLD)) {
+            if (cat) cats++;
+        }
+        return cats;
+    }
+}
@@ -0,0 +1,90 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.SecurityRepository;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorStore;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Repository that keeps the same in-memory structures as
+ * {@link com.udasecurity.security.data.PretendDatabaseSecurityRepositoryImpl} but never
+ * persists anything, so service benchmarks measure the service and not the storage.
+ */
+public class InMemorySecurityRepository implements SecurityRepository {
+
+    private final SensorStore sensors = new SensorStore();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+    }
+
+    @Override
+    public void addSensors(Collection<Sensor> batch) {
+        batch.forEach(this::addSensor);
+    }
+
+    @Override
+    public void removeSensors(Collection<Sensor> batch) {
+        batch.forEach(this::removeSensor);
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> batch) {
+        batch.forEach(this::updateSensor);
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return new TreeSet<>(sensors.sortedView());
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    @Override
+    public int getActiveSensorCount() {
+        return sensors.activeCount();
+    }
+
+    @Override
+    public Set<UUID> getActiveSensorIds() {
+        return new HashSet<>(sensors.activeIds());
+    }
+}
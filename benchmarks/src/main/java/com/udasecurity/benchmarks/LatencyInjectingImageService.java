@@ -0,0 +1,46 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.image.service.ImageService;
+
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in for a remote detector: answers from a verdict and a latency fixed per
+ * frame when the frame was made, and holds the calling thread for that latency. Frames
+ * are looked up by identity, so answering allocates nothing and the same frame always
+ * gets the same answer after the same delay.
+ */
+final class LatencyInjectingImageService implements ImageService {
+
+    private final Map<BufferedImage, Frame> frames = new IdentityHashMap<>();
+
+    void add(BufferedImage image, boolean cat, long latencyNanos) {
+        frames.put(image, new Frame(cat, latencyNanos));
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshold) {
+        Frame frame = frames.get(image);
+        if (frame == null) {
+            throw new IllegalArgumentException("Not a simulated frame");
+        }
+        long deadline = System.nanoTime() + frame.latencyNanos;
+        for (long left = frame.latencyNanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+        return frame.cat;
+    }
+
+    private static final class Frame {
+        final boolean cat;
+        final long latencyNanos;
+
+        Frame(boolean cat, long latencyNanos) {
+            this.cat = cat;
+            this.latencyNanos = latencyNanos;
+        }
+    }
+}
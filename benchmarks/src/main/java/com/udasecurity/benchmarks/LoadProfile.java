@@ -0,0 +1,135 @@
+package com.udasecurity.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a {@link LoadSimulator} run, given on the command line as
+ * {@code name=value} pairs. Rates are per sensor or per camera, times are means of
+ * exponential distributions unless noted, and every random choice is drawn from
+ * {@link #seed}, so a profile always produces the same workload.
+ */
+final class LoadProfile {
+
+    /** Seed for sensors, episodes, arming and frames. */
+    long seed = 42;
+    /** Simulated seconds of activity to generate. */
+    double durationSeconds = 600;
+    /** Playback speed: 1 is real time, 10 ten times faster, 0 as fast as the service keeps up. */
+    double speed = 0;
+    /** {@code concurrent} for {@link com.udasecurity.security.service.ConcurrentSecurityService}, {@code plain} for the single-threaded one. */
+    String service = "concurrent";
+    /** Repository kind as understood by {@link RepositoryFixture}. */
+    String repository = RepositoryFixture.MEMORY;
+
+    int sensors = 2000;
+    /** Door openings per door sensor per hour, and how long a door stays open. */
+    double doorEpisodesPerHour = 120;
+    double doorOpenMillis = 4000;
+    /** Window openings per window sensor per hour, and how long a window stays open. */
+    double windowEpisodesPerHour = 12;
+    double windowOpenMillis = 60_000;
+    /** Movement bursts per motion sensor per hour, triggers per burst, and trigger hold and gap times. */
+    double motionEpisodesPerHour = 360;
+    double motionTriggersPerBurst = 5;
+    double motionHoldMillis = 300;
+    double motionGapMillis = 200;
+    /** Chance that an episode is a faulty contact flapping instead, flips per flap and time between flips. */
+    double flapProbability = 0.02;
+    double flapToggles = 12;
+    double flapIntervalMillis = 25;
+
+    /** Mean time between arming changes. */
+    double armingIntervalSeconds = 30;
+
+    int cameras = 4;
+    double framesPerSecond = 2;
+    /** Share of synthetic frames showing a cat. */
+    double catProbability = 0.05;
+    /** {@code stub} for the seeded latency-injecting detector, {@code fake} for FakeImageService, whose guesses are not seeded. */
+    String detector = "stub";
+    /** Mean stub detector latency; each frame's latency is drawn from a log-normal distribution around it. */
+    double detectorMillis = 20;
+    /** Frames that may wait for a detector thread in the concurrent service before new ones are dropped. */
+    int frameQueue = 16;
+
+    /** Busy time spent in the simulated listener per notification. */
+    double listenerMicros = 0;
+
+    static LoadProfile parse(String[] args) {
+        LoadProfile profile = new LoadProfile();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 1) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            profile.set(arg.substring(0, split), arg.substring(split + 1));
+        }
+        return profile;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "seed": seed = Long.parseLong(value); break;
+            case "duration": durationSeconds = Double.parseDouble(value); break;
+            case "speed": speed = Double.parseDouble(value); break;
+            case "service": service = value; break;
+            case "repository": repository = value; break;
+            case "sensors": sensors = Integer.parseInt(value); break;
+            case "doorEpisodesPerHour": doorEpisodesPerHour = Double.parseDouble(value); break;
+            case "doorOpenMillis": doorOpenMillis = Double.parseDouble(value); break;
+            case "windowEpisodesPerHour": windowEpisodesPerHour = Double.parseDouble(value); break;
+            case "windowOpenMillis": windowOpenMillis = Double.parseDouble(value); break;
+            case "motionEpisodesPerHour": motionEpisodesPerHour = Double.parseDouble(value); break;
+            case "motionTriggersPerBurst": motionTriggersPerBurst = Double.parseDouble(value); break;
+            case "motionHoldMillis": motionHoldMillis = Double.parseDouble(value); break;
+            case "motionGapMillis": motionGapMillis = Double.parseDouble(value); break;
+            case "flapProbability": flapProbability = Double.parseDouble(value); break;
+            case "flapToggles": flapToggles = Double.parseDouble(value); break;
+            case "flapIntervalMillis": flapIntervalMillis = Double.parseDouble(value); break;
+            case "armingIntervalSeconds": armingIntervalSeconds = Double.parseDouble(value); break;
+            case "cameras": cameras = Integer.parseInt(value); break;
+            case "framesPerSecond": framesPerSecond = Double.parseDouble(value); break;
+            case "catProbability": catProbability = Double.parseDouble(value); break;
+            case "detector": detector = value; break;
+            case "detectorMillis": detectorMillis = Double.parseDouble(value); break;
+            case "frameQueue": frameQueue = Integer.parseInt(value); break;
+            case "listenerMicros": listenerMicros = Double.parseDouble(value); break;
+            default:
+                throw new IllegalArgumentException("Unknown setting " + name + "; known settings are " + describe().keySet());
+        }
+    }
+
+    /**
+     * Every setting by command line name, in the order they are printed.
+     */
+    Map<String, Object> describe() {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("seed", seed);
+        settings.put("duration", durationSeconds);
+        settings.put("speed", speed);
+        settings.put("service", service);
+        settings.put("repository", repository);
+        settings.put("sensors", sensors);
+        settings.put("doorEpisodesPerHour", doorEpisodesPerHour);
+        settings.put("doorOpenMillis", doorOpenMillis);
+        settings.put("windowEpisodesPerHour", windowEpisodesPerHour);
+        settings.put("windowOpenMillis", windowOpenMillis);
+        settings.put("motionEpisodesPerHour", motionEpisodesPerHour);
+        settings.put("motionTriggersPerBurst", motionTriggersPerBurst);
+        settings.put("motionHoldMillis", motionHoldMillis);
+        settings.put("motionGapMillis", motionGapMillis);
+        settings.put("flapProbability", flapProbability);
+        settings.put("flapToggles", flapToggles);
+        settings.put("flapIntervalMillis", flapIntervalMillis);
+        settings.put("armingIntervalSeconds", armingIntervalSeconds);
+        settings.put("cameras", cameras);
+        settings.put("framesPerSecond", framesPerSecond);
+        settings.put("catProbability", catProbability);
+        settings.put("detector", detector);
+        settings.put("detectorMillis", detectorMillis);
+        settings.put("frameQueue", frameQueue);
+        settings.put("listenerMicros", listenerMicros);
+        return settings;
+    }
+}
@@ -0,0 +1,336 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.image.service.FakeImageService;
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.security.application.StatusListener;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.metrics.LatencyHistogram;
+import com.udasecurity.security.service.ConcurrentSecurityService;
+import com.udasecurity.security.service.SecurityService;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a {@link SimulatedWorkload} into a security service and reports the sustained
+ * event rate, event latency percentiles and allocation rate. Where the JMH benchmarks
+ * time one call in isolation, this drives sensors, arming and cameras together, the way
+ * a busy premise would.
+ * <p>
+ * An event's latency runs from when it was due until the service has applied it. With
+ * the default dispatcher that is also when every listener has been told, so it is the
+ * delay a resident would see. Played back at a fixed speed, events are due on the
+ * simulated clock and a service that falls behind is charged for the wait; at speed 0
+ * each event is due when the previous one finishes and the rate is the service's
+ * ceiling. In the concurrent service frames are scanned on camera threads as in
+ * production, and a frame arriving while the cameras' queue is full is dropped.
+ * <p>
+ * Allocation is what the service's threads and the listener allocate while playing;
+ * the workload itself is generated before the clock starts.
+ * <p>
+ * Example: {@code java -cp benchmarks/target/benchmarks.jar com.udasecurity.benchmarks.LoadSimulator sensors=5000 service=plain}.
+ * See {@link LoadProfile} for the settings.
+ */
+public class LoadSimulator {
+
+    private static final int FRAMES_PER_CAMERA = 8;
+    private static final int FRAME_WIDTH = 64;
+    private static final int FRAME_HEIGHT = 48;
+    //log-normal spread of stub detector latencies around their mean
+    private static final double DETECTOR_SIGMA = 0.5;
+
+    public static void main(String[] args) throws Exception {
+        LoadProfile profile = LoadProfile.parse(args);
+        System.out.println("Profile " + profile.describe());
+
+        List<Sensor> sensors = Sensors.create(profile.sensors, profile.seed);
+        BufferedImage[][] frames = new BufferedImage[profile.cameras][FRAMES_PER_CAMERA];
+        ImageService detector = createDetector(profile, frames);
+        SimulatedWorkload workload = SimulatedWorkload.generate(profile, sensors, FRAMES_PER_CAMERA);
+        System.out.printf(Locale.ROOT, "Workload %,d sensor events, %,d arming changes, %,d frames over %.0f s, checksum %016x%n",
+                workload.count(SimulatedWorkload.SENSOR), workload.count(SimulatedWorkload.ARMING),
+                workload.count(SimulatedWorkload.FRAME), profile.durationSeconds, workload.checksum());
+
+        try (RepositoryFixture fixture = RepositoryFixture.open(profile.repository)) {
+            SecurityService securityService = createService(profile, fixture, detector);
+            securityService.addSensors(sensors);
+            CountingListener listener = new CountingListener((long) (profile.listenerMicros * 1000));
+            securityService.addStatusListener(listener);
+            try {
+                new Run(profile, workload, securityService, sensors.toArray(new Sensor[0]), frames, listener).play().print();
+            } finally {
+                if (securityService instanceof AutoCloseable) {
+                    ((AutoCloseable) securityService).close();
+                }
+            }
+        }
+    }
+
+    private static SecurityService createService(LoadProfile profile, RepositoryFixture fixture, ImageService detector) {
+        switch (profile.service) {
+            case "plain":
+                return new SecurityService(fixture.repository(), detector);
+            case "concurrent":
+                return new ConcurrentSecurityService(fixture.repository(), detector);
+            default:
+                throw new IllegalArgumentException("Unknown service " + profile.service);
+        }
+    }
+
+    /**
+     * Fills the frame pools, deciding with the profile's seed which frames show a cat and
+     * how long the stub detector takes over each.
+     */
+    private static ImageService createDetector(LoadProfile profile, BufferedImage[][] frames) {
+        Random random = new Random(profile.seed * 31 - 11);
+        LatencyInjectingImageService stub = new LatencyInjectingImageService();
+        double meanNanos = profile.detectorMillis * 1_000_000;
+        for (BufferedImage[] camera : frames) {
+            for (int i = 0; i < camera.length; i++) {
+                camera[i] = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+                camera[i].setRGB(0, 0, random.nextInt());
+                long latency = (long) (meanNanos * Math.exp(DETECTOR_SIGMA * random.nextGaussian() - DETECTOR_SIGMA * DETECTOR_SIGMA / 2));
+                stub.add(camera[i], random.nextDouble() < profile.catProbability, latency);
+            }
+        }
+        switch (profile.detector) {
+            case "stub":
+                return stub;
+            case "fake":
+                return new FakeImageService();
+            default:
+                throw new IllegalArgumentException("Unknown detector " + profile.detector);
+        }
+    }
+
+    /**
+     * Bytes allocated so far by every live thread, or -1 if the JVM does not track it.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        allocation.setThreadAllocatedMemoryEnabled(true);
+        long total = 0;
+        for (long bytes : allocation.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            //threads that ended since their IDs were listed report -1
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static final class Run {
+        private final LoadProfile profile;
+        private final SimulatedWorkload workload;
+        private final SecurityService securityService;
+        private final Sensor[] sensors;
+        private final BufferedImage[][] frames;
+        private final CountingListener listener;
+        private final ArmingStatus[] armingStatuses = ArmingStatus.values();
+
+        private final LatencyHistogram all = new LatencyHistogram();
+        private final LatencyHistogram sensorLatency = new LatencyHistogram();
+        private final LatencyHistogram armingLatency = new LatencyHistogram();
+        private final LatencyHistogram frameLatency = new LatencyHistogram();
+        private long submittedFrames;
+        private long droppedFrames;
+        private long maxBehindNanos;
+        private long elapsedNanos;
+        private long allocated;
+
+        Run(LoadProfile profile, SimulatedWorkload workload, SecurityService securityService, Sensor[] sensors,
+            BufferedImage[][] frames, CountingListener listener) {
+            this.profile = profile;
+            this.workload = workload;
+            this.securityService = securityService;
+            this.sensors = sensors;
+            this.frames = frames;
+            this.listener = listener;
+        }
+
+        Run play() throws InterruptedException {
+            ThreadPoolExecutor cameras = securityService instanceof ConcurrentSecurityService ? createCameraPool() : null;
+            boolean paced = profile.speed > 0;
+            long allocatedBefore = allocatedBytes();
+            long runStart = System.nanoTime();
+            for (int i = 0; i < workload.size; i++) {
+                long start;
+                if (paced) {
+                    start = runStart + (long) (workload.times[i] / profile.speed);
+                    maxBehindNanos = Math.max(maxBehindNanos, waitUntil(start) - start);
+                } else {
+                    start = System.nanoTime();
+                }
+                int target = workload.targets[i];
+                switch (workload.kinds[i]) {
+                    case SimulatedWorkload.SENSOR:
+                        securityService.changeSensorActivationStatus(sensors[target], workload.values[i] == 1);
+                        record(sensorLatency, start);
+                        break;
+                    case SimulatedWorkload.ARMING:
+                        securityService.setArmingStatus(armingStatuses[target]);
+                        record(armingLatency, start);
+                        break;
+                    default:
+                        BufferedImage frame = frames[target][workload.values[i]];
+                        if (cameras == null) {
+                            securityService.processImage(frame);
+                            record(frameLatency, start);
+                        } else {
+                            submitFrame(cameras, frame, start);
+                        }
+                        break;
+                }
+            }
+            if (cameras != null) {
+                //measure before the pool ends, or its threads' allocation goes with them
+                while (cameras.getCompletedTaskCount() < submittedFrames) {
+                    Thread.sleep(1);
+                }
+            }
+            elapsedNanos = System.nanoTime() - runStart;
+            allocated = allocatedBefore < 0 ? -1 : allocatedBytes() - allocatedBefore;
+            if (cameras != null) {
+                cameras.shutdown();
+                cameras.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            return this;
+        }
+
+        private ThreadPoolExecutor createCameraPool() {
+            int threads = Math.max(1, profile.cameras);
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor cameras = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, profile.frameQueue)), task -> {
+                        Thread thread = new Thread(task, "simulated-camera-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            cameras.prestartAllCoreThreads();
+            return cameras;
+        }
+
+        private void submitFrame(ThreadPoolExecutor cameras, BufferedImage frame, long start) {
+            try {
+                cameras.execute(() -> {
+                    securityService.processImage(frame);
+                    record(frameLatency, start);
+                });
+                submittedFrames++;
+            } catch (RejectedExecutionException e) {
+                droppedFrames++;
+            }
+        }
+
+        private void record(LatencyHistogram histogram, long start) {
+            long latency = System.nanoTime() - start;
+            histogram.record(latency);
+            all.record(latency);
+        }
+
+        /**
+         * Parks until {@code deadline} and returns the time, which is later than the
+         * deadline when the service is falling behind.
+         */
+        private static long waitUntil(long deadline) {
+            long now = System.nanoTime();
+            while (now < deadline) {
+                LockSupport.parkNanos(deadline - now);
+                now = System.nanoTime();
+            }
+            return now;
+        }
+
+        void print() {
+            long applied = all.snapshot().getCount();
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf(Locale.ROOT, "Throughput %,d events in %.2f s: %,.0f events/s, %.1fx real time%n",
+                    applied, seconds, applied / seconds, profile.durationSeconds / seconds);
+            if (profile.speed > 0) {
+                System.out.printf(Locale.ROOT, "Schedule   fell behind by at most %.3f ms%n", maxBehindNanos / 1e6);
+            }
+            System.out.printf(Locale.ROOT, "Latency    %-8s %12s %10s %10s %10s %10s%n", "(us)", "count", "p50", "p99", "p999", "max");
+            printLatency("all", all);
+            printLatency("sensor", sensorLatency);
+            printLatency("arming", armingLatency);
+            printLatency("frame", frameLatency);
+            System.out.printf(Locale.ROOT, "Frames     %,d dropped%n", droppedFrames);
+            System.out.printf(Locale.ROOT, "Listener   %,d alarm, %,d cat, %,d sensor notifications%n",
+                    listener.alarm.sum(), listener.cat.sum(), listener.sensor.sum());
+            if (allocated < 0) {
+                System.out.println("Allocation not measured by this JVM");
+            } else {
+                System.out.printf(Locale.ROOT, "Allocation %,.1f MB/s, %,.0f bytes/event%n",
+                        allocated / seconds / (1024 * 1024), applied == 0 ? 0.0 : allocated / (double) applied);
+            }
+            System.out.printf(Locale.ROOT, "Final      %s, %s, %,d active sensors%n", securityService.getArmingStatus(),
+                    securityService.getAlarmStatus(), securityService.getActiveSensorCount());
+        }
+
+        private static void printLatency(String name, LatencyHistogram histogram) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            System.out.printf(Locale.ROOT, "           %-8s %,12d %10.1f %10.1f %10.1f %10.1f%n", name, snapshot.getCount(),
+                    snapshot.getP50Nanos() / 1e3, snapshot.getP99Nanos() / 1e3, snapshot.getP999Nanos() / 1e3,
+                    snapshot.getMaxNanos() / 1e3);
+        }
+    }
+
+    /**
+     * Counts notifications, optionally spending a fixed time on each to stand in for a
+     * listener that does real work.
+     */
+    private static final class CountingListener implements StatusListener {
+        final LongAdder alarm = new LongAdder();
+        final LongAdder cat = new LongAdder();
+        final LongAdder sensor = new LongAdder();
+        private final long workNanos;
+
+        CountingListener(long workNanos) {
+            this.workNanos = workNanos;
+        }
+
+        @Override
+        public void notify(AlarmStatus status) {
+            alarm.increment();
+            work();
+        }
+
+        @Override
+        public void catDetected(boolean catDetected) {
+            cat.increment();
+            work();
+        }
+
+        @Override
+        public void sensorStatusChanged() {
+            sensor.increment();
+            work();
+        }
+
+        private void work() {
+            if (workNanos > 0) {
+                long until = System.nanoTime() + workNanos;
+                while (System.nanoTime() < until) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.image.service.LocalImageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LocalImageService#catConfidence} on one camera frame, per raster layout and
+ * resolution. The detector samples large frames on a grid, so a full HD frame should cost
+ * about the same as a VGA one and stay well under the 20 ms a 50 fps camera allows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalDetectorBenchmark {
+
+    @Param({"640x480", "1920x1080"})
+    String resolution;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    String layout;
+
+    private LocalImageService detector;
+    private BufferedImage frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] size = resolution.split("x");
+        int width = Integer.parseInt(size[0]);
+        int height = Integer.parseInt(size[1]);
+        int type = layout.equals("INT_RGB") ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR;
+        detector = new LocalImageService();
+        frame = new BufferedImage(width, height, type);
+        //a warm, textured middle on a grey background, so every feature sees real input
+        Random random = new Random(9);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean middle = x > width / 4 && x < width - width / 4 && y > height / 4 && y < height - height / 4;
+                int base = middle ? 0xc08050 : 0x808080;
+                int noise = random.nextInt(49) - 24;
+                int r = clamp(((base >> 16) & 0xff) + noise);
+                int g = clamp(((base >> 8) & 0xff) + noise);
+                int b = clamp((base & 0xff) + noise);
+                frame.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+    }
+
+    @Benchmark
+    public float catConfidence() {
+        return detector.catConfidence(frame);
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
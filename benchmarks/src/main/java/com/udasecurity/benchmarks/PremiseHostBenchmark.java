@@ -0,0 +1,95 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.service.PremiseHost;
+import com.udasecurity.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Command throughput of a {@link PremiseHost} as shards are added. Each command trips
+ * and clears every sensor of one premise, and a batch spreads commands evenly over
+ * all premises. With one shard per free core, throughput should grow about linearly
+ * with the shard count until the cores run out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PremiseHostBenchmark {
+
+    private static final int BATCH = 4096;
+    private static final int SENSORS_PER_PREMISE = 10;
+
+    @Param({"1", "2", "4", "8"})
+    int shards;
+
+    @Param({"1024"})
+    int premises;
+
+    private PremiseHost host;
+    private String[] premiseIds;
+    private Function<SecurityService, Integer>[] commands;
+    private CompletableFuture<?>[] pending;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        host = new PremiseHost(shards, id -> new InMemorySecurityRepository(), (image, threshold) -> false);
+        premiseIds = new String[premises];
+        commands = new Function[premises];
+        for (int i = 0; i < premises; i++) {
+            premiseIds[i] = "premise-" + i;
+            host.addPremise(premiseIds[i]).join();
+            List<Sensor> sensors = Sensors.create(SENSORS_PER_PREMISE, i);
+            host.submit(premiseIds[i], service -> {
+                service.addSensors(sensors);
+                service.setArmingStatus(ArmingStatus.ARMED_HOME);
+                return null;
+            }).join();
+            commands[i] = service -> {
+                for (Sensor sensor : sensors) {
+                    service.changeSensorActivationStatus(sensor, true);
+                    service.changeSensorActivationStatus(sensor, false);
+                }
+                return service.getActiveSensorCount();
+            };
+        }
+        pending = new CompletableFuture<?>[BATCH];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        host.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void commandBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            int premise = i % premises;
+            pending[i] = host.submit(premiseIds[premise], commands[premise]);
+        }
+        CompletableFuture.allOf(pending).join();
+    }
+}
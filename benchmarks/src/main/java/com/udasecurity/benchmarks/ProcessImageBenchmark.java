@@ -0,0 +1,100 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.image.service.CachingImageService;
+import com.udasecurity.image.service.ImageService;
+import com.udasecurity.image.service.LocalImageService;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SecurityService#processImage} on an armed-home system, alternating a frame the
+ * detector flags with one it does not. The stub detector isolates the service's own
+ * overhead; the local and caching detectors show the end-to-end cost per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessImageBenchmark {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    @Param({"stub", "local", "caching"})
+    String imageService;
+
+    private SecurityService securityService;
+    private BufferedImage[] frames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frames = new BufferedImage[]{frame(0xd08040, 5), frame(0x406030, 6)};
+        BufferedImage catFrame = frames[0];
+        ImageService detector;
+        switch (imageService) {
+            case "stub":
+                detector = (image, threshold) -> image == catFrame;
+                break;
+            case "local":
+                detector = new LocalImageService();
+                break;
+            case "caching":
+                detector = new CachingImageService(new LocalImageService());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown image service " + imageService);
+        }
+        InMemorySecurityRepository repository = new InMemorySecurityRepository();
+        repository.addSensors(Sensors.create(10, 5));
+        securityService = new SecurityService(repository, detector);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+    }
+
+    @Benchmark
+    public AlarmStatus processImage() {
+        next ^= 1;
+        securityService.processImage(frames[next]);
+        return securityService.getAlarmStatus();
+    }
+
+    /**
+     * A noisy frame around a base colour, so hashing and feature extraction see real texture.
+     */
+    private static BufferedImage frame(int baseRgb, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int r = clamp(((baseRgb >> 16) & 0xff) + random.nextInt(41) - 20);
+                int g = clamp(((baseRgb >> 8) & 0xff) + random.nextInt(41) - 20);
+                int b = clamp((baseRgb & 0xff) + random.nextInt(41) - 20);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,97 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.JournalSecurityRepositoryImpl;
+import com.udasecurity.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udasecurity.security.data.SecurityRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.stream.Stream;
+
+/**
+ * Opens a repository by benchmark parameter name and cleans up after it. The preferences
+ * backed repository shares its node with the desktop app, so the node is saved before
+ * the trial and put back afterwards.
+ */
+final class RepositoryFixture implements AutoCloseable {
+
+    static final String MEMORY = "memory";
+    static final String WRITE_THROUGH = "write-through";
+    static final String WRITE_BEHIND = "write-behind";
+    static final String JOURNAL = "journal";
+
+    private static final int WRITE_BEHIND_BATCH = 64;
+
+    private final SecurityRepository repository;
+    private final Path journalDirectory;
+    private final Map<String, String> savedPreferences;
+
+    private RepositoryFixture(SecurityRepository repository, Path journalDirectory, Map<String, String> savedPreferences) {
+        this.repository = repository;
+        this.journalDirectory = journalDirectory;
+        this.savedPreferences = savedPreferences;
+    }
+
+    static RepositoryFixture open(String kind) throws IOException, BackingStoreException {
+        switch (kind) {
+            case MEMORY:
+                return new RepositoryFixture(new InMemorySecurityRepository(), null, null);
+            case JOURNAL: {
+                Path directory = Files.createTempDirectory("catpoint-bench");
+                return new RepositoryFixture(new JournalSecurityRepositoryImpl(directory), directory, null);
+            }
+            case WRITE_THROUGH:
+            case WRITE_BEHIND: {
+                Map<String, String> saved = clearPreferences();
+                SecurityRepository repository = WRITE_THROUGH.equals(kind)
+                        ? new PretendDatabaseSecurityRepositoryImpl()
+                        : new PretendDatabaseSecurityRepositoryImpl(0, WRITE_BEHIND_BATCH);
+                return new RepositoryFixture(repository, null, saved);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown repository " + kind);
+        }
+    }
+
+    SecurityRepository repository() {
+        return repository;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (repository instanceof AutoCloseable) {
+            ((AutoCloseable) repository).close();
+        }
+        if (journalDirectory != null) {
+            try (Stream<Path> files = Files.walk(journalDirectory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        if (savedPreferences != null) {
+            Preferences prefs = preferences();
+            prefs.clear();
+            savedPreferences.forEach(prefs::put);
+            prefs.flush();
+        }
+    }
+
+    private static Map<String, String> clearPreferences() throws BackingStoreException {
+        Preferences prefs = preferences();
+        Map<String, String> saved = new HashMap<>();
+        for (String key : prefs.keys()) {
+            saved.put(key, prefs.get(key, null));
+        }
+        prefs.clear();
+        return saved;
+    }
+
+    private static Preferences preferences() {
+        return Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.SecurityRepository;
+import com.udasecurity.security.data.Sensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single persisted write in each repository. The preferences backed repository
+ * rewrites its whole sensor snapshot on every flush, so sensor counts stay at the scale
+ * of a home install.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryWriteBenchmark {
+
+    @Param({"10", "50"})
+    int sensorCount;
+
+    @Param({RepositoryFixture.WRITE_THROUGH, RepositoryFixture.WRITE_BEHIND, RepositoryFixture.JOURNAL})
+    String repository;
+
+    private RepositoryFixture fixture;
+    private SecurityRepository securityRepository;
+    private Sensor[] sensors;
+    private int next;
+    private boolean alarm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = RepositoryFixture.open(repository);
+        securityRepository = fixture.repository();
+        List<Sensor> created = Sensors.create(sensorCount, 3);
+        securityRepository.addSensors(created);
+        sensors = created.toArray(new Sensor[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void updateSensor() {
+        Sensor sensor = sensors[next];
+        next = next + 1 == sensors.length ? 0 : next + 1;
+        sensor.setActive(!sensor.getActive());
+        securityRepository.updateSensor(sensor);
+    }
+
+    @Benchmark
+    public void setAlarmStatus() {
+        alarm = !alarm;
+        securityRepository.setAlarmStatus(alarm ? AlarmStatus.ALARM : AlarmStatus.NO_ALARM);
+    }
+}
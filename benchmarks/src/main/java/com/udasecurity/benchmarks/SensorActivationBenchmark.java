@@ -0,0 +1,71 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link SecurityService#changeSensorActivationStatus} on an armed system.
+ * Each operation trips one sensor and clears it again, which walks the alarm through
+ * pending and back to no alarm, so every iteration starts from the same state.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorActivationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    int sensorCount;
+
+    @Param({RepositoryFixture.MEMORY, RepositoryFixture.JOURNAL})
+    String repository;
+
+    private RepositoryFixture fixture;
+    private SecurityService securityService;
+    private Sensor[] sensors;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = RepositoryFixture.open(repository);
+        securityService = new SecurityService(fixture.repository(), (image, threshold) -> false);
+        List<Sensor> created = Sensors.create(sensorCount, 1);
+        securityService.addSensors(created);
+        securityService.setArmingStatus(ArmingStatus.ARMED_HOME);
+        sensors = created.toArray(new Sensor[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void tripAndClearSensor() {
+        Sensor sensor = sensors[next];
+        next = next + 1 == sensors.length ? 0 : next + 1;
+        securityService.changeSensorActivationStatus(sensor, true);
+        securityService.changeSensorActivationStatus(sensor, false);
+    }
+}
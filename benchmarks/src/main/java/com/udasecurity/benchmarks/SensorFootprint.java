@@ -0,0 +1,75 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorStore;
+import com.udasecurity.security.data.SensorType;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Prints the retained heap per sensor of the object model (a TreeSet of Sensor objects
+ * plus a HashSet of active IDs, as the repositories used to keep) against
+ * {@link SensorStore}, measured with JOL. Names are drawn from a pool of realistic
+ * room-and-type labels, so many sensors share a name. Each side is given its own Sensor
+ * objects, so neither side's bookkeeping shows up in the other.
+ * <p>
+ * The store keeps the Sensor objects it is given, so it is reported three ways: as
+ * SecurityService uses it, without those Sensor objects (the columns alone, as after
+ * {@code readFrom} before any sensor is read), and with the sorted view that
+ * {@code getSensors()} builds.
+ * <p>
+ * Run with: {@code java -cp benchmarks/target/benchmarks.jar com.udasecurity.benchmarks.SensorFootprint [sensors]}
+ */
+public class SensorFootprint {
+
+    private static final String[] ROOMS = {"Front", "Back", "Kitchen", "Garage", "Hallway", "Bedroom", "Office", "Basement"};
+    private static final int FLOORS = 40;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(11);
+        SensorType[] types = SensorType.values();
+
+        Set<Sensor> objectModel = new TreeSet<>();
+        Set<UUID> activeIds = new HashSet<>();
+        SensorStore store = new SensorStore(count);
+        List<Sensor> stored = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SensorType type = types[random.nextInt(types.length)];
+            String name = ROOMS[random.nextInt(ROOMS.length)] + " " + type + " " + random.nextInt(FLOORS);
+            UUID id = new UUID(random.nextLong(), random.nextLong());
+            boolean active = random.nextInt(10) == 0;
+
+            objectModel.add(new Sensor(id, name, type, active));
+            if (active) activeIds.add(id);
+
+            Sensor copy = new Sensor(new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits()), new String(name), type, active);
+            stored.add(copy);
+            store.put(copy);
+        }
+
+        long objectBytes = GraphLayout.parseInstance(objectModel, activeIds).totalSize();
+        GraphLayout storeLayout = GraphLayout.parseInstance(store);
+        long storeBytes = storeLayout.totalSize();
+        long columnBytes = storeLayout.subtract(GraphLayout.parseInstance(stored.toArray())).totalSize();
+        store.sortedView();
+        long viewBytes = GraphLayout.parseInstance(store).totalSize();
+
+        System.out.printf("sensors:                      %,d%n", count);
+        print("TreeSet<Sensor> + active IDs:", objectBytes, count);
+        print("SensorStore with Sensors:", storeBytes, count);
+        print("SensorStore columns only:", columnBytes, count);
+        print("SensorStore with sorted view:", viewBytes, count);
+    }
+
+    private static void print(String label, long bytes, int count) {
+        System.out.printf("%-30s%,d bytes (%.1f per sensor)%n", label, bytes, (double) bytes / count);
+    }
+}
@@ -0,0 +1,98 @@
+package com.udasecurity.benchmarks;
+
+import com.google.gson.Gson;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorJson;
+import dev.mccue.guava.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sensor set serialization with Gson's reflective adapter against the streaming
+ * {@link SensorJson} adapters. Writes go to a discarding writer, so the reflective run
+ * pays for building the whole string and the streaming one does not. Run with
+ * {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorJsonBenchmark {
+
+    private static final Type SENSOR_SET_TYPE = new TypeToken<Set<Sensor>>() {
+    }.getType();
+
+    @Param({"1000", "100000"})
+    int sensorCount;
+
+    private final Gson gson = new Gson();
+    private List<Sensor> sensors;
+    private String json;
+    private Writer discard;
+
+    @Setup(Level.Trial)
+    public void setUp(Blackhole blackhole) {
+        sensors = Sensors.create(sensorCount, 9);
+        json = gson.toJson(sensors);
+        discard = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                blackhole.consume(buffer);
+            }
+
+            @Override
+            public void write(String string, int offset, int length) {
+                blackhole.consume(string);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Benchmark
+    public void reflectiveWrite() throws IOException {
+        discard.write(gson.toJson(sensors));
+    }
+
+    @Benchmark
+    public void streamingWrite() throws IOException {
+        SensorJson.writeSensors(sensors, discard);
+    }
+
+    @Benchmark
+    public Set<Sensor> reflectiveRead() {
+        return gson.fromJson(json, SENSOR_SET_TYPE);
+    }
+
+    @Benchmark
+    public int streamingRead(Blackhole blackhole) throws IOException {
+        return SensorJson.readSensors(new StringReader(json), blackhole::consume);
+    }
+}
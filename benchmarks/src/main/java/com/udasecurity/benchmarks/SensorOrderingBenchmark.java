@@ -0,0 +1,87 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.Sensor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Sensor#compareTo} and the TreeSet operations the repositories are built on:
+ * building the set, the remove-and-add done by updateSensor, the copy handed out by
+ * getSensors and a full scan.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorOrderingBenchmark {
+
+    @Param({"1000", "100000"})
+    int sensorCount;
+
+    private List<Sensor> shuffled;
+    private Sensor[] sensors;
+    private TreeSet<Sensor> sensorSet;
+    private int next;
+    private int nextPair;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        shuffled = new ArrayList<>(Sensors.create(sensorCount, 4));
+        Collections.shuffle(shuffled, new Random(4));
+        sensors = shuffled.toArray(new Sensor[0]);
+        sensorSet = new TreeSet<>(shuffled);
+    }
+
+    @Benchmark
+    public int compareTo() {
+        int i = nextPair;
+        nextPair = i + 2 >= sensors.length ? 0 : i + 1;
+        return sensors[i].compareTo(sensors[i + 1]);
+    }
+
+    @Benchmark
+    public TreeSet<Sensor> buildSet() {
+        return new TreeSet<>(shuffled);
+    }
+
+    @Benchmark
+    public boolean removeAndAdd() {
+        Sensor sensor = sensors[next];
+        next = next + 1 == sensors.length ? 0 : next + 1;
+        sensorSet.remove(sensor);
+        return sensorSet.add(sensor);
+    }
+
+    @Benchmark
+    public TreeSet<Sensor> copySet() {
+        return new TreeSet<>(sensorSet);
+    }
+
+    @Benchmark
+    public int countActive() {
+        int active = 0;
+        for (Sensor sensor : sensorSet) {
+            if (sensor.getActive()) active++;
+        }
+        return active;
+    }
+}
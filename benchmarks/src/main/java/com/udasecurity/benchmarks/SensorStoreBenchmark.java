@@ -0,0 +1,84 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repository's sensor write, TreeSet remove-and-add against a {@link SensorStore}
+ * put, and the cost of a display snapshot from each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorStoreBenchmark {
+
+    @Param({"1000", "100000"})
+    int sensorCount;
+
+    private Sensor[] sensors;
+    private TreeSet<Sensor> treeSet;
+    private SensorStore store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Sensor> created = Sensors.create(sensorCount, 6);
+        sensors = created.toArray(new Sensor[0]);
+        treeSet = new TreeSet<>(created);
+        store = new SensorStore(sensorCount);
+        created.forEach(store::put);
+    }
+
+    @Benchmark
+    public boolean treeSetUpdate() {
+        Sensor sensor = nextToggled();
+        treeSet.remove(sensor);
+        return treeSet.add(sensor);
+    }
+
+    @Benchmark
+    public boolean storeUpdate() {
+        return store.put(nextToggled());
+    }
+
+    @Benchmark
+    public TreeSet<Sensor> treeSetSnapshot() {
+        return new TreeSet<>(treeSet);
+    }
+
+    /**
+     * Activation-only changes leave the cached view valid, as in the service's hot path.
+     */
+    @Benchmark
+    public SortedSet<Sensor> storeSnapshotAfterToggle() {
+        store.put(nextToggled());
+        return store.sortedView();
+    }
+
+    private Sensor nextToggled() {
+        Sensor sensor = sensors[next];
+        next = next + 1 == sensors.length ? 0 : next + 1;
+        sensor.setActive(!sensor.getActive());
+        return sensor;
+    }
+}
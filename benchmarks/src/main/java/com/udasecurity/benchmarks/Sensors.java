@@ -0,0 +1,33 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Deterministic sensor fixtures so every fork and every release benchmarks the same data.
+ */
+final class Sensors {
+
+    private Sensors() {
+    }
+
+    /**
+     * Creates {@code count} inactive sensors with names and IDs drawn from a seeded generator.
+     */
+    static List<Sensor> create(int count, long seed) {
+        Random random = new Random(seed);
+        SensorType[] types = SensorType.values();
+        List<Sensor> sensors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Sensor sensor = new Sensor("Sensor " + random.nextInt(count * 4), types[random.nextInt(types.length)]);
+            sensor.setSensorId(new UUID(random.nextLong(), random.nextLong()));
+            sensors.add(sensor);
+        }
+        return sensors;
+    }
+}
@@ -0,0 +1,285 @@
+package com.udasecurity.benchmarks;
+
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.Sensor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * A premise's events over simulated time, generated up front from a {@link LoadProfile}
+ * so that generating them costs a run neither time nor allocation. Every sensor and camera draws
+ * from its own generator seeded from the profile's, and events are ordered by time with
+ * ties broken by source, so one seed always yields exactly the same stream.
+ * <p>
+ * Door and window sensors open and close in episodes; motion sensors fire in bursts of
+ * short triggers. Any episode may instead be a flapping contact that toggles rapidly.
+ * Arming changes at random intervals, and each camera delivers frames at a fixed rate
+ * with a little jitter, picked from a small per-camera pool.
+ */
+final class SimulatedWorkload {
+
+    static final byte SENSOR = 0;
+    static final byte ARMING = 1;
+    static final byte FRAME = 2;
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /** When each event happens, in simulated nanoseconds from the start. */
+    final long[] times;
+    final byte[] kinds;
+    /** Sensor index, ArmingStatus ordinal or camera index. */
+    final int[] targets;
+    /** Whether a sensor becomes active, or the frame index within the camera's pool. */
+    final int[] values;
+    final int size;
+
+    private SimulatedWorkload(long[] times, byte[] kinds, int[] targets, int[] values, int size) {
+        this.times = times;
+        this.kinds = kinds;
+        this.targets = targets;
+        this.values = values;
+        this.size = size;
+    }
+
+    static SimulatedWorkload generate(LoadProfile profile, List<Sensor> sensors, int framesPerCamera) {
+        long end = (long) (profile.durationSeconds * NANOS_PER_SECOND);
+        Builder builder = new Builder();
+        PriorityQueue<Source> sources = new PriorityQueue<>();
+        long sourceSeeds = profile.seed * 31 + 7;
+        for (int i = 0; i < sensors.size(); i++) {
+            sources.add(new SensorSource(profile, i, sensors.get(i), new Random(sourceSeeds + i)));
+        }
+        sources.add(new ArmingSource(profile, sensors.size(), new Random(sourceSeeds - 1)));
+        for (int c = 0; c < profile.cameras; c++) {
+            sources.add(new CameraSource(profile, sensors.size() + 1 + c, c, framesPerCamera, new Random(sourceSeeds - 2 - c)));
+        }
+        while (!sources.isEmpty() && sources.peek().next < end) {
+            Source source = sources.poll();
+            source.emit(builder);
+            if (source.next != Long.MAX_VALUE) {
+                sources.add(source);
+            }
+        }
+        return builder.build();
+    }
+
+    int count(byte kind) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (kinds[i] == kind) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A fingerprint of the whole stream; two runs with the same profile print the same one.
+     */
+    long checksum() {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * hash + times[i];
+            hash = 31 * hash + kinds[i];
+            hash = 31 * hash + targets[i];
+            hash = 31 * hash + values[i];
+        }
+        return hash;
+    }
+
+    private static long exponentialNanos(Random random, double meanMillis) {
+        return (long) (-Math.log(1 - random.nextDouble()) * meanMillis * NANOS_PER_MILLI);
+    }
+
+    /**
+     * At least one, with {@code mean} on average.
+     */
+    private static int geometric(Random random, double mean) {
+        if (mean <= 1) {
+            return 1;
+        }
+        return 1 + (int) (Math.log(1 - random.nextDouble()) / Math.log(1 - 1 / mean));
+    }
+
+    private static final class Builder {
+        private long[] times = new long[1024];
+        private byte[] kinds = new byte[1024];
+        private int[] targets = new int[1024];
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(long time, byte kind, int target, int value) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            times[size] = time;
+            kinds[size] = kind;
+            targets[size] = target;
+            values[size] = value;
+            size++;
+        }
+
+        SimulatedWorkload build() {
+            return new SimulatedWorkload(times, kinds, targets, values, size);
+        }
+    }
+
+    /**
+     * Something that produces events; {@link #next} is the time of its next one.
+     */
+    private abstract static class Source implements Comparable<Source> {
+        final int order;
+        final Random random;
+        long next;
+
+        Source(int order, Random random) {
+            this.order = order;
+            this.random = random;
+        }
+
+        /**
+         * Adds the event due at {@link #next} and moves {@link #next} on, to
+         * {@code Long.MAX_VALUE} when there are no more.
+         */
+        abstract void emit(Builder builder);
+
+        @Override
+        public int compareTo(Source other) {
+            int byTime = Long.compare(next, other.next);
+            return byTime != 0 ? byTime : Integer.compare(order, other.order);
+        }
+    }
+
+    private static final class SensorSource extends Source {
+        private final LoadProfile profile;
+        private final int index;
+        private final double episodeGapMillis;
+        private final double holdMillis;
+        private final double gapMillis;
+        private final boolean motion;
+        private boolean active;
+        //toggles left in the current episode; zero between episodes
+        private int remaining;
+        private boolean flapping;
+
+        SensorSource(LoadProfile profile, int order, Sensor sensor, Random random) {
+            super(order, random);
+            this.profile = profile;
+            this.index = order;
+            double episodesPerHour;
+            switch (sensor.getSensorType()) {
+                case DOOR:
+                    episodesPerHour = profile.doorEpisodesPerHour;
+                    holdMillis = profile.doorOpenMillis;
+                    gapMillis = 0;
+                    motion = false;
+                    break;
+                case WINDOW:
+                    episodesPerHour = profile.windowEpisodesPerHour;
+                    holdMillis = profile.windowOpenMillis;
+                    gapMillis = 0;
+                    motion = false;
+                    break;
+                default:
+                    episodesPerHour = profile.motionEpisodesPerHour;
+                    holdMillis = profile.motionHoldMillis;
+                    gapMillis = profile.motionGapMillis;
+                    motion = true;
+                    break;
+            }
+            this.episodeGapMillis = episodesPerHour > 0 ? 3_600_000 / episodesPerHour : Double.POSITIVE_INFINITY;
+            this.next = nextEpisode(0);
+        }
+
+        @Override
+        void emit(Builder builder) {
+            long now = next;
+            if (remaining == 0) {
+                flapping = random.nextDouble() < profile.flapProbability;
+                int activations = flapping
+                        ? geometric(random, profile.flapToggles / 2)
+                        : motion ? geometric(random, profile.motionTriggersPerBurst) : 1;
+                remaining = activations * 2;
+            }
+            active = !active;
+            builder.add(now, SENSOR, index, active ? 1 : 0);
+            remaining--;
+            if (remaining == 0) {
+                next = nextEpisode(now);
+            } else if (flapping) {
+                next = now + 1 + exponentialNanos(random, profile.flapIntervalMillis);
+            } else {
+                next = now + 1 + exponentialNanos(random, active ? holdMillis : gapMillis);
+            }
+        }
+
+        private long nextEpisode(long now) {
+            if (Double.isInfinite(episodeGapMillis)) {
+                return Long.MAX_VALUE;
+            }
+            return now + 1 + exponentialNanos(random, episodeGapMillis);
+        }
+    }
+
+    /**
+     * Residents arm and disarm: a disarmed system is usually armed home, an armed one
+     * usually disarmed, and occasionally switched between the two armed modes.
+     */
+    private static final class ArmingSource extends Source {
+        private final double intervalMillis;
+        private ArmingStatus status = ArmingStatus.DISARMED;
+
+        ArmingSource(LoadProfile profile, int order, Random random) {
+            super(order, random);
+            this.intervalMillis = profile.armingIntervalSeconds * 1000;
+            this.next = profile.armingIntervalSeconds > 0 ? exponentialNanos(random, intervalMillis) : Long.MAX_VALUE;
+        }
+
+        @Override
+        void emit(Builder builder) {
+            double roll = random.nextDouble();
+            switch (status) {
+                case DISARMED:
+                    status = roll < 0.6 ? ArmingStatus.ARMED_HOME : ArmingStatus.ARMED_AWAY;
+                    break;
+                case ARMED_HOME:
+                    status = roll < 0.8 ? ArmingStatus.DISARMED : ArmingStatus.ARMED_AWAY;
+                    break;
+                default:
+                    status = roll < 0.8 ? ArmingStatus.DISARMED : ArmingStatus.ARMED_HOME;
+                    break;
+            }
+            builder.add(next, ARMING, status.ordinal(), 0);
+            next += 1 + exponentialNanos(random, intervalMillis);
+        }
+    }
+
+    private static final class CameraSource extends Source {
+        private final int camera;
+        private final int framesPerCamera;
+        private final long periodNanos;
+
+        CameraSource(LoadProfile profile, int order, int camera, int framesPerCamera, Random random) {
+            super(order, random);
+            this.camera = camera;
+            this.framesPerCamera = framesPerCamera;
+            this.periodNanos = profile.framesPerSecond > 0 ? (long) (NANOS_PER_SECOND / profile.framesPerSecond) : 0;
+            this.next = periodNanos > 0 ? (long) (random.nextDouble() * periodNanos) : Long.MAX_VALUE;
+        }
+
+        @Override
+        void emit(Builder builder) {
+            builder.add(next, FRAME, camera, random.nextInt(framesPerCamera));
+            //up to a tenth of a period early or late
+            next += periodNanos + (long) ((random.nextDouble() - 0.5) * periodNanos / 5);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.udasecurity.benchmarks;
+
+import com.google.gson.Gson;
+import com.udasecurity.security.data.AlarmStatus;
+import com.udasecurity.security.data.ArmingStatus;
+import com.udasecurity.security.data.RepositorySnapshot;
+import com.udasecurity.security.data.Sensor;
+import com.udasecurity.security.data.SensorStore;
+import dev.mccue.guava.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the preferences backed repository: turning its saved sensors back into
+ * a {@link SensorStore}, from the JSON earlier versions wrote and from a
+ * {@link RepositorySnapshot}. Each fork decodes once with no warmup, as an app launch
+ * would, so class loading and interpretation are part of the cost. Reading the
+ * preference values themselves is left out; JSON over
+ * {@link java.util.prefs.Preferences#MAX_VALUE_LENGTH} characters could not be saved anyway.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+@State(Scope.Benchmark)
+public class SnapshotLoadBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int sensorCount;
+
+    private String json;
+    private byte[] snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Sensor> sensors = Sensors.create(sensorCount, 8);
+        for (int i = 0; i < sensors.size(); i += 3) {
+            sensors.get(i).setActive(true);
+        }
+        json = new Gson().toJson(sensors);
+        SensorStore store = new SensorStore(sensorCount);
+        sensors.forEach(store::put);
+        snapshot = RepositorySnapshot.write(AlarmStatus.NO_ALARM, ArmingStatus.ARMED_HOME, store);
+    }
+
+    /**
+     * The loader before snapshots: reflective Gson parsing into Sensor objects, then
+     * copying each into the store.
+     */
+    @Benchmark
+    public SensorStore json() {
+        Type sensorSetType = new TypeToken<Set<Sensor>>() {
+        }.getType();
+        Set<Sensor> saved = new Gson().fromJson(json, sensorSetType);
+        SensorStore store = new SensorStore();
+        saved.forEach(store::put);
+        return store;
+    }
+
+    @Benchmark
+    public SensorStore binary() throws IOException {
+        return RepositorySnapshot.read(ByteBuffer.wrap(snapshot)).getSensors();
+    }
+}